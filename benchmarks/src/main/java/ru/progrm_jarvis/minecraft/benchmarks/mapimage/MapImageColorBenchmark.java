@@ -0,0 +1,76 @@
+package ru.progrm_jarvis.minecraft.benchmarks.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.bukkit.map.MapPalette;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColorLookupTable;
+
+import java.awt.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup of closest map color codes with the entries of the lookup table either already computed (hot)
+ * or computed on demand (cold) compared with the search over the whole palette.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapImageColorBenchmark {
+
+    private static final int COLORS_COUNT = 4096;
+
+    @Param({"6", "8"})
+    public int bitsPerChannel;
+
+    private int[] colors;
+
+    private MapImageColorLookupTable hotTable;
+
+    private MapImageColorLookupTable coldTable;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        val random = new Random(0xC0105);
+        colors = new int[COLORS_COUNT];
+        for (var i = 0; i < COLORS_COUNT; i++) colors[i] = random.nextInt();
+
+        hotTable = MapImageColorLookupTable.createLazy(bitsPerChannel);
+        for (val color : colors) hotTable.getClosestColorCode(color);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        // a fresh table for each invocation so that each of the lookups misses
+        coldTable = MapImageColorLookupTable.createLazy(bitsPerChannel);
+    }
+
+    @Benchmark
+    public void hotCache(final Blackhole blackhole) {
+        val table = hotTable;
+        for (val color : colors) blackhole.consume(table.getClosestColorCode(color));
+    }
+
+    @Benchmark
+    public void coldCache(final Blackhole blackhole) {
+        val table = coldTable;
+        for (val color : colors) blackhole.consume(table.getClosestColorCode(color));
+    }
+
+    @Benchmark
+    public void defaultTable(final Blackhole blackhole) {
+        for (val color : colors) blackhole.consume(MapImageColor.getClosestColorCode(color));
+    }
+
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public void paletteSearch(final Blackhole blackhole) {
+        for (val color : colors) blackhole.consume(MapPalette.matchColor(new Color(color)));
+    }
+}
@@ -0,0 +1,83 @@
+package ru.progrm_jarvis.minecraft.benchmarks.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.openjdk.jmh.annotations.*;
+import ru.progrm_jarvis.minecraft.commons.mapimage.DefaultMapImage;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImage;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computation of the deltas of {@link MapImage.BufferedDrawer} and their disposal
+ * for changes either clustered in a single region or scattered over the whole image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapImageDeltaBenchmark {
+
+    @Param({"CLUSTERED", "SCATTERED"})
+    public Changes changes;
+
+    private MapImage.BufferedDrawer drawer;
+
+    private int[] changedPixels;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        val random = new Random(0xDE17A);
+        changedPixels = new int[256];
+        for (var i = 0; i < changedPixels.length; i++) changedPixels[i] = changes.pixel(random);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        drawer = new DefaultMapImage(new byte[MapImage.PIXELS_COUNT], (byte) 0).bufferedDrawer();
+        for (val pixel : changedPixels) drawer.px(pixel % MapImage.WIDTH, pixel / MapImage.WIDTH, (byte) 4);
+    }
+
+    @Benchmark
+    public MapImage.Delta getDelta() {
+        return drawer.getDelta();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> getDeltas() {
+        return drawer.getDeltas();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> dispose() {
+        return drawer.dispose();
+    }
+
+    public enum Changes {
+
+        /**
+         * Changes inside a single 16x16 region
+         */
+        CLUSTERED {
+            @Override
+            int pixel(final Random random) {
+                return 48 + random.nextInt(16) + (48 + random.nextInt(16)) * MapImage.WIDTH;
+            }
+        },
+        /**
+         * Changes anywhere on the image
+         */
+        SCATTERED {
+            @Override
+            int pixel(final Random random) {
+                return random.nextInt(MapImage.PIXELS_COUNT);
+            }
+        };
+
+        abstract int pixel(Random random);
+    }
+}
@@ -0,0 +1,68 @@
+package ru.progrm_jarvis.minecraft.benchmarks.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImage;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColorLookupTable;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImageDithering;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImages;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapImageDitheringBenchmark {
+
+    @Param({"NONE", "FLOYD_STEINBERG", "ATKINSON", "ORDERED"})
+    public MapImageDithering dithering;
+
+    private MapImageColorLookupTable lookupTable;
+
+    private BufferedImage image;
+
+    private int[] pixels;
+
+    @Setup
+    public void setup() {
+        // precomputed table so that the benchmark does not measure lazy initialization of its entries
+        lookupTable = MapImageColorLookupTable.createPrecomputed(6);
+
+        val random = new Random(0xB1A5);
+        image = new BufferedImage(MapImage.WIDTH, MapImage.HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        pixels = new int[MapImage.WIDTH * MapImage.HEIGHT];
+        // smooth gradient with noise which is the typical case for dithering
+        for (var y = 0; y < MapImage.HEIGHT; y++) for (var x = 0; x < MapImage.WIDTH; x++) {
+            val rgb = 0xFF000000 | (x << 1) << 16 | (y << 1) << 8 | (x + y + random.nextInt(16)) & 0xFF;
+            image.setRGB(x, y, rgb);
+            pixels[x + y * MapImage.WIDTH] = rgb;
+        }
+    }
+
+    @Benchmark
+    public byte[] dither() {
+        val target = new byte[MapImage.WIDTH * MapImage.HEIGHT];
+        dithering.dither(
+                pixels, MapImage.WIDTH, MapImage.HEIGHT, 0, target, 0, MapImage.WIDTH, lookupTable
+        );
+
+        return target;
+    }
+
+    @Benchmark
+    public byte[] getMapImagePixels() {
+        return MapImages.getMapImagePixels(image, false, dithering);
+    }
+
+    @Benchmark
+    public void getMapImagePixelsAsync(final Blackhole blackhole) {
+        blackhole.consume(MapImages.getMapImagePixelsAsync(image, false, dithering).join());
+    }
+}
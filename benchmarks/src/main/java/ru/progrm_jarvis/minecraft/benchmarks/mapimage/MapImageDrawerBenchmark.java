@@ -0,0 +1,105 @@
+package ru.progrm_jarvis.minecraft.benchmarks.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.openjdk.jmh.annotations.*;
+import ru.progrm_jarvis.minecraft.commons.mapimage.DefaultMapImage;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImage;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison of bulk drawing primitives of {@link MapImage.BufferedDrawer}
+ * with per-pixel implementations previously used by default {@link MapImage.Drawer} methods.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapImageDrawerBenchmark {
+
+    private MapImage.BufferedDrawer drawer;
+
+    private byte[] sprite;
+
+    @Setup
+    public void setup() {
+        drawer = new DefaultMapImage(new byte[MapImage.PIXELS_COUNT], (byte) 0).bufferedDrawer();
+
+        sprite = new byte[32 * 32];
+        new Random(0x5B1E).nextBytes(sprite);
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> rectPerPixel() {
+        for (var x = 8; x <= 120; x++) for (var y = 8; y <= 120; y++) drawer.px(x, y, (byte) 4);
+
+        return drawer.dispose();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> rect() {
+        drawer.rect(8, 8, 120, 120, (byte) 4);
+
+        return drawer.dispose();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> roundPerPixel() {
+        final int centerX = 64, centerY = 64, radius = 50, squaredRadius = radius * radius;
+        for (var x = centerX - radius; x <= centerX + radius; x++) {
+            val squaredDX = (x - centerX) * (x - centerX);
+            for (var y = centerY - radius; y <= centerY + radius; y++) {
+                if (squaredDX + (y - centerY) * (y - centerY) <= squaredRadius) drawer.px(x, y, (byte) 4);
+            }
+        }
+
+        return drawer.dispose();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> round() {
+        drawer.round(64, 64, 50, (byte) 4);
+
+        return drawer.dispose();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> lineFloatStepping() {
+        // stepping by the biggest delta with floating-point accumulation
+        final int x1 = 3, y1 = 10, x2 = 124, y2 = 117;
+        val stepY = (y2 - y1) / (float) (x2 - x1);
+        float y = y1;
+        for (var x = x1; x <= x2; x++, y += stepY) drawer.px(x, (int) y, (byte) 4);
+
+        return drawer.dispose();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> line() {
+        drawer.line(3, 10, 124, 117, (byte) 4);
+
+        return drawer.dispose();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> blitPerPixel() {
+        for (var y = 0; y < 32; y++) for (var x = 0; x < 32; x++) {
+            val pixel = sprite[x + y * 32];
+            if (pixel != 0) drawer.px(40 + x, 40 + y, pixel);
+        }
+
+        return drawer.dispose();
+    }
+
+    @Benchmark
+    public List<MapImage.Delta> blit() {
+        drawer.blit(sprite, 32, 32, 40, 40, (byte) 0);
+
+        return drawer.dispose();
+    }
+}
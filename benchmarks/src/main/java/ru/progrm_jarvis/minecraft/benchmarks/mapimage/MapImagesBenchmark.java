@@ -0,0 +1,59 @@
+package ru.progrm_jarvis.minecraft.benchmarks.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.openjdk.jmh.annotations.*;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImage;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImages;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of synthetic images of different sizes into map image pixels
+ * either resizing them to the map image dimensions or cutting them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapImagesBenchmark {
+
+    @Param({"128", "512"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean resize;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setup() {
+        val random = new Random(0x1A6E5);
+        image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        // blocks of random colors so that both the distinct and the repeated colors are present
+        for (var y = 0; y < size; y++) for (var x = 0; x < size; x++) image.setRGB(
+                x, y, (x >> 3) % 3 == 0 ? 0xFF000000 | random.nextInt() : 0xFF000000 | (x >> 3) << 12 | (y >> 3) << 4
+        );
+        // the lookup table entries of the colors are not what is being measured here
+        MapImages.getMapImagePixels(image, resize);
+    }
+
+    @Benchmark
+    public byte[] getMapImagePixels() {
+        return MapImages.getMapImagePixels(image, resize);
+    }
+
+    @Benchmark
+    public byte[] getMapImagePixelsAsync() {
+        return MapImages.getMapImagePixelsAsync(image, resize).join();
+    }
+
+    @Benchmark
+    public BufferedImage fitImage() {
+        return MapImages.fitImage(image, resize);
+    }
+}
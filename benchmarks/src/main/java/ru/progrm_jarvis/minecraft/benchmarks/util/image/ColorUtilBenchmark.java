@@ -0,0 +1,78 @@
+package ru.progrm_jarvis.minecraft.benchmarks.util.image;
+
+import lombok.val;
+import lombok.var;
+import org.openjdk.jmh.annotations.*;
+import ru.progrm_jarvis.minecraft.commons.util.image.ColorUtil;
+import ru.progrm_jarvis.minecraft.commons.util.image.ImageUtil;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blending of ARGB colors of synthetic overlays onto backgrounds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorUtilBenchmark {
+
+    @Param({"128", "512"})
+    public int size;
+
+    private int[] backgroundPixels, foregroundPixels, blendedPixels;
+
+    private BufferedImage background, foreground;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        val random = new Random(0xB1E4D);
+        val pixelsCount = size * size;
+        backgroundPixels = new int[pixelsCount];
+        foregroundPixels = new int[pixelsCount];
+        blendedPixels = new int[pixelsCount];
+        for (var i = 0; i < pixelsCount; i++) {
+            backgroundPixels[i] = 0xFF000000 | random.nextInt();
+            // the overlay is mostly transparent with some opaque and some translucent pixels
+            val alphaSelector = random.nextInt(4);
+            foregroundPixels[i] = alphaSelector == 0 ? 0
+                    : alphaSelector == 1 ? 0xFF000000 | random.nextInt() : random.nextInt();
+        }
+
+        background = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        foreground = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        foreground.setRGB(0, 0, size, size, foregroundPixels, 0, size);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        background.setRGB(0, 0, size, size, backgroundPixels, 0, size);
+    }
+
+    @Benchmark
+    public int[] blendColors() {
+        final int[] backgroundPixels = this.backgroundPixels, foregroundPixels = this.foregroundPixels,
+                blendedPixels = this.blendedPixels;
+        for (var i = 0; i < blendedPixels.length; i++) blendedPixels[i] = ColorUtil.blendColors(
+                backgroundPixels[i], foregroundPixels[i]
+        );
+
+        return blendedPixels;
+    }
+
+    @Benchmark
+    public int[] blendColorsBulk() {
+        return ColorUtil.blendColors(
+                backgroundPixels, 0, foregroundPixels, 0, blendedPixels, 0, blendedPixels.length
+        );
+    }
+
+    @Benchmark
+    public BufferedImage mergeSharp() {
+        return ImageUtil.mergeSharp(background, foreground);
+    }
+}
@@ -23,6 +23,19 @@ public abstract class AbstractFakeEntity implements FakeEntity {
         return location.clone();
     }
 
+    @Override
+    public Location getLocation(final @NonNull Location target) {
+        final Location location;
+        target.setWorld((location = this.location).getWorld());
+        target.setX(location.getX());
+        target.setY(location.getY());
+        target.setZ(location.getZ());
+        target.setYaw(location.getYaw());
+        target.setPitch(location.getPitch());
+
+        return target;
+    }
+
     @Override
     public World getWorld() {
         return location.getWorld();
@@ -2,9 +2,13 @@ package ru.progrm_jarvis.minecraft.fakeentitylib.entity;
 
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * Base for most common implementations of {@link ObservableFakeEntity}.
  */
@@ -12,9 +16,18 @@ import org.bukkit.entity.Player;
 @FieldDefaults(level = AccessLevel.PROTECTED, makeFinal = true)
 public abstract class AbstractObservableFakeEntity extends AbstractFakeEntity implements ObservableFakeEntity {
 
+    /**
+     * Scratch locations of the threads checking whether the players should see the entities
+     */
+    private static final ThreadLocal<Location> EYE_LOCATION = ThreadLocal.withInitial(
+            () -> new Location(null, 0, 0, 0)
+    );
+
     @Getter boolean global;
     @Getter int viewDistance;
     @Getter int viewDistanceSquared;
+    @Getter @NonFinal volatile int despawnDistance;
+    @NonFinal volatile int despawnDistanceSquared;
 
     public AbstractObservableFakeEntity(final boolean global, final int viewDistance,
                                         final @NonNull Location location) {
@@ -22,13 +35,51 @@ public abstract class AbstractObservableFakeEntity extends AbstractFakeEntity im
 
         this.global = global;
         this.viewDistance = viewDistance;
-        viewDistanceSquared = viewDistance * viewDistance;
+        despawnDistance = viewDistance;
+        despawnDistanceSquared = viewDistanceSquared = viewDistance * viewDistance;
+    }
+
+    /**
+     * Sets the distance beyond which this fake entity gets unrendered for the players who have it rendered.
+     *
+     * @param despawnDistance distance beyond which this fake entity gets unrendered, not less than its view distance
+     *
+     * @see #getDespawnDistance() for the details
+     */
+    public void setDespawnDistance(final int despawnDistance) {
+        checkArgument(despawnDistance >= getViewDistance(), "despawnDistance should not be less than viewDistance");
+
+        despawnDistanceSquared = despawnDistance * despawnDistance;
+        this.despawnDistance = despawnDistance;
     }
 
     @Override
     public boolean shouldSee(final Player player) {
+        return shouldSee(player, false);
+    }
+
+    @Override
+    public boolean shouldSee(final Player player, final boolean rendered) {
+        // the player's location is copied into the thread's scratch location to avoid allocating it
+        val eyeLocation = player.getLocation(EYE_LOCATION.get());
+        try {
+            return shouldSee(
+                    eyeLocation.getWorld(), eyeLocation.getX(), eyeLocation.getY() + player.getEyeHeight(),
+                    eyeLocation.getZ(), rendered
+            );
+        } finally {
+            eyeLocation.setWorld(null);
+        }
+    }
+
+    @Override
+    public boolean shouldSee(final World world, final double x, final double y, final double z,
+                             final boolean rendered) {
         final Location thisLocation;
-        return player.getWorld() == (thisLocation = location).getWorld()
-                && player.getEyeLocation().distanceSquared(thisLocation) <= viewDistanceSquared;
+        if (world != (thisLocation = location).getWorld()) return false;
+
+        final double dx = x - thisLocation.getX(), dy = y - thisLocation.getY(), dz = z - thisLocation.getZ();
+
+        return dx * dx + dy * dy + dz * dz <= (rendered ? despawnDistanceSquared : viewDistanceSquared);
     }
 }
@@ -3,6 +3,7 @@ package ru.progrm_jarvis.minecraft.fakeentitylib.entity;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistryRegistration;
 
@@ -102,8 +103,19 @@ public abstract class AbstractPlayerContainingFakeEntity extends AbstractObserva
         if (sees == null) return;
 
         if (sees) {
-            if (!shouldSee(player)) unrender(player);
-        } else if (shouldSee(player)) render(player);
+            if (!shouldSee(player, true)) unrender(player);
+        } else if (shouldSee(player, false)) render(player);
+    }
+
+    @Override
+    public void attemptRerender(final Player player, final World world,
+                                final double x, final double y, final double z) {
+        val sees = players.get(player);
+        if (sees == null) return;
+
+        if (sees) {
+            if (!shouldSee(world, x, y, z, true)) unrender(player);
+        } else if (shouldSee(world, x, y, z, false)) render(player);
     }
 
 
@@ -113,8 +125,8 @@ public abstract class AbstractPlayerContainingFakeEntity extends AbstractObserva
             val player = entry.getKey();
 
             if (entry.getValue()) { // sees
-                if (!shouldSee(player)) unrender(player);
-            } else if (shouldSee(player)) render(player);
+                if (!shouldSee(player, true)) unrender(player);
+            } else if (shouldSee(player, false)) render(player);
         }
     }
 }
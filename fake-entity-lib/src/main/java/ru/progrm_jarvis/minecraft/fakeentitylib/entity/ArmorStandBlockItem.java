@@ -202,7 +202,7 @@ public class ArmorStandBlockItem extends SimpleLivingFakeEntity {
     @Override
     protected void performSpawnNoChecks(final @NotNull Player player) {
         super.performSpawnNoChecks(player);
-        equipmentPacket.sendPacket(player);
+        sendPacket(player, equipmentPacket);
     }
 
     /**
@@ -253,7 +253,7 @@ public class ArmorStandBlockItem extends SimpleLivingFakeEntity {
 
     public void setItem(final @Own @NonNull ItemStack item) {
         equipmentPacket.setItem(this.item = item);
-        for (val entry : players.entrySet()) if (entry.getValue()) equipmentPacket.sendPacket(entry.getKey());
+        sendPacketToRendered(equipmentPacket);
     }
 
     protected interface Offset {
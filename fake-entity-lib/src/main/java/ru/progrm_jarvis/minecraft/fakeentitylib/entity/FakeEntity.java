@@ -1,5 +1,7 @@
 package ru.progrm_jarvis.minecraft.fakeentitylib.entity;
 
+import lombok.NonNull;
+import lombok.val;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
@@ -32,6 +34,26 @@ public interface FakeEntity extends PlayerContainer {
      */
     Location getLocation();
 
+    /**
+     * Copies the location of this fake entity into the given one.
+     *
+     * @param target location to which to copy this fake entity's location
+     * @return the given location with this fake entity's location copied into it
+     *
+     * @apiNote unlike {@link #getLocation()} this allows the implementations to avoid allocations
+     */
+    default Location getLocation(final @NonNull Location target) {
+        val location = getLocation();
+        target.setWorld(location.getWorld());
+        target.setX(location.getX());
+        target.setY(location.getY());
+        target.setZ(location.getZ());
+        target.setYaw(location.getYaw());
+        target.setPitch(location.getPitch());
+
+        return target;
+    }
+
     /**
      * Gets the players associated with this fake entity.
      *
@@ -0,0 +1,181 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity;
+
+import com.comphenix.protocol.ProtocolLibrary;
+import com.comphenix.protocol.ProtocolManager;
+import com.comphenix.protocol.events.PacketContainer;
+import com.comphenix.protocol.utility.MinecraftFields;
+import com.comphenix.protocol.utility.MinecraftReflection;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+/**
+ * Batch of packets of fake entities enqueued for the players during a tick and sent on {@link #flush()}.
+ * <p>
+ * Packets are grouped by their receivers and are written to each player's channel in the order
+ * in which they were enqueued with the channel being flushed once per player.
+ * If the channels are not accessible on this server then the packets are sent one by one by ProtocolLib.
+ * Packets should not be modified once enqueued as the same packet may be enqueued for multiple players.
+ * <p>
+ * Packets may be enqueued concurrently (e.g. by the asynchronous observers rendering the entities)
+ * and while the batch is being flushed in which case they get sent either by this flush or by the next one.
+ * The batch should be flushed by a single thread at a time so that the packets of a player are sent in order.
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class FakeEntityPacketBatch {
+
+    /**
+     * Writer of the packets to the players' channels or {@code null} if they are not accessible
+     */
+    private static final @Nullable ChannelWriter CHANNEL_WRITER = ChannelWriter.create();
+
+    @ToString.Exclude @NonNull ProtocolManager protocolManager;
+
+    /**
+     * Packets enqueued for the players
+     */
+    @ToString.Exclude PlayerQueues<PacketContainer> packets = new PlayerQueues<>();
+
+    /**
+     * Creates a new packet batch.
+     *
+     * @param protocolManager protocol manager used for sending the packets if the channels are not accessible
+     */
+    public FakeEntityPacketBatch(final @NonNull ProtocolManager protocolManager) {
+        this.protocolManager = protocolManager;
+    }
+
+    /**
+     * Creates a new packet batch.
+     */
+    public FakeEntityPacketBatch() {
+        this(ProtocolLibrary.getProtocolManager());
+    }
+
+    /**
+     * Enqueues the packet for the player.
+     *
+     * @param player player for whom to enqueue the packet
+     * @param packet packet to enqueue
+     */
+    public void enqueue(final @NonNull Player player, final @NonNull PacketContainer packet) {
+        packets.add(player, packet);
+    }
+
+    /**
+     * Checks whether or not there are no enqueued packets.
+     *
+     * @return {@code true} if there are no enqueued packets and {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return packets.isEmpty();
+    }
+
+    /**
+     * Sends all enqueued packets to their players and clears this batch.
+     * Packets of the players who are no longer online are discarded.
+     *
+     * @throws RuntimeException if a packet could not be sent
+     */
+    public void flush() {
+        if (packets.isEmpty()) return;
+
+        try {
+            for (val player : packets.players()) {
+                val playerPackets = packets.remove(player);
+                if (playerPackets == null || !player.isOnline()) continue;
+
+                if (CHANNEL_WRITER == null || !CHANNEL_WRITER.write(player, playerPackets)) {
+                    for (val packet : playerPackets) protocolManager.sendServerPacket(player, packet);
+                }
+            }
+        } catch (final InvocationTargetException e) {
+            throw new RuntimeException("Cannot send packet", e);
+        }
+    }
+
+    /**
+     * Writer of the packets directly to the Netty channels of the players.
+     */
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private static final class ChannelWriter {
+
+        /**
+         * Method handle of type {@code (NetworkManager)Channel} getting the channel of the network manager
+         */
+        @NonNull MethodHandle channelGetter;
+
+        /**
+         * Method handle of type {@code (Channel, Object)ChannelFuture} writing the packet without flushing
+         */
+        @NonNull MethodHandle write;
+
+        /**
+         * Method handle of type {@code (Channel)Channel} flushing the channel
+         */
+        @NonNull MethodHandle flush;
+
+        /**
+         * Creates the channel writer for the current server.
+         *
+         * @return created channel writer or {@code null} if the channels are not accessible on this server
+         */
+        private static @Nullable ChannelWriter create() {
+            try {
+                val networkManagerClass = MinecraftReflection.getNetworkManagerClass();
+                for (val field : networkManagerClass.getDeclaredFields()) {
+                    val channelClass = field.getType();
+                    if (!channelClass.getName().equals("io.netty.channel.Channel")) continue;
+
+                    field.setAccessible(true);
+                    val lookup = MethodHandles.lookup();
+                    return new ChannelWriter(
+                            lookup.unreflectGetter(field)
+                                    .asType(MethodType.methodType(Object.class, Object.class)),
+                            lookup.unreflect(channelClass.getMethod("write", Object.class))
+                                    .asType(MethodType.methodType(void.class, Object.class, Object.class)),
+                            lookup.unreflect(channelClass.getMethod("flush"))
+                                    .asType(MethodType.methodType(void.class, Object.class))
+                    );
+                }
+            } catch (final ReflectiveOperationException | RuntimeException | LinkageError ignored) {
+                // the packets get sent by ProtocolLib
+            }
+
+            return null;
+        }
+
+        /**
+         * Writes the packets to the player's channel flushing it once.
+         *
+         * @param player player to whom to write the packets
+         * @param packets packets to write
+         * @return {@code true} if the packets were written and {@code false} if the player has no channel
+         */
+        private boolean write(final @NonNull Player player, final @NonNull List<PacketContainer> packets) {
+            final Object channel;
+            try {
+                val networkManager = MinecraftFields.getNetworkManager(player);
+                if (networkManager == null || (channel = (Object) channelGetter.invokeExact(networkManager)) == null) {
+                    return false;
+                }
+
+                for (val packet : packets) write.invokeExact(channel, packet.getHandle());
+                flush.invokeExact(channel);
+            } catch (final Throwable throwable) {
+                throw new RuntimeException("Cannot write packets to the channel of " + player, throwable);
+            }
+
+            return true;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package ru.progrm_jarvis.minecraft.fakeentitylib.entity;
 
 import lombok.val;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 
 import java.util.Collection;
@@ -14,6 +15,17 @@ public interface ObservableFakeEntity extends FakeEntity {
      */
     int getViewDistance();
 
+    /**
+     * Gets the distance beyond which this fake entity gets unrendered for the players who have it rendered.
+     * Having it bigger than the view distance prevents this fake entity from being repeatedly rendered and unrendered
+     * for the players moving near the edge of its view distance.
+     *
+     * @return distance beyond which this fake entity gets unrendered, not less than its view distance
+     */
+    default int getDespawnDistance() {
+        return getViewDistance();
+    }
+
     /**
      * Returns {@code true} if the player has this fake entity rendered and {@code false} otherwise.
      *
@@ -34,6 +46,43 @@ public interface ObservableFakeEntity extends FakeEntity {
      */
     boolean shouldSee(Player player);
 
+    /**
+     * Returns {@code true} if the player can theoretically see this entity and {@code false} otherwise
+     * using the {@link #getDespawnDistance() despawn distance} for the players who have it rendered.
+     *
+     * @apiNote method does not check whether the player is managed by this entity
+     *
+     * @param player player to check for ability to see this fake entity
+     * @param rendered whether the player has this entity rendered
+     * @return whether or not the player can see this fake entity
+     */
+    default boolean shouldSee(final Player player, final boolean rendered) {
+        return shouldSee(player);
+    }
+
+    /**
+     * Returns {@code true} if a player whose eyes are at the given position can theoretically see this entity
+     * and {@code false} otherwise using the {@link #getDespawnDistance() despawn distance}
+     * for the players who have it rendered.
+     *
+     * @param world world of the player
+     * @param x X-coordinate of the player's eyes
+     * @param y Y-coordinate of the player's eyes
+     * @param z Z-coordinate of the player's eyes
+     * @param rendered whether the player has this entity rendered
+     * @return whether or not the player can see this fake entity
+     */
+    default boolean shouldSee(final World world, final double x, final double y, final double z,
+                              final boolean rendered) {
+        val location = getLocation();
+        if (world != location.getWorld()) return false;
+
+        final double dx = x - location.getX(), dy = y - location.getY(), dz = z - location.getZ();
+        val distance = rendered ? getDespawnDistance() : getViewDistance();
+
+        return dx * dx + dy * dy + dz * dz <= distance * distance;
+    }
+
     /**
      * Gets all players who are related to this fake entity
      * and are seeing it at the moment (have it rendered).
@@ -59,6 +108,22 @@ public interface ObservableFakeEntity extends FakeEntity {
      */
     void attemptRerender(final Player player);
 
+    /**
+     * Attempt to rerender this fake entity for player specified whose eyes are at the given position.
+     * This is equivalent to {@link #attemptRerender(Player)} but allows the implementations
+     * to use the position of the player which was already computed instead of computing it again.
+     *
+     * @param player player for whom to attempt to rerender this entity
+     * @param world world of the player
+     * @param x X-coordinate of the player's eyes
+     * @param y Y-coordinate of the player's eyes
+     * @param z Z-coordinate of the player's eyes
+     */
+    default void attemptRerender(final Player player, final World world,
+                                 final double x, final double y, final double z) {
+        attemptRerender(player);
+    }
+
     /**
      * Attempts to rerender this fake entity for all players associated with it.
      * This logically means calling {@link #attemptRerender(Player)} on each player from {@link #getPlayers()}
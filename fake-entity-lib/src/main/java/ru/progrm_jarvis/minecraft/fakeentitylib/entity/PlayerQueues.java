@@ -0,0 +1,76 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity;
+
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.experimental.FieldDefaults;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Queues of elements of the players which may be added to concurrently.
+ * <p>
+ * The queue of the player is only modified while holding the lock of its entry
+ * so that it is never modified once it gets {@link #remove(Player) removed}.
+ *
+ * @param <E> type of queued elements
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class PlayerQueues<E> {
+
+    /**
+     * Queues of the players
+     */
+    @ToString.Exclude ConcurrentMap<Player, List<E>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the element to the end of the player's queue.
+     *
+     * @param player player to whose queue the element should be added
+     * @param element element to add
+     */
+    void add(final @NonNull Player player, final @NonNull E element) {
+        queues.compute(player, (queuedPlayer, queue) -> {
+            if (queue == null) queue = new ArrayList<>();
+            queue.add(element);
+
+            return queue;
+        });
+    }
+
+    /**
+     * Checks whether or not there are no queued elements.
+     *
+     * @return {@code true} if there are no queued elements and {@code false} otherwise
+     */
+    boolean isEmpty() {
+        return queues.isEmpty();
+    }
+
+    /**
+     * Gets the players having queued elements.
+     *
+     * @return weakly consistent view of the players having queued elements
+     */
+    Set<Player> players() {
+        return queues.keySet();
+    }
+
+    /**
+     * Removes the player's queue.
+     * Elements added concurrently either get into the removed queue or into the new queue of the player.
+     *
+     * @param player player whose queue should be removed
+     * @return removed queue of the player which is no longer modified or {@code null} if there was none
+     */
+    @Nullable List<E> remove(final @NonNull Player player) {
+        return queues.remove(player);
+    }
+}
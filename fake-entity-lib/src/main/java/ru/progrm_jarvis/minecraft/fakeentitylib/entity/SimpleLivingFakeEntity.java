@@ -1,6 +1,7 @@
 package ru.progrm_jarvis.minecraft.fakeentitylib.entity;
 
 import com.comphenix.packetwrapper.*;
+import com.comphenix.protocol.events.PacketContainer;
 import com.comphenix.protocol.wrappers.WrappedDataWatcher;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
@@ -14,7 +15,6 @@ import org.jetbrains.annotations.Nullable;
 import ru.progrm_jarvis.minecraft.commons.nms.NmsUtil;
 
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -125,6 +125,11 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
      */
     WrapperPlayServerEntityVelocity velocityPacket;
 
+    /**
+     * Batch to which all packets of this entity get enqueued or {@code null} if they should be sent immediately
+     */
+    @Getter @Setter @Nullable FakeEntityPacketBatch packetBatch;
+
     @Builder
     public SimpleLivingFakeEntity(final int entityId, final @Nullable UUID uuid,
                                   // Start of entities properties, TODO specific class
@@ -176,8 +181,8 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
      * @param player player to whom to spawn this entity
      */
     protected void performSpawnNoChecks(final Player player) {
-        spawnPacket.sendPacket(player);
-        metadataPacket.sendPacket(player);
+        sendPacket(player, spawnPacket);
+        sendPacket(player, metadataPacket);
     }
 
     /**
@@ -187,7 +192,7 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
      * @param player player to whom to despawn this entity
      */
     protected void performDespawnNoChecks(final Player player) {
-        despawnPacket.sendPacket(player);
+        sendPacket(player, despawnPacket);
     }
 
     protected void actualizeSpawnPacket() {
@@ -277,6 +282,39 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
         packet.setVelocityZ(thisVelocity.getZ());
     }
 
+    /**
+     * Sends the packet to the player or enqueues its copy to the {@link #packetBatch packet batch} if there is one.
+     *
+     * @param player player to whom to send the packet
+     * @param packet packet to send
+     */
+    protected void sendPacket(final @NonNull Player player, final @NonNull AbstractPacket packet) {
+        val thisPacketBatch = packetBatch;
+        if (thisPacketBatch == null) packet.sendPacket(player);
+        // the packets of this entity get reused so the batch gets their copies
+        else thisPacketBatch.enqueue(player, packet.getHandle().shallowClone());
+    }
+
+    /**
+     * Sends the packet to all players seeing this entity
+     * or enqueues its copy shared by them to the {@link #packetBatch packet batch} if there is one.
+     *
+     * @param packet packet to send
+     */
+    protected void sendPacketToRendered(final @NonNull AbstractPacket packet) {
+        val thisPacketBatch = packetBatch;
+        if (thisPacketBatch == null) {
+            for (val entry : players.entrySet()) if (entry.getValue()) packet.sendPacket(entry.getKey());
+        } else {
+            // the packets of this entity get reused so the batch gets their copies
+            PacketContainer packetCopy = null;
+            for (val entry : players.entrySet()) if (entry.getValue()) {
+                if (packetCopy == null) packetCopy = packet.getHandle().shallowClone();
+                thisPacketBatch.enqueue(entry.getKey(), packetCopy);
+            }
+        }
+    }
+
     @Override
     @SuppressWarnings("Duplicates")
     protected void performMoveLook(final double dx, final double dy, final double dz,
@@ -298,17 +336,8 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
             sendVelocity = sendVelocity && hasVelocity();
             if (sendVelocity) actualizeVelocityPacket();
 
-            final Set<Map.Entry<Player, Boolean>> entries;
-            if ((!(entries = players.entrySet()).isEmpty())) {
-                val thisVelocityPacket = sendVelocity ? velocityPacket : null;
-
-                for (val entry : entries) if (entry.getValue()) {
-                    val player = entry.getKey();
-
-                    if (sendVelocity) thisVelocityPacket.sendPacket(player);
-                    thisMoveLookPacket.sendPacket(player);
-                }
-            }
+            if (sendVelocity) sendPacketToRendered(velocityPacket);
+            sendPacketToRendered(thisMoveLookPacket);
         }
     }
 
@@ -330,17 +359,8 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
             sendVelocity = sendVelocity && hasVelocity();
             if (sendVelocity) actualizeVelocityPacket();
 
-            final Set<Map.Entry<Player, Boolean>> entries;
-            if ((!(entries = players.entrySet()).isEmpty())) {
-                val thisVelocityPacket = sendVelocity ? velocityPacket : null;
-
-                for (val entry : entries) if (entry.getValue()) {
-                    val player = entry.getKey();
-
-                    if (sendVelocity) thisVelocityPacket.sendPacket(player);
-                    thisMovePacket.sendPacket(player);
-                }
-            }
+            if (sendVelocity) sendPacketToRendered(velocityPacket);
+            sendPacketToRendered(thisMovePacket);
         }
     }
 
@@ -365,17 +385,8 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
             sendVelocity = sendVelocity && hasVelocity();
             if (sendVelocity) actualizeVelocityPacket();
 
-            final Set<Map.Entry<Player, Boolean>> entries;
-            if ((!(entries = players.entrySet()).isEmpty())) {
-                val thisVelocityPacket = sendVelocity ? velocityPacket : null;
-
-                for (val entry : entries) if (entry.getValue()) {
-                    val player = entry.getKey();
-
-                    if (sendVelocity) thisVelocityPacket.sendPacket(player);
-                    thisTeleportPacket.sendPacket(player);
-                }
-            }
+            if (sendVelocity) sendPacketToRendered(velocityPacket);
+            sendPacketToRendered(thisTeleportPacket);
         }
     }
 
@@ -392,7 +403,7 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
             thisLookPacket.setPitch(pitch);
             thisLookPacket.setOnGround(isOnGround());
 
-            for (val entry : players.entrySet()) if (entry.getValue()) thisLookPacket.sendPacket(entry.getKey());
+            sendPacketToRendered(thisLookPacket);
         }
     }
 
@@ -411,7 +422,7 @@ public class SimpleLivingFakeEntity extends AbstractBasicFakeEntity {
 
             actualizeMetadataPacket(thisMetadata);
 
-            for (val entry : players.entrySet()) if (entry.getValue()) metadataPacket.sendPacket(entry.getKey());
+            sendPacketToRendered(metadataPacket);
         }
     }
 
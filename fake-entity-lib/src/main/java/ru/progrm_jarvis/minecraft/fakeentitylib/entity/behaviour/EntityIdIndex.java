@@ -0,0 +1,157 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.behaviour;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.jetbrains.annotations.Nullable;
+import ru.progrm_jarvis.minecraft.fakeentitylib.entity.FakeEntity;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Index of entities by their {@link FakeEntity#getEntityId() IDs} storing them weakly.
+ * <p>
+ * Entities are looked up in constant time and the entries of the collected entities
+ * are purged lazily on modifications of this index.
+ * Concurrent indices split the entries between independently locked stripes
+ * so that lookups of different entities do not contend with each other.
+ *
+ * @param <E> type of indexed entities
+ *
+ * @implNote entity IDs are expected not to change while the entity is indexed
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class EntityIdIndex<E extends FakeEntity> {
+
+    /**
+     * Number of stripes of concurrent indices which is a power of two
+     */
+    private static final int CONCURRENT_STRIPES = Integer.highestOneBit(
+            Math.max(Runtime.getRuntime().availableProcessors(), 1) << 2
+    );
+
+    /**
+     * Stripes of the index each guarded by its own monitor if this index is concurrent
+     */
+    @ToString.Exclude Int2ObjectMap<EntityReference<E>>[] stripes;
+
+    /**
+     * Queue of the references to collected entities
+     */
+    @ToString.Exclude ReferenceQueue<E> collectedEntities = new ReferenceQueue<>();
+
+    /**
+     * Whether or not this index may be accessed concurrently
+     */
+    boolean concurrent;
+
+    /**
+     * Creates a new index of entities.
+     *
+     * @param concurrent whether or not the index may be accessed concurrently
+     */
+    @SuppressWarnings("unchecked")
+    EntityIdIndex(final boolean concurrent) {
+        this.concurrent = concurrent;
+
+        val stripes = (Int2ObjectMap<EntityReference<E>>[]) new Int2ObjectMap[concurrent ? CONCURRENT_STRIPES : 1];
+        for (var stripe = 0; stripe < stripes.length; stripe++) stripes[stripe] = new Int2ObjectOpenHashMap<>();
+        this.stripes = stripes;
+    }
+
+    private Int2ObjectMap<EntityReference<E>> stripe(final int id) {
+        final Int2ObjectMap<EntityReference<E>>[] stripes;
+        // spread the bits of the ID as sequential IDs are common
+        return (stripes = this.stripes)[(id ^ id >>> 16) & (stripes.length - 1)];
+    }
+
+    /**
+     * Adds the entity to this index replacing the entity with the same ID if there is one.
+     *
+     * @param entity entity to add
+     */
+    void add(final @NonNull E entity) {
+        purgeCollected();
+
+        val id = entity.getEntityId();
+        val reference = new EntityReference<E>(entity, id, collectedEntities);
+        val stripe = stripe(id);
+        if (concurrent) synchronized (stripe) {
+            stripe.put(id, reference);
+        } else stripe.put(id, reference);
+    }
+
+    /**
+     * Removes the entity from this index.
+     *
+     * @param entity entity to remove
+     */
+    void remove(final @NonNull E entity) {
+        purgeCollected();
+
+        val id = entity.getEntityId();
+        val stripe = stripe(id);
+        if (concurrent) synchronized (stripe) {
+            removeIfReferencing(stripe, id, entity);
+        } else removeIfReferencing(stripe, id, entity);
+    }
+
+    /**
+     * Gets the entity by its ID.
+     *
+     * @param id ID of the entity
+     * @return entity with the given ID or {@code null} if there is none
+     */
+    @Nullable E get(final int id) {
+        val stripe = stripe(id);
+        final EntityReference<E> reference;
+        if (concurrent) synchronized (stripe) {
+            reference = stripe.get(id);
+        } else reference = stripe.get(id);
+
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Removes the entries of the collected entities from this index.
+     */
+    @SuppressWarnings("unchecked")
+    private void purgeCollected() {
+        EntityReference<E> reference;
+        while ((reference = (EntityReference<E>) collectedEntities.poll()) != null) {
+            val id = reference.id;
+            val stripe = stripe(id);
+            if (concurrent) synchronized (stripe) {
+                stripe.remove(id, reference);
+            } else stripe.remove(id, reference);
+        }
+    }
+
+    private static <E> void removeIfReferencing(final @NonNull Int2ObjectMap<EntityReference<E>> stripe,
+                                                final int id, final @NonNull E entity) {
+        val reference = stripe.get(id);
+        if (reference != null && reference.get() == entity) stripe.remove(id);
+    }
+
+    /**
+     * Weak reference to an indexed entity remembering its ID.
+     *
+     * @param <E> type of the entity
+     */
+    private static final class EntityReference<E> extends WeakReference<E> {
+
+        /**
+         * ID of the entity
+         */
+        private final int id;
+
+        private EntityReference(final @NonNull E entity, final int id, final @NonNull ReferenceQueue<? super E> queue) {
+            super(entity, queue);
+
+            this.id = id;
+        }
+    }
+}
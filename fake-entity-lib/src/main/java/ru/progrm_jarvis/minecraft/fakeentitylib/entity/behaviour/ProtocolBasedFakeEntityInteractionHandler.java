@@ -32,6 +32,7 @@ public class ProtocolBasedFakeEntityInteractionHandler<E extends InteractableFak
     @ToString.Include @NonNull Plugin plugin;
     @NonNull Set<E> entities;
     @NonNull Set<E> entitiesView;
+    @NonNull EntityIdIndex<E> entitiesById;
 
     @Delegate(types = Shutdownable.class) @NonNull ShutdownHooks shutdownHooks;
 
@@ -46,6 +47,7 @@ public class ProtocolBasedFakeEntityInteractionHandler<E extends InteractableFak
         this.plugin = plugin;
         entities = concurrent ? FakeEntityManager.concurrentWeakEntitySet() : FakeEntityManager.weakEntitySet();
         entitiesView = Collections.unmodifiableSet(entities);
+        entitiesById = new EntityIdIndex<>(concurrent);
 
         protocolManager.addPacketListener(this);
 
@@ -68,8 +70,7 @@ public class ProtocolBasedFakeEntityInteractionHandler<E extends InteractableFak
         val packet = new WrapperPlayClientUseEntity(event.getPacket());
         val id = packet.getTargetID();
 
-        InteractableFakeEntity entity = null;
-        for (val checkedEntity : entities) if (checkedEntity.getEntityId() == id) entity = checkedEntity;
+        val entity = entitiesById.get(id);
         if (entity == null) return;
 
         switch (packet.getType()) {
@@ -113,10 +114,12 @@ public class ProtocolBasedFakeEntityInteractionHandler<E extends InteractableFak
     @Override
     public void manageEntity(@NonNull E entity) {
         entities.add(entity);
+        entitiesById.add(entity);
     }
 
     @Override
     public void unmanageEntity(@NonNull E entity) {
         entities.remove(entity);
+        entitiesById.remove(entity);
     }
 }
@@ -0,0 +1,94 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.observer;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import lombok.var;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Task processing the range of cells splitting it between the threads of the pool while it has too many entities.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class CellRangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 0L;
+
+    /**
+     * Numbers of entities in the cells up to each of them (inclusive)
+     */
+    @NonNull IntList cellEntitiesEnds;
+
+    /**
+     * Number of entities after which the range gets split
+     */
+    int entitiesPerTask;
+
+    /**
+     * Action performed for each range of cells which is not split
+     */
+    @NonNull Action action;
+
+    /**
+     * Index of the first cell to process (inclusive)
+     */
+    int fromCell,
+    /**
+     * Index of the last cell to process (exclusive)
+     */
+    toCell;
+
+    /**
+     * Gets the number of entities in the cells preceding the given one.
+     *
+     * @param cell index of the cell
+     * @return number of entities in the cells preceding the cell
+     */
+    private int entitiesBefore(final int cell) {
+        return cell == 0 ? 0 : cellEntitiesEnds.getInt(cell - 1);
+    }
+
+    @Override
+    protected void compute() {
+        final int fromCell = this.fromCell, toCell = this.toCell,
+                fromEntity = entitiesBefore(fromCell), toEntity = entitiesBefore(toCell);
+
+        if (toCell - fromCell == 1 || toEntity - fromEntity <= entitiesPerTask) action.perform(fromCell, toCell);
+        else {
+            // split at the cell containing the middle entity so that the halves are balanced
+            val middleEntity = fromEntity + (toEntity - fromEntity >>> 1);
+            var low = fromCell + 1;
+            var high = toCell - 1;
+            while (low < high) {
+                val middle = low + high >>> 1;
+                if (entitiesBefore(middle) < middleEntity) low = middle + 1;
+                else high = middle;
+            }
+
+            invokeAll(
+                    new CellRangeTask(cellEntitiesEnds, entitiesPerTask, action, fromCell, low),
+                    new CellRangeTask(cellEntitiesEnds, entitiesPerTask, action, low, toCell)
+            );
+        }
+    }
+
+    /**
+     * Action performed for a range of cells.
+     */
+    @FunctionalInterface
+    interface Action {
+
+        /**
+         * Performs the action for the range of cells.
+         *
+         * @param fromCell index of the first cell (inclusive)
+         * @param toCell index of the last cell (exclusive)
+         */
+        void perform(int fromCell, int toCell);
+    }
+}
@@ -0,0 +1,283 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.observer;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import ru.progrm_jarvis.minecraft.fakeentitylib.entity.ObservableFakeEntity;
+
+import java.util.*;
+
+/**
+ * Observation of entities by the online players.
+ * <p>
+ * Players and entities are indexed by the chunks in which they are
+ * so that only the pairs in the neighbouring chunks within the entity's view distance get checked
+ * (along with the pairs checked previously so that the entities get unrendered for the players who left).
+ * The indices are updated once per run moving only the players and entities which changed their chunks
+ * and the eye positions of the players are snapshot once per run so that all entities get checked against them.
+ * <p>
+ * {@link #update(Collection) Updates} and modifications of the entities require exclusive access
+ * while the cells may be {@link #rerenderCell(World, long, Set, Scratch) rerendered} concurrently
+ * as long as each of them is rerendered by a single thread at a time with its own {@link Scratch}.
+ *
+ * @param <E> type of observed entities
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class EntityObservation<E extends ObservableFakeEntity> {
+
+    /**
+     * Index of the online players
+     */
+    @ToString.Exclude SpatialIndex<Player> playerIndex = new SpatialIndex<>();
+
+    /**
+     * Index of the entities having view distance
+     */
+    @ToString.Exclude SpatialIndex<E> entityIndex = new SpatialIndex<>();
+
+    /**
+     * Players for whom the entities were rerendered on the previous run
+     */
+    @ToString.Exclude Map<E, NearPlayers> nearPlayers = new HashMap<>();
+
+    /**
+     * Indices of the players' snapshots taken on the current run
+     */
+    @ToString.Exclude Object2IntMap<Player> playerSnapshots = new Object2IntOpenHashMap<>();
+
+    /**
+     * Worlds of the players' snapshots
+     */
+    @ToString.Exclude @NonFinal World[] snapshotWorlds = new World[0];
+
+    /**
+     * Positions of the eyes of the players' snapshots stored as {@code x, y, z} triples
+     */
+    @ToString.Exclude @NonFinal double[] snapshotEyes = new double[0];
+
+    /**
+     * Scratch location used by updates
+     */
+    @ToString.Exclude Location location = new Location(null, 0, 0, 0);
+
+    /**
+     * Stamp of the current run
+     */
+    @NonFinal int stamp;
+
+    EntityObservation() {
+        playerSnapshots.defaultReturnValue(-1);
+    }
+
+    /**
+     * Adds the entity to this observation.
+     *
+     * @param entity entity to add
+     */
+    void addEntity(final @NonNull E entity) {
+        // all of the players get checked on the first run
+        nearPlayers.put(entity, new NearPlayers(new HashSet<>(entity.getPlayers())));
+    }
+
+    /**
+     * Removes the entity from this observation.
+     *
+     * @param entity entity to remove
+     */
+    void removeEntity(final @NonNull E entity) {
+        entityIndex.remove(entity);
+        nearPlayers.remove(entity);
+    }
+
+    /**
+     * Adds the player to the entity making sure that it is checked on the next run.
+     *
+     * @param entity entity to which to add the player
+     * @param player player to add
+     */
+    void addPlayer(final @NonNull E entity, final @NonNull Player player) {
+        entity.addPlayer(player);
+
+        val entityNearPlayers = nearPlayers.get(entity);
+        if (entityNearPlayers != null) entityNearPlayers.players.add(player);
+    }
+
+    /**
+     * Starts the new run snapshotting the players and updating the indices.
+     * Entities without view distance get rerendered for all of their players immediately.
+     *
+     * @param entities observed entities
+     */
+    void update(final @NonNull Collection<? extends E> entities) {
+        val stamp = ++this.stamp;
+        snapshotPlayers(stamp);
+
+        val location = this.location;
+        for (val entity : entities) {
+            final World world;
+            if (entity.getViewDistance() < 0 || (world = entity.getLocation(location).getWorld()) == null) {
+                entityIndex.remove(entity);
+                entity.attemptRerenderForAll();
+            } else entityIndex.update(entity, world, location.getX(), location.getZ(), stamp);
+        }
+        location.setWorld(null);
+    }
+
+    /**
+     * Performs the action for each of the non-empty cells of entities.
+     *
+     * @param action action to perform
+     *
+     * @apiNote this should not be called concurrently with updates
+     */
+    void forEachCell(final @NonNull SpatialIndex.CellAction<E> action) {
+        entityIndex.forEachCell(action);
+    }
+
+    /**
+     * Snapshots the eye positions of the online players and updates the index of them.
+     *
+     * @param stamp stamp of the current run
+     */
+    private void snapshotPlayers(final int stamp) {
+        val players = Bukkit.getOnlinePlayers();
+        val playersCount = players.size();
+        if (snapshotWorlds.length < playersCount) {
+            val capacity = Math.max(playersCount, snapshotWorlds.length << 1);
+            snapshotWorlds = new World[capacity];
+            snapshotEyes = new double[capacity * 3];
+        }
+
+        final Object2IntMap<Player> playerSnapshots;
+        (playerSnapshots = this.playerSnapshots).clear();
+        final World[] snapshotWorlds = this.snapshotWorlds;
+        final double[] snapshotEyes = this.snapshotEyes;
+        val location = this.location;
+
+        var snapshot = 0;
+        for (val player : players) {
+            // the collection of online players may have grown since its size was got
+            if (snapshot == snapshotWorlds.length) break;
+
+            val world = player.getLocation(location).getWorld();
+            if (world == null) continue;
+
+            final double x = location.getX(), z = location.getZ();
+            playerIndex.update(player, world, x, z, stamp);
+
+            playerSnapshots.put(player, snapshot);
+            snapshotWorlds[snapshot] = world;
+            val offset = snapshot * 3;
+            snapshotEyes[offset] = x;
+            snapshotEyes[offset + 1] = location.getY() + player.getEyeHeight();
+            snapshotEyes[offset + 2] = z;
+            snapshot++;
+        }
+        // the worlds should not be retained by the snapshots which are no longer used
+        Arrays.fill(snapshotWorlds, snapshot, snapshotWorlds.length, null);
+        location.setWorld(null);
+
+        playerIndex.removeStale(stamp);
+    }
+
+    /**
+     * Attempts to rerender the entity for the player using the player's snapshot if it is present.
+     *
+     * @param entity entity to rerender
+     * @param player player for whom to rerender the entity
+     * @param snapshot index of the player's snapshot or {@code -1} if there is none
+     */
+    private void attemptRerender(final E entity, final Player player, final int snapshot) {
+        if (snapshot < 0) entity.attemptRerender(player);
+        else {
+            final double[] snapshotEyes;
+            val offset = snapshot * 3;
+            entity.attemptRerender(
+                    player, snapshotWorlds[snapshot],
+                    (snapshotEyes = this.snapshotEyes)[offset], snapshotEyes[offset + 1], snapshotEyes[offset + 2]
+            );
+        }
+    }
+
+    /**
+     * Rerenders the entities of the cell for the players near them.
+     *
+     * @param world world of the cell
+     * @param key key of the cell
+     * @param cellEntities entities of the cell
+     * @param scratch scratch objects of the current thread
+     */
+    void rerenderCell(final @NonNull World world, final long key, final @NonNull Set<E> cellEntities,
+                      final @NonNull Scratch scratch) {
+        // rendered entities are only unrendered beyond the despawn distance
+        var distance = 0;
+        for (val entity : cellEntities) distance = Math.max(
+                distance, Math.max(entity.getViewDistance(), entity.getDespawnDistance())
+        );
+
+        val candidatePlayers = scratch.candidatePlayers;
+        val candidateSnapshots = scratch.candidateSnapshots;
+        try {
+            playerIndex.collectNear(world, key, SpatialIndex.cellRadius(distance), candidatePlayers);
+            for (val player : candidatePlayers) candidateSnapshots.add(playerSnapshots.getInt(player));
+
+            val candidatesCount = candidatePlayers.size();
+            for (val entity : cellEntities) {
+                val entityNearPlayers = nearPlayers.get(entity);
+                if (entityNearPlayers == null) continue;
+
+                val currentNearPlayers = scratch.spareNearPlayers;
+                for (var candidate = 0; candidate < candidatesCount; candidate++) {
+                    val player = candidatePlayers.get(candidate);
+                    if (entity.containsPlayer(player)) {
+                        currentNearPlayers.add(player);
+                        attemptRerender(entity, player, candidateSnapshots.getInt(candidate));
+                    }
+                }
+
+                val previousNearPlayers = entityNearPlayers.players;
+                entityNearPlayers.players = currentNearPlayers;
+                // unrender the entity for the players who are no longer near it
+                for (val player : previousNearPlayers) if (!currentNearPlayers.contains(player)) attemptRerender(
+                        entity, player, playerSnapshots.getInt(player)
+                );
+                previousNearPlayers.clear();
+                scratch.spareNearPlayers = previousNearPlayers;
+            }
+        } finally {
+            // the scratches are cleared so that the threads of the pool do not retain the players
+            candidatePlayers.clear();
+            candidateSnapshots.clear();
+        }
+    }
+
+    /**
+     * Players for whom the entity was rerendered on the previous run.
+     */
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class NearPlayers {
+
+        @NonNull Set<Player> players;
+    }
+
+    /**
+     * Scratch objects reused by a thread rerendering the cells.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    static final class Scratch {
+
+        final List<Player> candidatePlayers = new ArrayList<>();
+        final IntList candidateSnapshots = new IntArrayList();
+        Set<Player> spareNearPlayers = new HashSet<>();
+    }
+}
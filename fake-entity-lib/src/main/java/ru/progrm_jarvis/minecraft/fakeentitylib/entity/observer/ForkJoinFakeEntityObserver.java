@@ -0,0 +1,316 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.observer;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import ru.progrm_jarvis.minecraft.commons.schedule.task.AbstractSchedulerRunnable;
+import ru.progrm_jarvis.minecraft.commons.util.shutdown.ShutdownHooks;
+import ru.progrm_jarvis.minecraft.fakeentitylib.entity.ObservableFakeEntity;
+import ru.progrm_jarvis.minecraft.fakeentitylib.entity.management.AbstractSetBasedEntityManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static ru.progrm_jarvis.minecraft.commons.event.FluentBukkitEvents.on;
+import static ru.progrm_jarvis.minecraft.commons.util.hack.PreSuperCheck.beforeSuper;
+
+/**
+ * Observer rerendering all of its entities by a single periodic task
+ * which partitions them into chunks processed in parallel by a work-stealing {@link ForkJoinPool}.
+ * <p>
+ * Unlike {@link PeriodicFakeEntityObserver} which permanently assigns each entity to one of its tasks
+ * this balances the load on each run so that no thread stays idle while others are overloaded.
+ *
+ * @param <E> type of entities observed
+ *
+ * @see EntityObservation algorithm used for the observation
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PROTECTED, makeFinal = true)
+public class ForkJoinFakeEntityObserver<E extends ObservableFakeEntity>
+        extends AbstractSetBasedEntityManager<E> implements FakeEntityObserver<E> {
+
+    boolean global;
+    long interval;
+    boolean async;
+    int entitiesPerTask;
+
+    @ToString.Exclude ForkJoinPool pool;
+    @ToString.Exclude ReadWriteLock lock = new ReentrantReadWriteLock();
+    @ToString.Exclude EntityObservation<E> observation = new EntityObservation<>();
+    @ToString.Exclude ThreadLocal<EntityObservation.Scratch> scratches
+            = ThreadLocal.withInitial(EntityObservation.Scratch::new);
+    @ToString.Exclude RedrawEntitiesRunnable task = new RedrawEntitiesRunnable();
+
+    /**
+     * Statistics of the runs of this observer
+     */
+    @NonFinal volatile TickStats stats = TickStats.EMPTY;
+
+    /**
+     * Creates a new fork-join observer.
+     *
+     * @param plugin parent plugin of this observer
+     * @param concurrent whether or not the entities of this observer may be managed concurrently
+     * @param global whether or not global entities should be observed for all online players
+     * @param interval interval in ticks between the runs of this observer
+     * @param async whether or not the runs should be performed asynchronously
+     * @param parallelism parallelism level of the pool rerendering the entities
+     * @param entitiesPerTask number of entities after which a chunk gets split between the pool's threads
+     */
+    @Builder
+    public ForkJoinFakeEntityObserver(final @NonNull Plugin plugin, final boolean concurrent,
+                                      final boolean global, final long interval, final boolean async,
+                                      final int parallelism, final int entitiesPerTask) {
+        super(plugin, beforeSuper(concurrent,
+                () -> checkArgument(interval > 0, "interval should be positive"),
+                () -> checkArgument(parallelism > 0, "parallelism should be positive"),
+                () -> checkArgument(entitiesPerTask > 0, "entitiesPerTask should be positive")
+        ));
+
+        this.global = global;
+        this.interval = interval;
+        this.async = async;
+        this.entitiesPerTask = entitiesPerTask;
+
+        pool = new ForkJoinPool(parallelism);
+
+        final ShutdownHooks shutdownHooks;
+        (shutdownHooks = this.shutdownHooks).add(task::cancel).add(pool::shutdown);
+
+        if (global) shutdownHooks
+                .add(on(PlayerJoinEvent.class)
+                        .plugin(plugin)
+                        .register(event -> addPlayer(event.getPlayer()))::shutdown)
+                .add(on(PlayerQuitEvent.class)
+                        .plugin(plugin)
+                        .register(event -> removePlayer(event.getPlayer()))::shutdown);
+
+        shutdownHooks.add(on(PlayerRespawnEvent.class)
+                .plugin(plugin)
+                .register(event -> {
+                    final Player player;
+                    removePlayer(player = event.getPlayer());
+                    addPlayer(player);
+                })::shutdown);
+
+        if (async) task.runTaskTimerAsynchronously(plugin, interval, interval);
+        else task.runTaskTimer(plugin, interval, interval);
+    }
+
+    /**
+     * Gets the parallelism level of the pool rerendering the entities.
+     *
+     * @return parallelism level of this observer
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Gets the statistics of the runs of this observer.
+     *
+     * @return statistics of the runs since the creation of this observer or the last {@link #resetStats() reset}
+     */
+    public @NotNull TickStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Resets the statistics of the runs of this observer.
+     */
+    public void resetStats() {
+        stats = TickStats.EMPTY;
+    }
+
+    protected void addPlayer(final @NonNull Player player) {
+        lock.writeLock().lock();
+        try {
+            for (val entity : entities) observation.addPlayer(entity, player);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    protected void removePlayer(final @NonNull Player player) {
+        for (val entity : entities) entity.removePlayer(player);
+    }
+
+    @Override
+    public void manageEntity(final @NonNull E entity) {
+        lock.writeLock().lock();
+        try {
+            if (global && entity.isGlobal()) entity.addOnlinePlayers();
+            super.manageEntity(entity);
+            observation.addEntity(entity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void unmanageEntity(final @NonNull E entity) {
+        lock.writeLock().lock();
+        try {
+            super.unmanageEntity(entity);
+            observation.removeEntity(entity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Statistics of the runs of an observer.
+     */
+    @Value
+    public static class TickStats {
+
+        /**
+         * Statistics of no runs
+         */
+        static final TickStats EMPTY = new TickStats(0, 0, 0, 0, 0, 0);
+
+        /**
+         * Number of the runs
+         */
+        long ticks;
+
+        /**
+         * Total duration of the runs in nanoseconds
+         */
+        long totalNanos;
+
+        /**
+         * Duration of the last run in nanoseconds
+         */
+        long lastNanos;
+
+        /**
+         * Maximal duration of a run in nanoseconds
+         */
+        long maxNanos;
+
+        /**
+         * Number of entities observed on the last run
+         */
+        int lastEntities;
+
+        /**
+         * Number of non-empty chunks of entities on the last run
+         */
+        int lastChunks;
+
+        /**
+         * Gets the average duration of the runs.
+         *
+         * @return average duration of the runs in nanoseconds or {@code 0} if there were none
+         */
+        public long getAverageNanos() {
+            return ticks == 0 ? 0 : totalNanos / ticks;
+        }
+
+        /**
+         * Creates the statistics with the run added.
+         *
+         * @param nanos duration of the run in nanoseconds
+         * @param entities number of entities observed on the run
+         * @param chunks number of non-empty chunks of entities on the run
+         * @return new statistics
+         */
+        TickStats with(final long nanos, final int entities, final int chunks) {
+            return new TickStats(ticks + 1, totalNanos + nanos, nanos, Math.max(maxNanos, nanos), entities, chunks);
+        }
+    }
+
+    /**
+     * Task driving the runs of the observer.
+     */
+    @ToString
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    protected class RedrawEntitiesRunnable extends AbstractSchedulerRunnable {
+
+        // the cells of entities flattened on each run, only accessed by the running task and its subtasks
+        @ToString.Exclude List<World> cellWorlds = new ArrayList<>();
+        @ToString.Exclude LongList cellKeys = new LongArrayList();
+        @ToString.Exclude List<Set<E>> cellEntities = new ArrayList<>();
+        /**
+         * Numbers of entities in the cells up to each of them (inclusive)
+         */
+        @ToString.Exclude IntList cellEntitiesEnds = new IntArrayList();
+
+        @Override
+        public void run() {
+            val startTime = System.nanoTime();
+
+            lock.readLock().lock();
+            try {
+                observation.update(entities);
+
+                observation.forEachCell((world, key, entitiesOfCell) -> {
+                    cellWorlds.add(world);
+                    cellKeys.add(key);
+                    cellEntities.add(entitiesOfCell);
+                    cellEntitiesEnds.add(entitiesBefore(cellEntitiesEnds.size()) + entitiesOfCell.size());
+                });
+
+                val cellsCount = cellWorlds.size();
+                try {
+                    if (cellsCount != 0) pool.invoke(new CellRangeTask(
+                            cellEntitiesEnds, entitiesPerTask, this::rerenderCells, 0, cellsCount
+                    ));
+                } finally {
+                    stats = stats.with(
+                            System.nanoTime() - startTime,
+                            cellsCount == 0 ? 0 : cellEntitiesEnds.getInt(cellsCount - 1), cellsCount
+                    );
+
+                    cellWorlds.clear();
+                    cellKeys.clear();
+                    cellEntities.clear();
+                    cellEntitiesEnds.clear();
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Gets the number of entities in the cells preceding the given one.
+         *
+         * @param cell index of the cell
+         * @return number of entities in the cells preceding the cell
+         */
+        private int entitiesBefore(final int cell) {
+            return cell == 0 ? 0 : cellEntitiesEnds.getInt(cell - 1);
+        }
+
+        /**
+         * Rerenders the range of cells.
+         *
+         * @param fromCell index of the first cell to rerender (inclusive)
+         * @param toCell index of the last cell to rerender (exclusive)
+         */
+        private void rerenderCells(final int fromCell, final int toCell) {
+            val scratch = scratches.get();
+            for (var cell = fromCell; cell < toCell; cell++) observation.rerenderCell(
+                    cellWorlds.get(cell), cellKeys.getLong(cell), cellEntities.get(cell), scratch
+            );
+        }
+    }
+}
@@ -88,7 +88,12 @@ public class PeriodicFakeEntityObserver<E extends ObservableFakeEntity>
     }
 
     protected void addPlayer(final @NonNull Player player) {
-        for (val entity : entities) entity.addPlayer(player);
+        lock.lock();
+        try {
+            for (val task : tasks) task.addPlayer(player);
+        } finally {
+            lock.unlock();
+        }
     }
 
     protected void removePlayer(final @NonNull Player player) {
@@ -160,6 +165,11 @@ public class PeriodicFakeEntityObserver<E extends ObservableFakeEntity>
         }
     }
 
+    /**
+     * Task rerendering its entities for the players near them.
+     *
+     * @see EntityObservation algorithm used for the observation
+     */
     @ToString
     @EqualsAndHashCode(callSuper = true)
     protected class RedrawEntitiesRunnable extends AbstractSchedulerRunnable {
@@ -167,6 +177,18 @@ public class PeriodicFakeEntityObserver<E extends ObservableFakeEntity>
         protected final Collection<E> entities = entitiesSetSupplier.get();
         private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
+        /**
+         * Observation of the entities of this task, only updated by the running task
+         */
+        @ToString.Exclude @EqualsAndHashCode.Exclude
+        private final EntityObservation<E> observation = new EntityObservation<>();
+
+        /**
+         * Scratch objects reused by the running task
+         */
+        @ToString.Exclude @EqualsAndHashCode.Exclude
+        private final EntityObservation.Scratch scratch = new EntityObservation.Scratch();
+
         public int size() {
             return entities.size();
         }
@@ -180,6 +202,7 @@ public class PeriodicFakeEntityObserver<E extends ObservableFakeEntity>
             try {
                 if (global && entity.isGlobal()) entity.addOnlinePlayers();
                 entities.add(entity);
+                observation.addEntity(entity);
             } finally {
                 lock.writeLock().unlock();
             }
@@ -188,17 +211,32 @@ public class PeriodicFakeEntityObserver<E extends ObservableFakeEntity>
         public boolean removeEntity(final E entity) {
             lock.writeLock().lock();
             try {
+                observation.removeEntity(entity);
+
                 return entities.remove(entity);
             } finally {
                 lock.writeLock().unlock();
             }
         }
 
+        public void addPlayer(final Player player) {
+            lock.writeLock().lock();
+            try {
+                for (val entity : entities) observation.addPlayer(entity, player);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
         @Override
         public void run() {
             lock.readLock().lock();
             try {
-                for (val entity : entities) entity.attemptRerenderForAll();
+                final EntityObservation<E> observation;
+                (observation = this.observation).update(entities);
+                observation.forEachCell((world, key, cellEntities) -> observation.rerenderCell(
+                        world, key, cellEntities, scratch
+                ));
             } finally {
                 lock.readLock().unlock();
             }
@@ -0,0 +1,187 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.observer;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.bukkit.World;
+import ru.progrm_jarvis.minecraft.commons.chunk.ChunkUtil;
+
+import java.util.*;
+
+/**
+ * Spatial hash of objects by chunk-sized cells of their worlds.
+ * <p>
+ * Cells are keyed by {@link ChunkUtil#toChunkLong(int, int)} of their coordinates
+ * and the objects are only moved between them once they enter other cells.
+ * This is not thread-safe.
+ *
+ * @param <T> type of indexed objects
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class SpatialIndex<T> {
+
+    /**
+     * Positions of the indexed objects
+     */
+    @ToString.Exclude Map<T, Position> positions = new HashMap<>();
+
+    /**
+     * Non-empty cells of the worlds by their keys
+     */
+    @ToString.Exclude Map<World, Long2ObjectMap<Set<T>>> cells = new HashMap<>();
+
+    /**
+     * Gets the coordinate of the cell containing the coordinate.
+     *
+     * @param coordinate X- or Z-coordinate
+     * @return coordinate of the cell
+     */
+    static int cell(final double coordinate) {
+        return ((int) Math.floor(coordinate)) >> 4;
+    }
+
+    /**
+     * Gets the number of cells around the cell of a position
+     * which may contain the positions within the distance from it.
+     *
+     * @param distance non-negative distance
+     * @return number of cells in each direction which may contain the positions within the distance
+     */
+    static int cellRadius(final int distance) {
+        return (distance >> 4) + 1;
+    }
+
+    /**
+     * Indexes the object at the position or moves it to the cell of the position if it was indexed.
+     *
+     * @param object object to index
+     * @param world world of the object
+     * @param x X-coordinate of the object
+     * @param z Z-coordinate of the object
+     * @param stamp stamp of this update used by {@link #removeStale(int)}
+     */
+    void update(final @NonNull T object, final @NonNull World world, final double x, final double z,
+                final int stamp) {
+        val key = ChunkUtil.toChunkLong(cell(x), cell(z));
+
+        var position = positions.get(object);
+        if (position == null) positions.put(object, position = new Position(world, key, stamp));
+        else {
+            position.stamp = stamp;
+            if (position.world == world && position.key == key) return;
+
+            removeFromCell(object, position);
+            position.world = world;
+            position.key = key;
+        }
+
+        cells.computeIfAbsent(world, indexedWorld -> new Long2ObjectOpenHashMap<>())
+                .computeIfAbsent(key, indexedKey -> new HashSet<>()).add(object);
+    }
+
+    /**
+     * Removes the object from this index.
+     *
+     * @param object object to remove
+     */
+    void remove(final @NonNull T object) {
+        val position = positions.remove(object);
+        if (position != null) removeFromCell(object, position);
+    }
+
+    /**
+     * Removes all objects which were not updated with the given stamp.
+     *
+     * @param stamp stamp of the last update
+     */
+    void removeStale(final int stamp) {
+        val iterator = positions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            val entry = iterator.next();
+            val position = entry.getValue();
+            if (position.stamp != stamp) {
+                iterator.remove();
+                removeFromCell(entry.getKey(), position);
+            }
+        }
+    }
+
+    /**
+     * Adds all objects of the cells around the given one to the collection.
+     *
+     * @param world world of the cells
+     * @param key key of the central cell
+     * @param radius number of cells in each direction from the central one
+     * @param target collection to which to add the objects
+     */
+    void collectNear(final @NonNull World world, final long key, final int radius,
+                     final @NonNull Collection<? super T> target) {
+        val worldCells = cells.get(world);
+        if (worldCells == null) return;
+
+        final int cellX = ChunkUtil.chunkX(key), cellZ = ChunkUtil.chunkZ(key);
+        for (var x = cellX - radius; x <= cellX + radius; x++) for (var z = cellZ - radius; z <= cellZ + radius; z++) {
+            val cell = worldCells.get(ChunkUtil.toChunkLong(x, z));
+            if (cell != null) target.addAll(cell);
+        }
+    }
+
+    /**
+     * Performs the action for each of the non-empty cells.
+     *
+     * @param action action to perform
+     *
+     * @apiNote the index should not be modified by the action
+     */
+    void forEachCell(final @NonNull CellAction<T> action) {
+        for (val worldCells : cells.entrySet()) {
+            val world = worldCells.getKey();
+            for (val cell : worldCells.getValue().long2ObjectEntrySet()) action.accept(
+                    world, cell.getLongKey(), cell.getValue()
+            );
+        }
+    }
+
+    private void removeFromCell(final @NonNull T object, final @NonNull Position position) {
+        val worldCells = cells.get(position.world);
+        if (worldCells == null) return;
+
+        val cell = worldCells.get(position.key);
+        if (cell != null && cell.remove(object) && cell.isEmpty()) {
+            worldCells.remove(position.key);
+            if (worldCells.isEmpty()) cells.remove(position.world);
+        }
+    }
+
+    /**
+     * Action performed on a cell.
+     *
+     * @param <T> type of indexed objects
+     */
+    @FunctionalInterface
+    interface CellAction<T> {
+
+        /**
+         * Performs the action on the cell.
+         *
+         * @param world world of the cell
+         * @param key key of the cell
+         * @param objects objects of the cell
+         */
+        void accept(World world, long key, Set<T> objects);
+    }
+
+    /**
+     * Mutable position of an indexed object.
+     */
+    @AllArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class Position {
+
+        @NonNull World world;
+        long key;
+        int stamp;
+    }
+}
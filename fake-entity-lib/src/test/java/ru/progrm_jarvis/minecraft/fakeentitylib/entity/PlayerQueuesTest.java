@@ -0,0 +1,99 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity;
+
+import lombok.val;
+import lombok.var;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class PlayerQueuesTest {
+
+    private static final int THREADS = 4, PLAYERS = 3, ELEMENTS = 30_000;
+
+    private static void drain(final PlayerQueues<Integer> queues, final Map<Player, List<Integer>> drained) {
+        for (val player : queues.players()) {
+            val queue = queues.remove(player);
+            if (queue != null) drained.computeIfAbsent(player, drainedPlayer -> new ArrayList<>()).addAll(queue);
+        }
+    }
+
+    @Test
+    void testConcurrentAdditionsAreNeitherLostNorReordered() throws InterruptedException {
+        val queues = new PlayerQueues<Integer>();
+        val players = new Player[PLAYERS];
+        for (var player = 0; player < PLAYERS; player++) players[player] = mock(Player.class);
+
+        val start = new CountDownLatch(1);
+        val failed = new AtomicBoolean();
+        val threads = new Thread[THREADS];
+        for (var thread = 0; thread < THREADS; thread++) {
+            final int threadIndex = thread;
+            (threads[thread] = new Thread(() -> {
+                try {
+                    start.await();
+                    // each thread's elements are increasing so that their order can be checked
+                    for (var element = 0; element < ELEMENTS; element++) queues.add(
+                            players[element % PLAYERS], threadIndex * ELEMENTS + element
+                    );
+                } catch (final InterruptedException e) {
+                    failed.set(true);
+                }
+            })).start();
+        }
+
+        val drained = new HashMap<Player, List<Integer>>();
+        start.countDown();
+        var alive = true;
+        while (alive) {
+            drain(queues, drained);
+            alive = false;
+            for (val thread : threads) alive |= thread.isAlive();
+        }
+        for (val thread : threads) thread.join();
+        drain(queues, drained);
+
+        assertFalse(failed.get());
+        assertTrue(queues.isEmpty());
+        for (val player : players) {
+            val elements = drained.get(player);
+            assertNotNull(elements);
+            assertEquals(THREADS * ELEMENTS / PLAYERS, elements.size(), "Each added element is drained once");
+
+            val lastElements = new int[THREADS];
+            Arrays.fill(lastElements, -1);
+            for (val element : elements) {
+                val thread = element / ELEMENTS;
+                assertTrue(element > lastElements[thread], "Elements of each thread are drained in order");
+                lastElements[thread] = element;
+            }
+        }
+    }
+
+    @Test
+    void testRemovedQueueIsNotModified() {
+        val queues = new PlayerQueues<Integer>();
+        val player = mock(Player.class);
+
+        queues.add(player, 1);
+        queues.add(player, 2);
+        val queue = queues.remove(player);
+        assertNotNull(queue);
+        queues.add(player, 3);
+
+        assertEquals(Arrays.asList(1, 2), queue);
+        assertEquals(Collections.singletonList(3), queues.remove(player));
+        assertNull(queues.remove(player));
+        assertTrue(queues.isEmpty());
+    }
+}
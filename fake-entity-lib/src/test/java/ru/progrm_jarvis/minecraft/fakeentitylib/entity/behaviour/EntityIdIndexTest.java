@@ -0,0 +1,48 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.behaviour;
+
+import lombok.val;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.progrm_jarvis.minecraft.fakeentitylib.entity.FakeEntity;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EntityIdIndexTest {
+
+    private static FakeEntity entity(final int id) {
+        val entity = mock(FakeEntity.class);
+        when(entity.getEntityId()).thenReturn(id);
+
+        return entity;
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testLookup(final boolean concurrent) {
+        val index = new EntityIdIndex<FakeEntity>(concurrent);
+        assertNull(index.get(1));
+
+        val entities = new FakeEntity[1024];
+        for (var id = 0; id < entities.length; id++) index.add(entities[id] = entity(id));
+        for (var id = 0; id < entities.length; id++) assertSame(entities[id], index.get(id));
+        assertNull(index.get(entities.length));
+        assertNull(index.get(-1));
+
+        index.remove(entities[1]);
+        assertNull(index.get(1));
+        assertSame(entities[2], index.get(2));
+
+        // removal of other entity with the same ID does not affect the indexed one
+        index.remove(entity(2));
+        assertSame(entities[2], index.get(2));
+
+        val replacement = entity(3);
+        index.add(replacement);
+        assertSame(replacement, index.get(3));
+        index.remove(entities[3]);
+        assertSame(replacement, index.get(3));
+    }
+}
@@ -0,0 +1,65 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.observer;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CellRangeTaskTest {
+
+    @Test
+    void testEachCellIsProcessedOnce() {
+        val random = new Random();
+        val pool = new ForkJoinPool(4);
+        try {
+            for (var run = 0; run < 64; run++) {
+                val cellsCount = 1 + random.nextInt(500);
+                val cellEntitiesEnds = new IntArrayList(cellsCount);
+                var entities = 0;
+                // cells with many entities are mixed with small ones
+                for (var cell = 0; cell < cellsCount; cell++) cellEntitiesEnds.add(
+                        entities += random.nextInt(10) == 0 ? random.nextInt(200) : 1 + random.nextInt(4)
+                );
+                val entitiesPerTask = 1 + random.nextInt(100);
+
+                val processed = new AtomicIntegerArray(cellsCount);
+                val ranges = new AtomicInteger();
+                pool.invoke(new CellRangeTask(cellEntitiesEnds, entitiesPerTask, (fromCell, toCell) -> {
+                    assertTrue(fromCell < toCell, "Ranges are not empty");
+                    ranges.incrementAndGet();
+                    for (var cell = fromCell; cell < toCell; cell++) processed.incrementAndGet(cell);
+                }, 0, cellsCount));
+
+                for (var cell = 0; cell < cellsCount; cell++) assertEquals(
+                        1, processed.get(cell), "Each cell is processed exactly once"
+                );
+                // the range gets split once it has more entities than a single task should process
+                if (entities > entitiesPerTask && cellsCount > 1) assertTrue(ranges.get() > 1);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSingleCellIsNotSplit() {
+        val ranges = new AtomicInteger();
+        ForkJoinPool.commonPool().invoke(new CellRangeTask(
+                new IntArrayList(new int[]{1000}), 1, (fromCell, toCell) -> {
+                    assertEquals(0, fromCell);
+                    assertEquals(1, toCell);
+                    ranges.incrementAndGet();
+                }, 0, 1
+        ));
+
+        assertEquals(1, ranges.get());
+    }
+}
@@ -0,0 +1,20 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.observer;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ForkJoinFakeEntityObserverTest {
+
+    @Test
+    void testTickStats() {
+        val empty = ForkJoinFakeEntityObserver.TickStats.EMPTY;
+        assertEquals(0, empty.getTicks());
+        assertEquals(0, empty.getAverageNanos());
+
+        val stats = empty.with(100, 10, 2).with(300, 20, 4).with(200, 5, 1);
+        assertEquals(new ForkJoinFakeEntityObserver.TickStats(3, 600, 200, 300, 5, 1), stats);
+        assertEquals(200, stats.getAverageNanos());
+    }
+}
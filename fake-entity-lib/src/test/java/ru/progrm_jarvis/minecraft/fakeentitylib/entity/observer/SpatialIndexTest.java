@@ -0,0 +1,73 @@
+package ru.progrm_jarvis.minecraft.fakeentitylib.entity.observer;
+
+import lombok.val;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+import ru.progrm_jarvis.minecraft.commons.chunk.ChunkUtil;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class SpatialIndexTest {
+
+    private static Set<String> near(final SpatialIndex<String> index, final World world,
+                                    final int cellX, final int cellZ, final int radius) {
+        val objects = new HashSet<String>();
+        index.collectNear(world, ChunkUtil.toChunkLong(cellX, cellZ), radius, objects);
+
+        return objects;
+    }
+
+    @Test
+    void testCells() {
+        assertEquals(0, SpatialIndex.cell(15.9));
+        assertEquals(1, SpatialIndex.cell(16));
+        assertEquals(-1, SpatialIndex.cell(-0.1));
+        assertEquals(-2, SpatialIndex.cell(-16.5));
+
+        assertEquals(1, SpatialIndex.cellRadius(0));
+        assertEquals(1, SpatialIndex.cellRadius(15));
+        assertEquals(2, SpatialIndex.cellRadius(16));
+    }
+
+    @Test
+    void testUpdates() {
+        val world = mock(World.class);
+        val otherWorld = mock(World.class);
+        val index = new SpatialIndex<String>();
+
+        index.update("a", world, 1, 1, 1);
+        index.update("b", world, 40, -40, 1);
+        index.update("c", otherWorld, 1, 1, 1);
+        assertEquals(setOf("a"), near(index, world, 0, 0, 1));
+        assertEquals(setOf("a", "b"), near(index, world, 0, 0, 3));
+        assertEquals(setOf("c"), near(index, otherWorld, 0, 0, 3));
+
+        // moves between the cells
+        index.update("a", world, 100, 100, 2);
+        index.update("c", world, -1, -1, 2);
+        assertEquals(setOf("c"), near(index, world, 0, 0, 1));
+        assertEquals(setOf("a"), near(index, world, 6, 6, 0));
+        assertEquals(setOf(), near(index, otherWorld, 0, 0, 3));
+
+        // "b" was not updated with the last stamp
+        index.removeStale(2);
+        assertEquals(setOf("c"), near(index, world, 0, 0, 3));
+
+        index.remove("c");
+        val cells = new HashSet<Long>();
+        index.forEachCell((cellWorld, key, objects) -> cells.add(key));
+        assertEquals(setOf(ChunkUtil.toChunkLong(6, 6)), cells);
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> setOf(final T... elements) {
+        val set = new HashSet<T>();
+        for (val element : elements) set.add(element);
+
+        return set;
+    }
+}
@@ -2,18 +2,21 @@ package ru.progrm_jarvis.minecraft.commons.mapimage;
 
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import ru.progrm_jarvis.javacommons.lazy.Lazy;
 import ru.progrm_jarvis.minecraft.commons.util.hack.PreSuperCheck;
 
 import java.awt.image.BufferedImage;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.blankPixels;
-import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR_CODE;
 
 /**
  * The default {@link MapImage} implementation which stores its pixels as a 1-dimensional.
@@ -28,7 +31,7 @@ public class DefaultMapImage implements MapImage {
      * {@code byte}-array of pixels of an image by X, Y indexes.
      * A pixel can be accessed as {@code pixels[x + y * getWidth()]}
      */
-    byte[] pixels;
+    @Setter(AccessLevel.PROTECTED) @NonFinal byte[] pixels;
     @Getter int width, height;
     byte displayMode;
 
@@ -45,7 +48,12 @@ public class DefaultMapImage implements MapImage {
     /**
      * All subscribers active.
      */
-    Collection<Consumer<Delta>> updateSubscribers = new ArrayList<>();
+    UpdateSubscribers<Delta> updateSubscribers = new UpdateSubscribers<>();
+
+    /**
+     * Number of modifications of the pixels made by the drawers
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude AtomicInteger modificationCount = new AtomicInteger();
 
     /**
      * Creates new map image from pixels.
@@ -77,16 +85,6 @@ public class DefaultMapImage implements MapImage {
         return pixels;
     }
 
-    @Override
-    public byte[] getMapData(final int leastX, final int leastY, final int width, final int height) {
-        val data = new byte[width * height];
-        var i = 0;
-        final int xBound = leastX + width, yBound = leastY + height;
-        for (var x = leastX; x < xBound; x++) for (var y = 0; y < yBound; y++) data[i] = pixels[x + y * width];
-
-        return data;
-    }
-
     /**
      * Creates new map image from image.
      *
@@ -100,6 +98,22 @@ public class DefaultMapImage implements MapImage {
         return new DefaultMapImage(MapImages.getMapImagePixels(image, resize), displayMode);
     }
 
+    /**
+     * Asynchronously creates new map image from image.
+     *
+     * @param image from which to create the map image
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @param displayMode display mode of the image
+     * @return future of created map image
+     *
+     * @see MapImages#getMapImagePixelsAsync(BufferedImage, boolean) used for image conversion
+     */
+    public static CompletableFuture<MapImage> fromAsync(final @NonNull BufferedImage image, final boolean resize,
+                                                        final byte displayMode) {
+        return MapImages.getMapImagePixelsAsync(image, resize)
+                .thenApply(pixels -> new DefaultMapImage(pixels, displayMode));
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Updates and Subscriptions logic
     ///////////////////////////////////////////////////////////////////////////
@@ -110,18 +124,40 @@ public class DefaultMapImage implements MapImage {
     }
 
     @Override
-    public void subscribeOnUpdates(final Consumer<Delta> subscriber) {
-        updateSubscribers.add(subscriber);
+    public void subscribeOnUpdates(final @NonNull Consumer<Delta> subscriber) {
+        updateSubscribers.subscribe(subscriber, null);
     }
 
     @Override
-    public void unsubscribeFromUpdates(final Consumer<Delta> subscriber) {
-        updateSubscribers.remove(subscriber);
+    public void subscribeOnUpdates(final @NonNull Consumer<Delta> subscriber, final @NonNull Executor executor) {
+        updateSubscribers.subscribe(subscriber, executor);
+    }
+
+    @Override
+    public void unsubscribeFromUpdates(final @NonNull Consumer<Delta> subscriber) {
+        updateSubscribers.unsubscribe(subscriber);
     }
 
     @Override
     public void onUpdate(final @NonNull Delta delta) {
-        for (val updateSubscriber : updateSubscribers) updateSubscriber.accept(delta);
+        // the pixels may also be changed directly by the owner of the array (such as the wall of this tile)
+        markModified();
+        updateSubscribers.publish(delta);
+    }
+
+    @Override
+    public int getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * Marks the pixels of this image modified.
+     *
+     * @apiNote this should be called after the pixels get modified
+     */
+    protected void markModified() {
+        // the count is not allowed to become negative as it would mean that the modifications are not tracked
+        modificationCount.updateAndGet(count -> count == Integer.MAX_VALUE ? 0 : count + 1);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -138,19 +174,140 @@ public class DefaultMapImage implements MapImage {
         return bufferedDrawer.get();
     }
 
+    /**
+     * Gets the pixels of this image which are about to be modified by its drawers.
+     *
+     * @return pixels of this image which may be modified
+     */
+    protected byte[] writablePixels() {
+        return pixels;
+    }
+
+    /**
+     * Allocates the buffer of the buffered drawer.
+     *
+     * @return array of {@link #getWidth()} * {@link #getHeight()} pixels
+     * filled with {@link MapImageColor#NO_COLOR_CODE}
+     */
+    protected byte[] allocateBuffer() {
+        return blankPixels(new byte[width * height]);
+    }
+
+    /**
+     * Allocates the array of pixels of a delta created by the buffered drawer.
+     *
+     * @param length length of the array
+     * @return allocated array
+     */
+    protected byte[] allocateDeltaPixels(final int length) {
+        return new byte[length];
+    }
+
+    /**
+     * Draws the sprite onto the pixels of an image clipping it to the image's bounds.
+     *
+     * @param pixels pixels of the image on which to draw the sprite
+     * @param sprite pixels of the sprite ({@code width} columns for each of {@code height} rows)
+     * @param width width of the sprite
+     * @param height height of the sprite
+     * @param x X-coordinate of the sprite's top-left corner
+     * @param y Y-coordinate of the sprite's top-left corner
+     * @param transparentColor color of the sprite's pixels which should not be drawn
+     * @return {@code true} if any part of the sprite is inside the image and {@code false} otherwise
+     */
+    private static boolean blit(final byte[] pixels, final @NonNull byte[] sprite, final int width, final int height,
+                                final int x, final int y, final byte transparentColor) {
+        checkArgument(width >= 0 && height >= 0, "Width and height should be non-negative");
+        checkArgument(sprite.length >= width * height, "Sprite should contain at least width * height pixels");
+
+        final int leastX = max(x, 0), mostX = min(x + width, WIDTH) - 1,
+                leastY = max(y, 0), mostY = min(y + height, HEIGHT) - 1;
+        if (leastX > mostX || leastY > mostY) return false;
+
+        for (var imageY = leastY; imageY <= mostY; imageY++) {
+            final int spriteOffset = (imageY - y) * width - x, imageOffset = imageY * WIDTH;
+            for (var imageX = leastX; imageX <= mostX; imageX++) {
+                val pixel = sprite[imageX + spriteOffset];
+                if (pixel != transparentColor) pixels[imageX + imageOffset] = pixel;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies the segment onto the pixels of an image clipping it to the image's bounds.
+     *
+     * @param pixels pixels of the image on which to copy the segment
+     * @param segment pixels of the segment ({@code width} columns for each of {@code height} rows)
+     * @param width width of the segment
+     * @param height height of the segment
+     * @param x X-coordinate at which the segment's top-left corner should be copied
+     * @param y Y-coordinate at which the segment's top-left corner should be copied
+     * @return {@code true} if any part of the segment is inside the image and {@code false} otherwise
+     */
+    private static boolean copy(final byte[] pixels, final byte[] segment, final int width, final int height,
+                                final int x, final int y) {
+        final int leastX = max(x, 0), mostX = min(x + width, WIDTH) - 1,
+                leastY = max(y, 0), mostY = min(y + height, HEIGHT) - 1;
+        if (leastX > mostX || leastY > mostY) return false;
+
+        val rowLength = mostX - leastX + 1;
+        for (var imageY = leastY; imageY <= mostY; imageY++) System.arraycopy(
+                segment, leastX - x + (imageY - y) * width, pixels, leastX + imageY * WIDTH, rowLength
+        );
+
+        return true;
+    }
+
     @ToString
     @EqualsAndHashCode
     protected final class Drawer implements MapImage.Drawer {
 
         @Override
         public MapImage.Drawer px(final int x, final int y, final byte color) {
-            pixels[x + y * getWidth()] = color;
+            writablePixels()[x + y * getWidth()] = color;
+            markModified();
+
+            return this;
+        }
+
+        @Override
+        public MapImage.Drawer span(final int x1, final int x2, final int y, final byte color) {
+            final int leastX = min(x1, x2), mostX = max(x1, x2);
+            if (y >= 0 && y < HEIGHT && mostX >= 0 && leastX < WIDTH) {
+                val offset = y * WIDTH;
+                Arrays.fill(
+                        writablePixels(), offset + MapImage.Drawer.boundX(leastX),
+                        offset + MapImage.Drawer.boundX(mostX) + 1, color
+                );
+                markModified();
+            }
+
+            return this;
+        }
+
+        @Override
+        public MapImage.Drawer blit(final @NonNull byte[] sprite, final int width, final int height,
+                                    final int x, final int y, final byte transparentColor) {
+            if (DefaultMapImage.blit(writablePixels(), sprite, width, height, x, y, transparentColor)) markModified();
+
+            return this;
+        }
+
+        @Override
+        public MapImage.Drawer copyRegion(final @NonNull MapImage source, final int sourceX, final int sourceY,
+                                          final int width, final int height, final int x, final int y) {
+            if (copy(
+                    writablePixels(), source.getMapData(sourceX, sourceY, width, height), width, height, x, y
+            )) markModified();
 
             return this;
         }
 
         @Override
         public MapImage.Drawer fill(final byte color) {
+            val pixels = writablePixels();
             Arrays.fill(pixels, color);
             onUpdate(Delta.of(pixels, width, 0, 0));
 
@@ -159,7 +316,14 @@ public class DefaultMapImage implements MapImage {
     }
 
     /**
-     * Buffered drawer based on 2-dimensional {@code byte}-array of changed pixels and {@code int}-bounds.
+     * Buffered drawer based on {@code byte}-array of changed pixels and a bitmap of changed tiles.
+     * <p>
+     * The written pixels are tracked by a separate bitset so that any color (including
+     * {@link MapImageColor#NO_COLOR_CODE}) may be written and pixels which were not written are kept.
+     * <p>
+     * The image is split into {@link #TILES_PER_ROW}×{@link #TILES_PER_COLUMN} tiles
+     * of {@link #TILE_SIZE}×{@link #TILE_SIZE} pixels and the changed segment is tracked for each of them
+     * so that the changes get disposed as a few small rectangles rather than a single bounding one.
      */
     @Getter
     @ToString
@@ -168,9 +332,28 @@ public class DefaultMapImage implements MapImage {
     protected final class BufferedDrawer implements MapImage.BufferedDrawer {
 
         /**
-         * Array of changed pixels
+         * Width and height of each tile.
+         */
+        private static final int TILE_SIZE = 16,
+        /**
+         * Number of tiles in each row of the image.
+         */
+        TILES_PER_ROW = WIDTH / TILE_SIZE,
+        /**
+         * Number of tiles in each column of the image.
+         */
+        TILES_PER_COLUMN = HEIGHT / TILE_SIZE;
+
+        /**
+         * Array of changed pixels, only meaningful for the pixels marked in {@link #writtenPixels}
+         */
+        final byte[] buffer = allocateBuffer();
+
+        /**
+         * Bitset of the pixels written to the {@link #buffer} whose bit {@code x + y * }{@link #WIDTH} is set
+         * for each written pixel
          */
-        final byte[] buffer = blankPixels(new byte[DefaultMapImage.this.getWidth() * DefaultMapImage.this.getHeight()]);
+        @Getter(AccessLevel.NONE) final BitSet writtenPixels = new BitSet(width * height);
 
         boolean unchanged = true;
 
@@ -192,55 +375,226 @@ public class DefaultMapImage implements MapImage {
         mostChangedY = Delta.NONE;
 
         /**
-         * Resets this buffered drawer setting {@link #unchanged} to {@code true} and resetting its buffer.
+         * Bitmap of changed tiles whose bit {@code tileX + tileY * }{@link #TILES_PER_ROW} is set for each changed tile
+         */
+        @Getter(AccessLevel.NONE) long changedTiles;
+
+        /**
+         * Bounds of the changed segments of the tiles as 4 values (least X, least Y, most X and most Y)
+         * for each tile, only meaningful for tiles marked in {@link #changedTiles}
+         */
+        @Getter(AccessLevel.NONE) final int[] changedTileBounds = new int[TILES_PER_ROW * TILES_PER_COLUMN << 2];
+
+        /**
+         * Marks the rectangle of the image changed.
+         *
+         * @param leastX least X-coordinate of the changed rectangle
+         * @param leastY least Y-coordinate of the changed rectangle
+         * @param mostX most X-coordinate of the changed rectangle
+         * @param mostY most Y-coordinate of the changed rectangle
+         */
+        private void markChanged(final int leastX, final int leastY, final int mostX, final int mostY) {
+            if (unchanged) {
+                unchanged = false;
+
+                leastChangedX = leastX;
+                leastChangedY = leastY;
+                mostChangedX = mostX;
+                mostChangedY = mostY;
+            } else {
+                if (leastX < leastChangedX) leastChangedX = leastX;
+                if (leastY < leastChangedY) leastChangedY = leastY;
+                if (mostX > mostChangedX) mostChangedX = mostX;
+                if (mostY > mostChangedY) mostChangedY = mostY;
+            }
+
+            final int leastTileX = leastX / TILE_SIZE, leastTileY = leastY / TILE_SIZE,
+                    mostTileX = mostX / TILE_SIZE, mostTileY = mostY / TILE_SIZE;
+            val bounds = changedTileBounds;
+            for (var tileY = leastTileY; tileY <= mostTileY; tileY++) {
+                final int tileLeastY = max(leastY, tileY * TILE_SIZE),
+                        tileMostY = min(mostY, tileY * TILE_SIZE + TILE_SIZE - 1);
+
+                for (var tileX = leastTileX; tileX <= mostTileX; tileX++) {
+                    final int tileLeastX = max(leastX, tileX * TILE_SIZE),
+                            tileMostX = min(mostX, tileX * TILE_SIZE + TILE_SIZE - 1);
+
+                    val tile = tileX + tileY * TILES_PER_ROW;
+                    val offset = tile << 2;
+                    val tileBit = 1L << tile;
+                    if ((changedTiles & tileBit) == 0) {
+                        changedTiles |= tileBit;
+
+                        bounds[offset] = tileLeastX;
+                        bounds[offset + 1] = tileLeastY;
+                        bounds[offset + 2] = tileMostX;
+                        bounds[offset + 3] = tileMostY;
+                    } else {
+                        if (tileLeastX < bounds[offset]) bounds[offset] = tileLeastX;
+                        if (tileLeastY < bounds[offset + 1]) bounds[offset + 1] = tileLeastY;
+                        if (tileMostX > bounds[offset + 2]) bounds[offset + 2] = tileMostX;
+                        if (tileMostY > bounds[offset + 3]) bounds[offset + 3] = tileMostY;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Marks all the pixels of the rectangle of the image written.
+         *
+         * @param leastX least X-coordinate of the written rectangle
+         * @param leastY least Y-coordinate of the written rectangle
+         * @param mostX most X-coordinate of the written rectangle
+         * @param mostY most Y-coordinate of the written rectangle
+         */
+        private void markWritten(final int leastX, final int leastY, final int mostX, final int mostY) {
+            for (var y = leastY; y <= mostY; y++) writtenPixels.set(leastX + y * WIDTH, mostX + 1 + y * WIDTH);
+        }
+
+        /**
+         * Gets the pixel of the image as it will be once the changes get disposed.
+         *
+         * @param index index of the pixel
+         * @return written pixel if there is one or the current pixel of the image otherwise
+         */
+        private byte pixel(final int index) {
+            return writtenPixels.get(index) ? buffer[index] : DefaultMapImage.this.pixels[index];
+        }
+
+        /**
+         * Merges the changed tiles into rectangles.
+         *
+         * @return changed rectangles as 4 values (least X, least Y, most X and most Y) for each of them
+         */
+        private int[] changedRectangles() {
+            var rectangles = new int[16];
+            var rectanglesLength = 0;
+            var changedArea = 0;
+
+            val bounds = changedTileBounds;
+            var remainingTiles = changedTiles;
+            while (remainingTiles != 0) {
+                val firstTile = Long.numberOfTrailingZeros(remainingTiles);
+                final int leastTileX = firstTile % TILES_PER_ROW, leastTileY = firstTile / TILES_PER_ROW;
+
+                // the longest horizontal run of changed tiles starting at the first one
+                var mostTileX = leastTileX;
+                while (mostTileX + 1 < TILES_PER_ROW
+                        && (remainingTiles & 1L << (mostTileX + 1 + leastTileY * TILES_PER_ROW)) != 0) mostTileX++;
+                // the run is extended to the following rows while all of its tiles are changed in them
+                val runMask = (1L << (mostTileX + 1)) - (1L << leastTileX);
+                var mostTileY = leastTileY;
+                while (mostTileY + 1 < TILES_PER_COLUMN
+                        && (remainingTiles >>> ((mostTileY + 1) * TILES_PER_ROW) & runMask) == runMask) mostTileY++;
+
+                // the rectangle is shrunk to the actually changed segments of its tiles
+                int leastX = WIDTH, leastY = HEIGHT, mostX = -1, mostY = -1;
+                for (var tileY = leastTileY; tileY <= mostTileY; tileY++) {
+                    remainingTiles &= ~(runMask << (tileY * TILES_PER_ROW));
+                    for (var tileX = leastTileX; tileX <= mostTileX; tileX++) {
+                        val offset = tileX + tileY * TILES_PER_ROW << 2;
+                        if (bounds[offset] < leastX) leastX = bounds[offset];
+                        if (bounds[offset + 1] < leastY) leastY = bounds[offset + 1];
+                        if (bounds[offset + 2] > mostX) mostX = bounds[offset + 2];
+                        if (bounds[offset + 3] > mostY) mostY = bounds[offset + 3];
+                    }
+                }
+
+                if (rectanglesLength == rectangles.length) rectangles = Arrays.copyOf(
+                        rectangles, rectanglesLength << 1
+                );
+                rectangles[rectanglesLength++] = leastX;
+                rectangles[rectanglesLength++] = leastY;
+                rectangles[rectanglesLength++] = mostX;
+                rectangles[rectanglesLength++] = mostY;
+                changedArea += (mostX - leastX + 1) * (mostY - leastY + 1);
+            }
+
+            // single bounding rectangle is used if splitting does not reduce the amount of pixels
+            if (rectanglesLength > 4 && changedArea >= (mostChangedX - leastChangedX + 1)
+                    * (mostChangedY - leastChangedY + 1)) return new int[]{
+                    leastChangedX, leastChangedY, mostChangedX, mostChangedY
+            };
+
+            return rectanglesLength == rectangles.length ? rectangles : Arrays.copyOf(rectangles, rectanglesLength);
+        }
+
+        /**
+         * Resets this buffered drawer setting {@link #unchanged} to {@code true} and marking no pixels written.
          */
         private void reset() {
             unchanged = true;
             leastChangedX = leastChangedY = mostChangedX = mostChangedY = Delta.NONE;
+            changedTiles = 0;
+            writtenPixels.clear();
+        }
 
-            blankPixels(buffer);
+        /**
+         * Creates the delta of the changed rectangle.
+         *
+         * @param rectangles changed rectangles as 4 values for each of them
+         * @param index index of the first value of the rectangle
+         * @return delta of the changed rectangle
+         */
+        private Delta rectangleDelta(final int[] rectangles, final int index) {
+            final int leastX = rectangles[index], leastY = rectangles[index + 1],
+                    width = rectangles[index + 2] - leastX + 1, height = rectangles[index + 3] - leastY + 1;
+
+            // pixels which were not written are taken from the image so that the delta is complete
+            val pixels = allocateDeltaPixels(width * height);
+            for (var y = 0; y < height; y++) {
+                final int offset = y * width, imageOffset = leastX + (leastY + y) * WIDTH;
+                for (var x = 0; x < width; x++) pixels[x + offset] = pixel(x + imageOffset);
+            }
+
+            return Delta.of(pixels, width, leastX, leastY);
         }
 
         @Override
-        public Delta dispose() {
+        public List<Delta> dispose() {
             // real disposal should happen only if there are changes
-            val delta = getDelta();
-
-            // perform image update only if delta is not empty (there are changes)
-            if (!delta.isEmpty()) {
-                final int width = delta.width(), height = delta.height(),
-                        leastX = delta.leastX(), leastY = delta.leastY();
-
-                val pixels = delta.pixels();
-                var i = -1;
-                for (var y = leastY; y < height; y++) {
-                    val offset = y * width;
-                    for (var x = leastX; x < width; x++)
-                        if (pixels[++i] != NO_COLOR_CODE) DefaultMapImage.this
-                                .pixels[x + offset] = pixels[i];
+            if (unchanged) return Collections.emptyList();
+
+            val rectangles = changedRectangles();
+            val deltas = new ArrayList<Delta>(rectangles.length >> 2);
+            val imagePixels = writablePixels();
+            for (var i = 0; i < rectangles.length; i += 4) {
+                deltas.add(rectangleDelta(rectangles, i));
+
+                final int leastX = rectangles[i], mostX = rectangles[i + 2];
+                for (var y = rectangles[i + 1]; y <= rectangles[i + 3]; y++) {
+                    final int mostIndex = mostX + y * WIDTH;
+                    for (var index = writtenPixels.nextSetBit(leastX + y * WIDTH);
+                         index >= 0 && index <= mostIndex; index = writtenPixels.nextSetBit(index + 1)) {
+                        imagePixels[index] = buffer[index];
+                    }
                 }
+            }
 
-                reset();
+            reset();
+            markModified();
 
-                onUpdate(delta);
-            }
+            for (val delta : deltas) onUpdate(delta);
 
-            return delta;
+            return deltas;
         }
 
         @Override
         public Delta getDelta() {
             if (unchanged) return Delta.EMPTY;
 
-            val width = mostChangedX - leastChangedX + 1;
-            val pixels = new byte[width * (mostChangedY - leastChangedY + 1)];
-            var i = 0;
-            for (var y = leastChangedY; y < mostChangedY; y++) {
-                val offset = y * width;
-                for (var x = leastChangedX; x < mostChangedX; x++) pixels[i++] = buffer[x + offset];
-            }
+            return rectangleDelta(new int[]{leastChangedX, leastChangedY, mostChangedX, mostChangedY}, 0);
+        }
+
+        @Override
+        public List<Delta> getDeltas() {
+            if (unchanged) return Collections.emptyList();
 
-            return Delta.of(pixels, width, leastChangedX, leastChangedY);
+            val rectangles = changedRectangles();
+            val deltas = new ArrayList<Delta>(rectangles.length >> 2);
+            for (var i = 0; i < rectangles.length; i += 4) deltas.add(rectangleDelta(rectangles, i));
+
+            return deltas;
         }
 
         ///////////////////////////////////////////////////////////////////////////
@@ -250,34 +604,105 @@ public class DefaultMapImage implements MapImage {
         @Override
         public MapImage.Drawer px(final int x, final int y, final byte color) {
             // put the changed pixel to the buffer
-            buffer[x + y * width] = color;
+            val index = x + y * width;
+            buffer[index] = color;
+            writtenPixels.set(index);
 
-            // perform delta update if needed
-            // if it is the first update then the pixels is the zone of changes
-            if (unchanged) {
-                unchanged = false;
+            markChanged(x, y, x, y);
 
-                leastChangedX = mostChangedX = x;
-                leastChangedY = mostChangedY = y;
-            } else {
-                if (x < leastChangedX) leastChangedX = x;
-                else if (x > mostChangedX) mostChangedX = x;
+            return this;
+        }
 
-                if (y < leastChangedY) leastChangedY = y;
-                else if (y > mostChangedY) mostChangedY = y;
+        @Override
+        public MapImage.Drawer span(final int x1, final int x2, final int y, final byte color) {
+            final int unboundLeastX = min(x1, x2), unboundMostX = max(x1, x2);
+            if (y >= 0 && y < HEIGHT && unboundMostX >= 0 && unboundLeastX < WIDTH) {
+                final int leastX = MapImage.Drawer.boundX(unboundLeastX), mostX = MapImage.Drawer.boundX(unboundMostX);
+                Arrays.fill(buffer, leastX + y * WIDTH, mostX + 1 + y * WIDTH, color);
+                markWritten(leastX, y, mostX, y);
+                markChanged(leastX, y, mostX, y);
             }
 
             return this;
         }
 
         @Override
-        public MapImage.Drawer fill(final byte color) {
-            unchanged = false;
+        public MapImage.Drawer blit(final @NonNull byte[] sprite, final int width, final int height,
+                                    final int x, final int y, final byte transparentColor) {
+            checkArgument(width >= 0 && height >= 0, "Width and height should be non-negative");
+            checkArgument(sprite.length >= width * height, "Sprite should contain at least width * height pixels");
+
+            // only the pixels differing from the current ones are marked changed
+            // so that redrawing similar sprites (such as glyphs of a text) produces small deltas
+            int leastChangedX = WIDTH, leastChangedY = HEIGHT, mostChangedX = -1, mostChangedY = -1;
+            final int mostX = min(x + width, WIDTH) - 1, mostY = min(y + height, HEIGHT) - 1;
+            for (var imageY = max(y, 0); imageY <= mostY; imageY++) {
+                final int spriteOffset = (imageY - y) * width - x, imageOffset = imageY * WIDTH;
+                for (var imageX = max(x, 0); imageX <= mostX; imageX++) {
+                    val pixel = sprite[imageX + spriteOffset];
+                    if (pixel == transparentColor) continue;
+
+                    val index = imageX + imageOffset;
+                    if (pixel == pixel(index)) continue;
+
+                    buffer[index] = pixel;
+                    writtenPixels.set(index);
+                    if (imageX < leastChangedX) leastChangedX = imageX;
+                    if (imageX > mostChangedX) mostChangedX = imageX;
+                    if (imageY < leastChangedY) leastChangedY = imageY;
+                    mostChangedY = imageY;
+                }
+            }
+            if (mostChangedX >= 0) markChanged(leastChangedX, leastChangedY, mostChangedX, mostChangedY);
 
+            return this;
+        }
+
+        @Override
+        public MapImage.Drawer copyRegion(final @NonNull MapImage source, final int sourceX, final int sourceY,
+                                          final int width, final int height, final int x, final int y) {
+            if (copy(buffer, source.getMapData(sourceX, sourceY, width, height), width, height, x, y)) {
+                final int leastX = max(x, 0), leastY = max(y, 0),
+                        mostX = min(x + width, WIDTH) - 1, mostY = min(y + height, HEIGHT) - 1;
+                markWritten(leastX, leastY, mostX, mostY);
+                markChanged(leastX, leastY, mostX, mostY);
+            }
+
+            return this;
+        }
+
+        @Override
+        @SuppressWarnings("Duplicates") // swapping
+        public MapImage.Drawer rect(int x1, int y1, int x2, int y2, final byte color) {
+            MapImage.Drawer.checkX(x1);
+            MapImage.Drawer.checkY(y1);
+            MapImage.Drawer.checkX(x2);
+            MapImage.Drawer.checkY(y2);
+
+            if (x1 > x2) { // swap x's
+                val oldX2 = x2;
+                x2 = x1;
+                x1 = oldX2;
+            }
+
+            if (y1 > y2) { // swap y's
+                val oldY2 = y2;
+                y2 = y1;
+                y1 = oldY2;
+            }
+
+            for (var y = y1; y <= y2; y++) Arrays.fill(buffer, x1 + y * WIDTH, x2 + 1 + y * WIDTH, color);
+            markWritten(x1, y1, x2, y2);
+            markChanged(x1, y1, x2, y2);
+
+            return this;
+        }
+
+        @Override
+        public MapImage.Drawer fill(final byte color) {
             Arrays.fill(buffer, color);
-            leastChangedX = leastChangedY = 0;
-            mostChangedX = WIDTH;
-            mostChangedY = HEIGHT;
+            writtenPixels.set(0, buffer.length);
+            markChanged(0, 0, WIDTH - 1, HEIGHT - 1);
 
             return this;
         }
@@ -0,0 +1,425 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+import org.jetbrains.annotations.Nullable;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.*;
+
+/**
+ * Animation of map images stored as precomputed deltas between its frames.
+ * <p>
+ * Frames are quantized one by one once the animation gets built
+ * so that only the changed segments of the frames are kept in memory.
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class MapAnimation {
+
+    /**
+     * Duration of a tick in milliseconds
+     */
+    private static final int TICK_MILLIS = 50,
+    /**
+     * Duration of a tick in hundredths of a second (units of GIF frame delays)
+     */
+    TICK_CENTISECONDS = 5;
+
+    /**
+     * Display mode of the animation's images
+     */
+    @Getter byte displayMode;
+
+    /**
+     * The first frame of the animation whose delta contains the whole image
+     */
+    @NonNull Frame keyFrame;
+
+    /**
+     * Frames of the animation, the delta of each being relative to the previous frame
+     * and the delta of the first being relative to the last one (so that the animation can be looped)
+     */
+    @ToString.Exclude @NonNull List<Frame> frames;
+
+    /**
+     * Gets the key frame of this animation which is its first frame containing the whole image.
+     *
+     * @return key frame of this animation
+     */
+    public Frame keyFrame() {
+        return keyFrame;
+    }
+
+    /**
+     * Gets the frames of this animation.
+     *
+     * @return unmodifiable list of frames of this animation in which the delta of each is relative to the previous
+     * frame and the delta of the first one is relative to the last one
+     */
+    public List<Frame> frames() {
+        return frames;
+    }
+
+    /**
+     * Gets the duration of a single run of this animation.
+     *
+     * @return duration of this animation in ticks
+     */
+    public long duration() {
+        var duration = 0L;
+        for (val frame : frames) duration += frame.duration();
+
+        return duration;
+    }
+
+    /**
+     * Creates new builder of the animation.
+     *
+     * @param resize whether the frames should be resized or cut to fit map image dimensions
+     * @param dithering dithering with which the frames should be quantized
+     * @param displayMode display mode of the animation's images
+     * @return created builder
+     */
+    public static Builder builder(final boolean resize, final @NonNull MapImageDithering dithering,
+                                  final byte displayMode) {
+        return new Builder(resize, dithering, displayMode);
+    }
+
+    /**
+     * Creates new animation from the frames.
+     *
+     * @param frames frames of the animation which are only requested one by one while building
+     * @param frameDuration duration of each frame in ticks
+     * @param resize whether the frames should be resized or cut to fit map image dimensions
+     * @param dithering dithering with which the frames should be quantized
+     * @param displayMode display mode of the animation's images
+     * @return created animation
+     */
+    public static MapAnimation from(final @NonNull Iterable<? extends BufferedImage> frames, final int frameDuration,
+                                    final boolean resize, final @NonNull MapImageDithering dithering,
+                                    final byte displayMode) {
+        val builder = builder(resize, dithering, displayMode);
+        for (val frame : frames) builder.frame(frame, frameDuration);
+
+        return builder.build();
+    }
+
+    /**
+     * Creates new animation from the GIF decoding its frames one by one.
+     *
+     * @param input input stream of the GIF
+     * @param resize whether the frames should be resized or cut to fit map image dimensions
+     * @param dithering dithering with which the frames should be quantized
+     * @param displayMode display mode of the animation's images
+     * @return created animation
+     * @throws IOException if an exception occurs while reading the GIF
+     */
+    public static MapAnimation fromGif(final @NonNull InputStream input, final boolean resize,
+                                       final @NonNull MapImageDithering dithering,
+                                       final byte displayMode) throws IOException {
+        val readers = ImageIO.getImageReadersByFormatName("gif");
+        if (!readers.hasNext()) throw new IOException("There is no GIF image reader available");
+        val reader = readers.next();
+
+        try (val imageInput = ImageIO.createImageInputStream(input)) {
+            // seeking forward only so that the reader does not keep the decoded frames
+            reader.setInput(imageInput, true, false);
+
+            return readGif(reader, builder(resize, dithering, displayMode));
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Reads all frames of the GIF composing them (according to their positions and disposal methods)
+     * on a single canvas which is passed to the builder after each frame.
+     *
+     * @param reader reader of the GIF whose input is set
+     * @param builder builder of the animation
+     * @return built animation
+     * @throws IOException if an exception occurs while reading the GIF
+     */
+    private static MapAnimation readGif(final @NonNull ImageReader reader,
+                                        final @NonNull Builder builder) throws IOException {
+        BufferedImage canvas = null;
+        Graphics2D graphics = null;
+        try {
+            for (var index = 0; ; index++) {
+                final IIOImage frame;
+                try {
+                    frame = reader.readAll(index, null);
+                } catch (final IndexOutOfBoundsException e) {
+                    break; // no more frames
+                }
+
+                val image = (BufferedImage) frame.getRenderedImage();
+                val metadata = frame.getMetadata();
+                final int left = metadataAttribute(metadata, "ImageDescriptor", "imageLeftPosition", 0),
+                        top = metadataAttribute(metadata, "ImageDescriptor", "imageTopPosition", 0),
+                        delay = metadataAttribute(metadata, "GraphicControlExtension", "delayTime", 0);
+                val disposal = metadataAttribute(metadata, "GraphicControlExtension", "disposalMethod");
+
+                if (canvas == null) {
+                    final int width, height;
+                    {
+                        val streamMetadata = reader.getStreamMetadata();
+                        width = metadataAttribute(
+                                streamMetadata, "LogicalScreenDescriptor", "logicalScreenWidth", 0
+                        );
+                        height = metadataAttribute(
+                                streamMetadata, "LogicalScreenDescriptor", "logicalScreenHeight", 0
+                        );
+                    }
+                    canvas = new BufferedImage(
+                            Math.max(width, left + image.getWidth()), Math.max(height, top + image.getHeight()),
+                            BufferedImage.TYPE_INT_ARGB
+                    );
+                    graphics = canvas.createGraphics();
+                }
+
+                val previousCanvas = "restoreToPrevious".equals(disposal) ? copy(canvas) : null;
+                graphics.drawImage(image, left, top, null);
+
+                // GIF delays are in hundredths of a second while zero delay is usually treated as the default one
+                builder.frame(canvas, Math.max(1, (delay == 0 ? 10 : delay) / TICK_CENTISECONDS));
+
+                if ("restoreToBackgroundColor".equals(disposal)) {
+                    graphics.setComposite(AlphaComposite.Clear);
+                    graphics.fillRect(left, top, image.getWidth(), image.getHeight());
+                    graphics.setComposite(AlphaComposite.SrcOver);
+                } else if (previousCanvas != null) {
+                    graphics.setComposite(AlphaComposite.Src);
+                    graphics.drawImage(previousCanvas, 0, 0, null);
+                    graphics.setComposite(AlphaComposite.SrcOver);
+                }
+            }
+        } finally {
+            if (graphics != null) graphics.dispose();
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Creates a copy of the image.
+     *
+     * @param image image to copy
+     * @return copy of the image
+     */
+    private static BufferedImage copy(final @NonNull BufferedImage image) {
+        return new BufferedImage(
+                image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null
+        );
+    }
+
+    /**
+     * Gets the attribute of the node of the metadata in its native format.
+     *
+     * @param metadata metadata whose node's attribute to get
+     * @param nodeName name of the node
+     * @param attributeName name of the attribute
+     * @return value of the attribute or {@code null} if there is none
+     */
+    private static @Nullable String metadataAttribute(final @Nullable IIOMetadata metadata,
+                                                      final @NonNull String nodeName,
+                                                      final @NonNull String attributeName) {
+        if (metadata == null) return null;
+
+        for (var node = metadata.getAsTree(metadata.getNativeMetadataFormatName()).getFirstChild();
+             node != null; node = node.getNextSibling()) if (nodeName.equals(node.getNodeName())) {
+            val attribute = node.getAttributes().getNamedItem(attributeName);
+
+            return attribute == null ? null : attribute.getNodeValue();
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the numeric attribute of the node of the metadata in its native format.
+     *
+     * @param metadata metadata whose node's attribute to get
+     * @param nodeName name of the node
+     * @param attributeName name of the attribute
+     * @param defaultValue value to use if there is no such attribute
+     * @return value of the attribute or the default value if there is none
+     */
+    private static int metadataAttribute(final @Nullable IIOMetadata metadata, final @NonNull String nodeName,
+                                         final @NonNull String attributeName, final int defaultValue) {
+        val value = metadataAttribute(metadata, nodeName, attributeName);
+        if (value == null) return defaultValue;
+
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Computes the delta of the changed segment of the image.
+     *
+     * @param previous previous pixels of the image
+     * @param current current pixels of the image
+     * @return delta containing the segment of the current pixels which differs from the previous ones
+     */
+    static Delta delta(final @NonNull byte[] previous, final @NonNull byte[] current) {
+        int leastX = WIDTH, leastY = HEIGHT, mostX = -1, mostY = -1;
+        for (var y = 0; y < HEIGHT; y++) {
+            val offset = y * WIDTH;
+            for (var x = 0; x < WIDTH; x++) if (previous[x + offset] != current[x + offset]) {
+                if (x < leastX) leastX = x;
+                if (x > mostX) mostX = x;
+                if (y < leastY) leastY = y;
+                mostY = y;
+            }
+        }
+        if (mostX < 0) return Delta.EMPTY;
+
+        final int width = mostX - leastX + 1, height = mostY - leastY + 1;
+        val pixels = new byte[width * height];
+        for (var y = 0; y < height; y++) System.arraycopy(
+                current, leastX + (leastY + y) * WIDTH, pixels, y * width, width
+        );
+
+        return Delta.of(pixels, width, leastX, leastY);
+    }
+
+    /**
+     * Finds the color which is not used by the pixels.
+     *
+     * @param pixels pixels in which to look for the unused color
+     * @return color not used by the pixels
+     */
+    static byte unusedColor(final @NonNull byte[] pixels) {
+        val usedColors = new boolean[256];
+        for (val pixel : pixels) usedColors[pixel & 0xFF] = true;
+
+        // map palettes do not use all of the codes so some of them are always free
+        for (var color = 0; color < usedColors.length; color++) if (!usedColors[color]) return (byte) color;
+
+        throw new IllegalStateException("All colors are used by the pixels");
+    }
+
+    /**
+     * Frame of the animation.
+     */
+    @Value
+    @Accessors(fluent = true)
+    public static class Frame {
+
+        /**
+         * Delta of this frame relative to the previous one
+         */
+        @NonNull Delta delta;
+
+        /**
+         * Duration of this frame in ticks
+         */
+        int duration;
+
+        /**
+         * Color which is not used by the pixels of the delta
+         * (so that it can be used as transparent color when drawing the delta as a sprite)
+         */
+        byte unusedColor;
+
+        /**
+         * Gets the duration of this frame in milliseconds.
+         *
+         * @return duration of this frame in milliseconds
+         */
+        public long durationMillis() {
+            return (long) duration * TICK_MILLIS;
+        }
+    }
+
+    /**
+     * Builder of the animation quantizing the frames as they are added.
+     */
+    @ToString
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Builder {
+
+        final boolean resize;
+        final @NonNull MapImageDithering dithering;
+        final byte displayMode;
+
+        /**
+         * Frames added to this builder, the first one being the key frame
+         */
+        @ToString.Exclude final List<Frame> frames = new ArrayList<>();
+
+        /**
+         * Pixels of the first frame
+         */
+        @ToString.Exclude byte[] firstPixels,
+        /**
+         * Pixels of the last frame
+         */
+        lastPixels;
+
+        boolean built;
+
+        /**
+         * Adds the frame to the animation.
+         *
+         * @param image image of the frame which is quantized immediately and so may be reused after this call
+         * @param duration duration of the frame in ticks
+         * @return this builder for chaining
+         */
+        public Builder frame(final @NonNull BufferedImage image, final int duration) {
+            checkArgument(duration > 0, "duration should be positive");
+            checkState(!built, "The animation has already been built");
+
+            val pixels = MapImages.getMapImagePixels(image, WIDTH, HEIGHT, resize, dithering);
+            if (firstPixels == null) {
+                firstPixels = pixels;
+                frames.add(new Frame(Delta.of(pixels, WIDTH, 0, 0), duration, unusedColor(pixels)));
+            } else {
+                val delta = delta(lastPixels, pixels);
+                frames.add(new Frame(delta, duration, unusedColor(delta.pixels())));
+            }
+            lastPixels = pixels;
+
+            return this;
+        }
+
+        /**
+         * Builds the animation.
+         *
+         * @return built animation
+         * @throws IllegalStateException if no frames were added or the animation has already been built
+         */
+        public MapAnimation build() {
+            checkState(!built, "The animation has already been built");
+            checkState(firstPixels != null, "There should be at least one frame");
+            built = true;
+
+            val keyFrame = frames.get(0);
+            val loopDelta = delta(lastPixels, firstPixels);
+            frames.set(0, new Frame(loopDelta, keyFrame.duration(), unusedColor(loopDelta.pixels())));
+            firstPixels = lastPixels = null;
+
+            return new MapAnimation(displayMode, keyFrame, Collections.unmodifiableList(new ArrayList<>(frames)));
+        }
+    }
+}
@@ -7,9 +7,15 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 /**
  * Image on a map.
@@ -86,7 +92,44 @@ public interface MapImage {
      *
      * @apiNote order as {@code width} {@code byte}s (columns) coming in a row {@code height} times (once for each row)
      */
-    byte[] getMapData(final int leastX, final int leastY, final int width, final int height);
+    default byte[] getMapData(final int leastX, final int leastY, final int width, final int height) {
+        return getMapData(leastX, leastY, width, height, new byte[width * height], 0);
+    }
+
+    /**
+     * Writes this image map's pixels segment to the specified array.
+     *
+     * @param leastX least X-coordinate of image segment
+     * @param leastY least Y-coordinate of image segment
+     * @param width width of the image segment
+     * @param height of image segment
+     * @param target array to which the pixels segment should be written
+     * @param offset offset in the target array at which the pixels segment should start
+     * @return the target array
+     * @throws IllegalArgumentException if the segment is out of this image's bounds
+     * @throws IndexOutOfBoundsException if the segment does not fit the target array
+     *
+     * @apiNote order as {@code width} {@code byte}s (columns) coming in a row {@code height} times (once for each row)
+     * @apiNote the array should not be reused while it is referenced by a packet as those get sent asynchronously
+     */
+    default byte[] getMapData(final int leastX, final int leastY, final int width, final int height,
+                              final @NonNull byte[] target, final int offset) {
+        final int imageWidth = getWidth(), imageHeight = getHeight();
+        checkArgument(leastX >= 0 && width >= 0 && leastX + width <= imageWidth,
+                "Segment [" + leastX + "; " + (leastX + width) + ") is out of X-bounds [0; " + imageWidth + ")"
+        );
+        checkArgument(leastY >= 0 && height >= 0 && leastY + height <= imageHeight,
+                "Segment [" + leastY + "; " + (leastY + height) + ") is out of Y-bounds [0; " + imageHeight + ")"
+        );
+
+        val pixels = getMapData();
+        // rows of the segment are continuous in both arrays
+        for (var y = 0; y < height; y++) System.arraycopy(
+                pixels, leastX + (leastY + y) * imageWidth, target, offset + y * width, width
+        );
+
+        return target;
+    }
 
     /**
      * Gets 1-dimensional {@code byte}-array of this image map's pixels segment.
@@ -115,6 +158,22 @@ public interface MapImage {
      */
     BufferedDrawer bufferedDrawer();
 
+    /**
+     * Gets the number of modifications of this image's pixels.
+     * Unlike {@link #onUpdate(Delta) updates} which may not be reported for all changes (such as the ones
+     * made by the non-buffered drawer) this changes whenever the pixels are modified by any of the drawers
+     * and whenever an update is reported.
+     *
+     * @return number of modifications of this image's pixels
+     * or {@code -1} if this image does not track its modifications
+     *
+     * @apiNote the number changes after the pixels get modified so that the data read after getting the number
+     * is at least as new as the modification corresponding to it
+     */
+    default int getModificationCount() {
+        return -1;
+    }
+
     /**
      * Handler for performed update (called whenever an update happens).
      *
@@ -145,6 +204,22 @@ public interface MapImage {
         throw new UnsupportedOperationException(getClass() + " doesn't support update subscriptions");
     }
 
+    /**
+     * Subscribes on this image's updates so that the subscriber is notified by the executor.
+     *
+     * @param subscriber subscriber to be notified whenever an image is updated
+     * @param executor executor by which the subscriber should be notified so that it does not stall the drawing thread
+     * @throws UnsupportedOperationException if this map image doesn't allow update subscriptions
+     *
+     * @apiNote the deltas are delivered in order of the updates only if the executor runs the tasks sequentially
+     * (such as a single-threaded one) and the image may already be changed further once they are delivered
+     * @implSpec may be unavailable, check {@link #isSubscribable()} before usage
+     * @see #unsubscribeFromUpdates(Consumer) the subscriber is unsubscribed the same way
+     */
+    default void subscribeOnUpdates(final Consumer<Delta> subscriber, final @NonNull Executor executor) {
+        throw new UnsupportedOperationException(getClass() + " doesn't support update subscriptions");
+    }
+
     /**
      * Unsubscribes from this image's updates.
      *
@@ -234,6 +309,29 @@ public interface MapImage {
         @Contract("_, _, _ -> this")
         Drawer px(int x, int y, final byte color);
 
+        /**
+         * Draws a horizontal span of pixels of the specified color.
+         *
+         * @param x1 X-coordinate of the first pixel of the span
+         * @param x2 X-coordinate of the last pixel of the span
+         * @param y Y-coordinate of the span
+         * @param color color of the span
+         * @return this drawer for chaining
+         *
+         * @apiNote pixels out of the image are not drawn
+         * @apiNote implementations should override this to update pixels in bulk
+         * as most of other default methods are based on it
+         */
+        @Contract("_, _, _, _ -> this")
+        default Drawer span(final int x1, final int x2, final int y, final byte color) {
+            final int leastX = min(x1, x2), mostX = max(x1, x2);
+            if (y < 0 || y >= HEIGHT || mostX < 0 || leastX >= WIDTH) return this;
+
+            for (var x = boundX(leastX); x <= boundX(mostX); x++) px(x, y, color);
+
+            return this;
+        }
+
         /**
          * Draws a line between two points.
          *
@@ -245,34 +343,26 @@ public interface MapImage {
          * @return this drawer for chaining
          */
         @Contract("_, _, _, _, _ -> this")
-        @SuppressWarnings("Duplicates") // swapping
-        default Drawer line(int x1, int y1, int x2, int y2, final byte color) {
-            if (x1 > x2) { // swap x's
-                val oldX2 = x2;
-                x2 = x1;
-                x1 = oldX2;
-            }
-
-            if (y1 > y2) { // swap y's
-                val oldY2 = y2;
-                y2 = y1;
-                y1 = oldY2;
-            }
-
-            val dX = x2 - x1;
-            val dY = y2 - y1;
-
-            // stepping should happen by the biggest delta to affect all rows / columns on it
-            if (dX > dY) {
-                // dX is bigger, step by it
-                val stepY = dY / (float) dX;
-                float y = y1;
-                for (/* use x1 for x */; x1 <= x2; x1++, y += stepY) px(x1, (int) y, color);
-            } else {
-                // dY is bigger or same, step by it
-                val stepX = dX / (float) dY;
-                float x = x1;
-                for (/* use y1 for y */; y1 <= y2; y1++, x += stepX) px((int) x, y1, color);
+        default Drawer line(int x1, int y1, final int x2, final int y2, final byte color) {
+            // horizontal lines are spans
+            if (y1 == y2) return span(x1, x2, y1, color);
+
+            // Bresenham's line algorithm
+            final int dX = abs(x2 - x1), dY = -abs(y2 - y1), stepX = x1 < x2 ? 1 : -1, stepY = y1 < y2 ? 1 : -1;
+            var error = dX + dY;
+            while (true) {
+                px(x1, y1, color);
+                if (x1 == x2 && y1 == y2) break;
+
+                val doubledError = error << 1;
+                if (doubledError >= dY) {
+                    error += dY;
+                    x1 += stepX;
+                }
+                if (doubledError <= dX) {
+                    error += dX;
+                    y1 += stepY;
+                }
             }
 
             return this;
@@ -289,26 +379,14 @@ public interface MapImage {
          * @return this drawer for chaining
          */
         @Contract("_, _, _, _, _ -> this")
-        @SuppressWarnings("Duplicates") // swapping
-        default Drawer rect(int x1, int y1, int x2, int y2, final byte color) {
+        default Drawer rect(final int x1, final int y1, final int x2, final int y2, final byte color) {
             checkX(x1);
             checkY(y1);
             checkX(x2);
             checkY(y2);
 
-            if (x1 > x2) { // swap x's
-                val oldX2 = x2;
-                x2 = x1;
-                x1 = oldX2;
-            }
-
-            if (y1 > y2) { // swap y's
-                val oldY2 = y2;
-                y2 = y1;
-                y1 = oldY2;
-            }
-
-            for (var x = x1; x <= x2; x++) for (var y = y1; y <= y2; y++) px(x, y, color);
+            val mostY = max(y1, y2);
+            for (var y = min(y1, y2); y <= mostY; y++) span(x1, x2, y, color);
 
             return this;
         }
@@ -321,31 +399,154 @@ public interface MapImage {
          * @param radius radius of the round
          * @param color color of the round
          * @return this drawer for chaining
+         *
+         * @apiNote parts of the round out of the image are not drawn
          */
         @Contract("_, _, _, _ -> this")
         default Drawer round(final int centerX, final int centerY, final int radius, final byte color) {
-            final int
-                    minX = boundX(centerX - radius), maxX = boundX(centerX + radius),
-                    minY = boundY(centerY - radius), maxY = boundY(centerY + radius);
+            if (radius < 0) throw new IllegalArgumentException("Radius should be non-negative");
 
             val squaredRadius = radius * radius;
+            // half-width of the current row which only decreases while moving away from the center
+            var dX = radius;
+            for (var dY = 0; dY <= radius; dY++) {
+                // Pythagoras theorem с² = a² + b² ~~> radius² = Δx² + Δy²
+                val squaredDY = dY * dY;
+                while (dX * dX + squaredDY > squaredRadius) dX--;
+
+                span(centerX - dX, centerX + dX, centerY + dY, color);
+                if (dY != 0) span(centerX - dX, centerX + dX, centerY - dY, color);
+            }
 
-            for (var x = minX; x <= maxX; x++) {
-                var squaredDX = x - centerX; // find delta
-                squaredDX *= squaredDX; // dy now stores a squared value
-
-                for (var y = minY; y <= maxY; y++) {
-                    var squaredDY = y - centerY; // find delta
-                    squaredDY *= squaredDY; // dy now stores a squared value
+            return this;
+        }
 
-                    // Pythagoras theorem с² = a² + b² ~~> radius² = Δx² + Δy²
-                    if (squaredRadius <= squaredDX + squaredDY) px(x, y, color);
+        /**
+         * Draws the sprite with its top-left corner at the given coordinates.
+         *
+         * @param sprite pixels of the sprite ({@code width} columns for each of {@code height} rows)
+         * @param width width of the sprite
+         * @param height height of the sprite
+         * @param x X-coordinate of the sprite's top-left corner
+         * @param y Y-coordinate of the sprite's top-left corner
+         * @param transparentColor color of the sprite's pixels which should not be drawn
+         * @return this drawer for chaining
+         *
+         * @apiNote parts of the sprite out of the image are not drawn
+         */
+        @Contract("_, _, _, _, _, _ -> this")
+        default Drawer blit(final @NonNull byte[] sprite, final int width, final int height,
+                            final int x, final int y, final byte transparentColor) {
+            checkArgument(width >= 0 && height >= 0, "Width and height should be non-negative");
+            checkArgument(sprite.length >= width * height, "Sprite should contain at least width * height pixels");
+
+            final int leastX = max(x, 0), mostX = min(x + width, WIDTH) - 1,
+                    leastY = max(y, 0), mostY = min(y + height, HEIGHT) - 1;
+            for (var imageY = leastY; imageY <= mostY; imageY++) {
+                val offset = (imageY - y) * width - x;
+                for (var imageX = leastX; imageX <= mostX; imageX++) {
+                    val pixel = sprite[imageX + offset];
+                    if (pixel != transparentColor) px(imageX, imageY, pixel);
                 }
             }
 
             return this;
         }
 
+        /**
+         * Copies the segment of the source image to the given coordinates.
+         *
+         * @param source image from which to copy the segment
+         * @param sourceX least X-coordinate of the segment in the source image
+         * @param sourceY least Y-coordinate of the segment in the source image
+         * @param width width of the segment
+         * @param height height of the segment
+         * @param x X-coordinate at which the segment's top-left corner should be drawn
+         * @param y Y-coordinate at which the segment's top-left corner should be drawn
+         * @return this drawer for chaining
+         * @throws IllegalArgumentException if the segment is out of the source image's bounds
+         *
+         * @apiNote parts of the segment out of this image are not drawn
+         */
+        @Contract("_, _, _, _, _, _, _ -> this")
+        default Drawer copyRegion(final @NonNull MapImage source, final int sourceX, final int sourceY,
+                                  final int width, final int height, final int x, final int y) {
+            val segment = source.getMapData(sourceX, sourceY, width, height);
+            final int leastX = max(x, 0), mostX = min(x + width, WIDTH) - 1,
+                    leastY = max(y, 0), mostY = min(y + height, HEIGHT) - 1;
+            for (var imageY = leastY; imageY <= mostY; imageY++) {
+                val offset = (imageY - y) * width - x;
+                for (var imageX = leastX; imageX <= mostX; imageX++) px(imageX, imageY, segment[imageX + offset]);
+            }
+
+            return this;
+        }
+
+        /**
+         * Draws the text with its top-left corner at the given coordinates.
+         * Only the pixels of the glyphs are drawn so the previous pixels around them are kept.
+         *
+         * @param x X-coordinate of the text's top-left corner
+         * @param y Y-coordinate of the text's top-left corner
+         * @param text text to draw
+         * @param font font with which to draw the text
+         * @param color color of the text
+         * @return this drawer for chaining
+         *
+         * @apiNote parts of the text out of the image are not drawn
+         */
+        @Contract("_, _, _, _, _ -> this")
+        default Drawer text(final int x, final int y, final @NonNull String text,
+                            final @NonNull MapImageFont font, final byte color) {
+            val transparentColor = MapImageFont.Glyph.transparentColor(color);
+            val height = font.getHeight();
+            var glyphX = x;
+            for (var i = 0; i < text.length() && glyphX < WIDTH; ) {
+                val codePoint = text.codePointAt(i);
+                val glyph = font.glyph(codePoint);
+                val width = glyph.getWidth();
+                if (glyphX + width > 0) blit(glyph.sprite(color), width, height, glyphX, y, transparentColor);
+
+                glyphX += width;
+                i += Character.charCount(codePoint);
+            }
+
+            return this;
+        }
+
+        /**
+         * Draws the text with its top-left corner at the given coordinates filling the cells of its glyphs
+         * with the background so that redrawing the text of the same length only changes its pixels.
+         *
+         * @param x X-coordinate of the text's top-left corner
+         * @param y Y-coordinate of the text's top-left corner
+         * @param text text to draw
+         * @param font font with which to draw the text
+         * @param color color of the text
+         * @param background color of the text's background
+         * @return this drawer for chaining
+         *
+         * @apiNote parts of the text out of the image are not drawn
+         */
+        @Contract("_, _, _, _, _, _ -> this")
+        default Drawer text(final int x, final int y, final @NonNull String text,
+                            final @NonNull MapImageFont font, final byte color, final byte background) {
+            val unusedColor = MapImageFont.Glyph.unusedColor(color, background);
+            val height = font.getHeight();
+            var glyphX = x;
+            for (var i = 0; i < text.length() && glyphX < WIDTH; ) {
+                val codePoint = text.codePointAt(i);
+                val glyph = font.glyph(codePoint);
+                val width = glyph.getWidth();
+                if (glyphX + width > 0) blit(glyph.sprite(color, background), width, height, glyphX, y, unusedColor);
+
+                glyphX += width;
+                i += Character.charCount(codePoint);
+            }
+
+            return this;
+        }
+
         /**
          * Fills the image with the specified color.
          *
@@ -396,19 +597,31 @@ public interface MapImage {
         /**
          * Gets the delta of the image which this drawer is having.
          *
-         * @return delta of the image
+         * @return delta of the image covering all changes
          */
         Delta getDelta();
 
+        /**
+         * Gets the deltas of the image which this drawer is having.
+         * Unlike {@link #getDelta()} this may split the changes into multiple non-overlapping deltas
+         * so that unchanged pixels between distant changes are not included.
+         *
+         * @return non-empty deltas of the image covering all changes or an empty list if there are no changes
+         */
+        default List<Delta> getDeltas() {
+            val delta = getDelta();
+
+            return delta.isEmpty() ? Collections.emptyList() : Collections.singletonList(delta);
+        }
+
         /**
          * Disposes the image. Disposal means applying all changes to the source Map image.
-         * This method should call source image's {@link #onUpdate(Delta)} with the actual delta
-         * whenever it is not empty.
+         * This method should call source image's {@link #onUpdate(Delta)} with each of the actual deltas.
          *
-         * @return delta disposed
-         * @apiNote may not call {@link #onUpdate(Delta)} if the delta is empty
+         * @return deltas disposed as they would be returned by {@link #getDeltas()}
+         * @apiNote may not call {@link #onUpdate(Delta)} if there are no changes
          */
-        Delta dispose();
+        List<Delta> dispose();
     }
 
     /**
@@ -562,7 +775,7 @@ public interface MapImage {
 
             @Override
             public boolean isEmpty() {
-                return pixels.length != 0;
+                return pixels.length == 0;
             }
 
             @Override
@@ -0,0 +1,326 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.progrm_jarvis.minecraft.commons.MinecraftCommons;
+import ru.progrm_jarvis.minecraft.commons.util.SystemPropertyUtil;
+import ru.progrm_jarvis.minecraft.commons.util.image.ImageUtil;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Persistent cache of images converted to map image pixels.
+ * <p>
+ * Entries are keyed by the hash of the source image's content and of the conversion parameters
+ * (including {@link MapImageMinecraftColors#getPaletteHash() palette hash})
+ * so that they never need to be invalidated manually.
+ */
+@ToString
+@EqualsAndHashCode
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class MapImageCache {
+
+    /**
+     * Prefix of system properties used by this cache.
+     */
+    private static final String PROPERTY_PREFIX = MapImageCache.class.getCanonicalName() + '.';
+
+    /**
+     * Magic number of the cache entry files.
+     */
+    private static final int FILE_MAGIC = 0x4D494D43, // MIMC
+    /**
+     * Version of the cache entry files' format.
+     */
+    FILE_FORMAT_VERSION = 1,
+    /**
+     * Size of the header of the cache entry files.
+     */
+    FILE_HEADER_SIZE = 6 * Integer.BYTES + 1;
+
+    /**
+     * Directory in which the entries are stored
+     */
+    @NonNull File directory;
+
+    /**
+     * Whether the stored entries should be compressed
+     */
+    @Getter boolean compress;
+
+    /**
+     * Gets the default cache.
+     *
+     * @return default cache
+     *
+     * @apiNote the default cache is configured via system properties (prefixed by this class's canonical name):
+     * <dl>
+     *     <dt>{@code directory-name}</dt>
+     *     <dd>name of the directory under {@link MinecraftCommons#ROOT_DIRECTORY} in which the entries are stored</dd>
+     *     <dt>{@code compress}</dt>
+     *     <dd>whether the stored entries should be compressed (defaults to {@code true})</dd>
+     * </dl>
+     */
+    public static @NotNull MapImageCache getDefault() {
+        return DefaultCacheHolder.CACHE;
+    }
+
+    /**
+     * Gets the pixels of the image converted to map image pixels loading them from this cache if possible
+     * or converting the image and storing the result in this cache otherwise.
+     *
+     * @param image image to convert
+     * @param width width of the map image pixels
+     * @param height height of the map image pixels
+     * @param resize whether the image should be resized or cut to fit the dimensions
+     * @param dithering dithering with which the image should be quantized
+     * @return map image pixels of the image
+     *
+     * @see MapImages#getMapImagePixels(BufferedImage, int, int, boolean, MapImageDithering) conversion used
+     */
+    public byte[] getMapImagePixels(final @NonNull BufferedImage image, final int width, final int height,
+                                    final boolean resize, final @NonNull MapImageDithering dithering) {
+        checkArgument(width > 0 && height > 0, "Width and height should be positive");
+
+        val hasher = hasher(width, height, resize, dithering);
+        hashImage(hasher, image);
+        val file = entryFile(hasher.hash());
+
+        var pixels = tryLoad(file, width, height);
+        if (pixels == null) trySave(
+                file, pixels = MapImages.getMapImagePixels(image, width, height, resize, dithering), width, height
+        );
+
+        return pixels;
+    }
+
+    /**
+     * Gets the pixels of the image converted to map image pixels loading them from this cache if possible
+     * or converting the image and storing the result in this cache otherwise.
+     *
+     * @param image image to convert
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @param dithering dithering with which the image should be quantized
+     * @return map image pixels of the image
+     */
+    public byte[] getMapImagePixels(final @NonNull BufferedImage image, final boolean resize,
+                                    final @NonNull MapImageDithering dithering) {
+        return getMapImagePixels(image, MapImage.WIDTH, MapImage.HEIGHT, resize, dithering);
+    }
+
+    /**
+     * Gets the pixels of the image file converted to map image pixels loading them from this cache if possible
+     * or reading and converting the image and storing the result in this cache otherwise.
+     * Unlike {@link #getMapImagePixels(BufferedImage, int, int, boolean, MapImageDithering)}
+     * this hashes the raw content of the file so that the image does not even get decoded if it is cached.
+     *
+     * @param imageFile file of the image to convert
+     * @param width width of the map image pixels
+     * @param height height of the map image pixels
+     * @param resize whether the image should be resized or cut to fit the dimensions
+     * @param dithering dithering with which the image should be quantized
+     * @return map image pixels of the image
+     * @throws IOException if an exception occurs while reading the file or if it is not a supported image
+     */
+    public byte[] getMapImagePixels(final @NonNull File imageFile, final int width, final int height,
+                                    final boolean resize,
+                                    final @NonNull MapImageDithering dithering) throws IOException {
+        checkArgument(width > 0 && height > 0, "Width and height should be positive");
+
+        val content = Files.readAllBytes(imageFile.toPath());
+        val file = entryFile(hasher(width, height, resize, dithering).putBytes(content).hash());
+
+        var pixels = tryLoad(file, width, height);
+        if (pixels == null) {
+            val image = ImageIO.read(new ByteArrayInputStream(content));
+            if (image == null) throw new IOException("File " + imageFile + " is not a supported image");
+
+            trySave(file, pixels = MapImages.getMapImagePixels(image, width, height, resize, dithering), width, height);
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Creates new hasher of the entry's key with the conversion parameters put into it.
+     *
+     * @param width width of the map image pixels
+     * @param height height of the map image pixels
+     * @param resize whether the image is resized or cut to fit the dimensions
+     * @param dithering dithering with which the image is quantized
+     * @return created hasher
+     */
+    private static Hasher hasher(final int width, final int height, final boolean resize,
+                                 final @NonNull MapImageDithering dithering) {
+        return Hashing.murmur3_128().newHasher()
+                .putInt(FILE_FORMAT_VERSION)
+                .putInt(MapImageMinecraftColors.getPaletteHash())
+                // the colors are looked up in the default table which may be quantized
+                .putInt(MapImageColorLookupTable.getDefaultBitsPerChannel())
+                .putInt(width)
+                .putInt(height)
+                .putBoolean(resize)
+                .putUnencodedChars(dithering.name());
+    }
+
+    /**
+     * Puts the content of the image into the hasher.
+     *
+     * @param hasher hasher to which the image should be put
+     * @param image image to hash
+     */
+    private static void hashImage(final @NonNull Hasher hasher, final @NonNull BufferedImage image) {
+        final int width = image.getWidth(), height = image.getHeight();
+        hasher.putInt(width).putInt(height);
+
+        // rows are hashed one by one not to copy the whole image at once
+        val row = new int[width];
+        val rowBytes = ByteBuffer.allocate(width * Integer.BYTES);
+        val rowInts = rowBytes.asIntBuffer();
+        for (var y = 0; y < height; y++) {
+            ImageUtil.getRgb(image, 0, y, width, 1, row, 0, width);
+            rowInts.clear();
+            rowInts.put(row);
+            hasher.putBytes(rowBytes.array());
+        }
+    }
+
+    /**
+     * Gets the file of the entry.
+     *
+     * @param key hash of the entry's key
+     * @return file of the entry
+     */
+    private File entryFile(final @NonNull HashCode key) {
+        val name = key.toString();
+
+        // entries are spread over subdirectories not to have too many files in a single one
+        return new File(new File(directory, name.substring(0, 2)), name + ".bin");
+    }
+
+    /**
+     * Attempts to load the entry from the file.
+     *
+     * @param file file of the entry
+     * @param width expected width of the entry's pixels
+     * @param height expected height of the entry's pixels
+     * @return loaded pixels or {@code null} if the file is absent or is invalid
+     */
+    @Nullable
+    private static byte[] tryLoad(final @NonNull File file, final int width, final int height) {
+        if (!file.isFile()) return null;
+
+        try (val channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            val size = channel.size();
+            if (size < FILE_HEADER_SIZE || size > Integer.MAX_VALUE) return null;
+
+            val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_FORMAT_VERSION
+                    || buffer.getInt() != MapImageMinecraftColors.getPaletteHash()
+                    || buffer.getInt() != width || buffer.getInt() != height) return null;
+            val compressed = buffer.get() != 0;
+            val dataLength = buffer.getInt();
+            if (dataLength != buffer.remaining()) return null;
+
+            val pixels = new byte[width * height];
+            if (compressed) {
+                val data = new byte[dataLength];
+                buffer.get(data);
+
+                val inflater = new Inflater();
+                try {
+                    inflater.setInput(data);
+                    if (inflater.inflate(pixels) != pixels.length || !inflater.finished()) return null;
+                } finally {
+                    inflater.end();
+                }
+            } else {
+                if (dataLength != pixels.length) return null;
+                buffer.get(pixels);
+            }
+
+            return pixels;
+        } catch (final IOException | DataFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Attempts to store the entry to the file.
+     *
+     * @param file file of the entry
+     * @param pixels pixels of the entry
+     * @param width width of the entry's pixels
+     * @param height height of the entry's pixels
+     */
+    private void trySave(final @NonNull File file, final @NonNull byte[] pixels, final int width, final int height) {
+        try {
+            final byte[] data;
+            if (compress) {
+                val compressedData = new ByteArrayOutputStream(pixels.length >> 2);
+                val deflater = new Deflater(Deflater.BEST_SPEED);
+                try (val output = new DeflaterOutputStream(compressedData, deflater)) {
+                    output.write(pixels);
+                } finally {
+                    deflater.end();
+                }
+                data = compressedData.toByteArray();
+            } else data = pixels;
+
+            val directory = file.getAbsoluteFile().getParentFile();
+            Files.createDirectories(directory.toPath());
+
+            // write to a temporary file first so that the file never gets partially written
+            val temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+            try (val output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+                output.writeInt(FILE_MAGIC);
+                output.writeInt(FILE_FORMAT_VERSION);
+                output.writeInt(MapImageMinecraftColors.getPaletteHash());
+                output.writeInt(width);
+                output.writeInt(height);
+                output.writeBoolean(compress);
+                output.writeInt(data.length);
+                output.write(data);
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException ignored) {
+            // the image will simply be converted again next time
+        }
+    }
+
+    /**
+     * Holder of the lazily initialized default cache.
+     */
+    private static final class DefaultCacheHolder {
+
+        /**
+         * Default cache.
+         */
+        private static final MapImageCache CACHE = new MapImageCache(
+                new File(MinecraftCommons.ROOT_DIRECTORY, SystemPropertyUtil.getSystemProperty(
+                        PROPERTY_PREFIX + "directory-name", Function.identity(), "map_image_cache/"
+                )),
+                SystemPropertyUtil.getSystemPropertyBoolean(PROPERTY_PREFIX + "compress", true)
+        );
+    }
+}
@@ -2,12 +2,9 @@ package ru.progrm_jarvis.minecraft.commons.mapimage;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import it.unimi.dsi.fastutil.objects.Object2ByteMap;
-import it.unimi.dsi.fastutil.objects.Object2ByteOpenHashMap;
 import lombok.*;
 import lombok.experimental.Accessors;
 import lombok.experimental.FieldDefaults;
-import org.bukkit.map.MapPalette;
 import org.jetbrains.annotations.NotNull;
 import ru.progrm_jarvis.minecraft.commons.util.BitwiseUtil;
 import ru.progrm_jarvis.minecraft.commons.util.SystemPropertyUtil;
@@ -33,8 +30,6 @@ public class MapImageColor {
      */
     public static final byte NO_COLOR_CODE = 0;
 
-    private static final Object COLOR_IDS_CACHE_MUTEX = new Object[0];
-
     private static final Cache<Integer, MapImageColor> COLOR_CACHE = CacheBuilder.newBuilder()
             .weakValues()
             .concurrencyLevel(SystemPropertyUtil.getSystemPropertyInt(
@@ -42,11 +37,6 @@ public class MapImageColor {
             ))
             .build();
 
-    /**
-     * All associations of color's with their available IDs.
-     */
-    private static final Object2ByteMap<MapImageColor> COLOR_CODE_CACHE = new Object2ByteOpenHashMap<>();
-
     /**
      * 8 bits describing red part of the color
      */
@@ -150,38 +140,28 @@ public class MapImageColor {
     }
 
     /**
-     * Gets the id of the color closest to the one given. This value is cached for further usage.
+     * Gets the id of the color closest to the one given.
      *
      * @param color color for which to find the closest available color code
      * @return closest available color code
      *
-     * @implNote uses {@link MapPalette#matchColor(Color)} because (although it is deprecated) it is the simplest way
+     * @see MapImageColorLookupTable#getDefault() lookup table used for finding the color code
      */
-    @SneakyThrows
-    public static byte getClosestColorCode(final MapImageColor color) {
-        if (COLOR_CODE_CACHE.containsKey(color)) return COLOR_CODE_CACHE.get(color);
-
-        // the value which will store the color code
-        final byte colorCode;
-        synchronized (COLOR_IDS_CACHE_MUTEX) {
-            //noinspection deprecation ( use of MapPalette#matchColor(..)
-            COLOR_CODE_CACHE.put(color, colorCode = MapPalette.matchColor(new Color(color.rgb)));
-        }
-
-        return colorCode;
+    public static byte getClosestColorCode(final @NonNull MapImageColor color) {
+        return MapImageColorLookupTable.getDefault().getClosestColorCode(color.rgb);
     }
 
     /**
-     * Gets the id of the color closest to the one given by calculating
-     * dissimilarity rate of each available with the one given.
-     * This value is cached for further usage.
+     * Gets the id of the color closest to the one given.
      *
      * @param rgb RGB-color {@code int} for which to find the closest available color code
      * @return closest available color id
+     *
+     * @implNote this performs no allocations
+     * @see MapImageColorLookupTable#getDefault() lookup table used for finding the color code
      */
-    @SneakyThrows
     public static byte getClosestColorCode(final int rgb) {
-        return getClosestColorCode(of(rgb));
+        return MapImageColorLookupTable.getDefault().getClosestColorCode(rgb);
     }
 
     ///////////////////////////////////////////////////////////////////////////
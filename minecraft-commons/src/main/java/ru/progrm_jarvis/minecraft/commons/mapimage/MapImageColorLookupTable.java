@@ -0,0 +1,339 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.bukkit.map.MapPalette;
+import org.jetbrains.annotations.NotNull;
+import ru.progrm_jarvis.minecraft.commons.MinecraftCommons;
+import ru.progrm_jarvis.minecraft.commons.util.SystemPropertyUtil;
+import ru.progrm_jarvis.minecraft.commons.util.image.ColorUtil;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR_CODE;
+
+/**
+ * Flat lookup table of the closest map color codes indexed by RGB colors.
+ * <p>
+ * The table stores {@code 2 ^ (3 * bitsPerChannel)} codes so that the full table ({@code 8} bits per channel)
+ * takes 16 MiB while quantized ones take much less memory at the cost of precision.
+ *
+ * @implNote {@link MapImageColor#NO_COLOR_CODE} is used as a marker of a not yet computed entry
+ * as it is never the closest code for an opaque color, so lazily filled tables need no synchronization
+ */
+@ToString(onlyExplicitlyIncluded = true)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class MapImageColorLookupTable {
+
+    /**
+     * Number of bits per channel in a full (non-quantized) table.
+     */
+    public static final int FULL_BITS_PER_CHANNEL = 8;
+
+    /**
+     * Prefix of system properties used for configuring the default table.
+     */
+    private static final String PROPERTY_PREFIX = MapImageColorLookupTable.class.getCanonicalName() + '.';
+
+    /**
+     * Magic value starting the files of stored tables.
+     */
+    private static final int FILE_MAGIC = 0x4D49434C, // MICL
+    /**
+     * Version of the format of the files of stored tables.
+     */
+    FILE_FORMAT_VERSION = 1;
+
+    /**
+     * Number of bits per channel of the default table (validated only once the table is created).
+     */
+    private static final int DEFAULT_BITS_PER_CHANNEL = SystemPropertyUtil.getSystemPropertyInt(
+            PROPERTY_PREFIX + "bits-per-channel", FULL_BITS_PER_CHANNEL
+    );
+
+    /**
+     * Number of bits used per color channel
+     */
+    @Getter @ToString.Include int bitsPerChannel;
+
+    /**
+     * Right shift applied to each color channel to get its quantized value
+     */
+    int channelShift;
+
+    /**
+     * Closest color codes indexed by quantized RGB colors
+     */
+    byte[] colorCodes;
+
+    /**
+     * Creates a new empty lookup table.
+     *
+     * @param bitsPerChannel number of bits used per color channel
+     */
+    private MapImageColorLookupTable(final int bitsPerChannel) {
+        this(bitsPerChannel, FULL_BITS_PER_CHANNEL - bitsPerChannel, new byte[tableSize(bitsPerChannel)]);
+    }
+
+    /**
+     * Gets the default lookup table configured by system properties.
+     * <p>
+     * The following properties (prefixed with this class's canonical name) are available:
+     * <dl>
+     *     <dt>{@code bits-per-channel}</dt>
+     *     <dd>number of bits per channel, {@code 8} (default) for a full table and less for a quantized one</dd>
+     *
+     *     <dt>{@code precompute}</dt>
+     *     <dd>whether the table should be computed eagerly rather than filled lazily,
+     *     by default {@code true} only for quantized tables</dd>
+     *
+     *     <dt>{@code persist}</dt>
+     *     <dd>whether the precomputed table should be stored under {@link MinecraftCommons#ROOT_DIRECTORY}
+     *     so that it is not recomputed on next start, {@code true} by default</dd>
+     * </dl>
+     *
+     * @return default lookup table
+     */
+    public static @NotNull MapImageColorLookupTable getDefault() {
+        return DefaultTableHolder.TABLE;
+    }
+
+    /**
+     * Gets the number of bits per channel of the {@link #getDefault() default table} without creating it.
+     *
+     * @return number of bits per channel of the default table
+     */
+    public static int getDefaultBitsPerChannel() {
+        return DEFAULT_BITS_PER_CHANNEL;
+    }
+
+    /**
+     * Creates a new full lookup table whose entries get computed once they are requested.
+     *
+     * @return new lazily filled full lookup table
+     */
+    public static @NotNull MapImageColorLookupTable createLazy() {
+        return new MapImageColorLookupTable(FULL_BITS_PER_CHANNEL);
+    }
+
+    /**
+     * Creates a new lookup table whose entries get computed once they are requested.
+     *
+     * @param bitsPerChannel number of bits used per color channel (from {@code 1} to {@code 8})
+     * @return new lazily filled lookup table
+     */
+    public static @NotNull MapImageColorLookupTable createLazy(final int bitsPerChannel) {
+        checkBitsPerChannel(bitsPerChannel);
+
+        return new MapImageColorLookupTable(bitsPerChannel);
+    }
+
+    /**
+     * Creates a new lookup table with all of its entries computed.
+     *
+     * @param bitsPerChannel number of bits used per color channel (from {@code 1} to {@code 8})
+     * @return new fully computed lookup table
+     *
+     * @apiNote computation of the full table is expensive, consider using {@link #loadOrCompute(int, File)}
+     */
+    public static @NotNull MapImageColorLookupTable createPrecomputed(final int bitsPerChannel) {
+        checkBitsPerChannel(bitsPerChannel);
+
+        val table = new MapImageColorLookupTable(bitsPerChannel);
+        table.computeAll();
+
+        return table;
+    }
+
+    /**
+     * Loads the lookup table from the file if it is valid for the current palette
+     * or computes it and stores it to the file otherwise.
+     *
+     * @param bitsPerChannel number of bits used per color channel (from {@code 1} to {@code 8})
+     * @param file file from which the table should be loaded and to which it should be stored
+     * @return loaded or computed lookup table
+     *
+     * @apiNote failure to store the computed table is not treated as an error
+     */
+    public static @NotNull MapImageColorLookupTable loadOrCompute(final int bitsPerChannel, final @NonNull File file) {
+        checkBitsPerChannel(bitsPerChannel);
+
+        val table = new MapImageColorLookupTable(bitsPerChannel);
+        if (!table.tryLoad(file)) {
+            table.computeAll();
+            table.trySave(file);
+        }
+
+        return table;
+    }
+
+    /**
+     * Gets the code of the map color closest to the one given.
+     *
+     * @param rgb RGB-color {@code int} for which to find the closest available color code (alpha is ignored)
+     * @return closest available color code
+     */
+    public byte getClosestColorCode(final int rgb) {
+        val index = index(rgb);
+
+        var colorCode = colorCodes[index];
+        if (colorCode == NO_COLOR_CODE) colorCodes[index] = colorCode = computeColorCode(index);
+
+        return colorCode;
+    }
+
+    /**
+     * Gets the index of the entry of this table corresponding to the color.
+     *
+     * @param rgb RGB-color {@code int} (alpha is ignored)
+     * @return index of the entry for the color
+     */
+    private int index(final int rgb) {
+        final int bits = bitsPerChannel, shift = channelShift;
+
+        return ((rgb >>> ColorUtil.RED_CHANNEL & 0xFF) >>> shift) << (bits << 1)
+                | ((rgb >>> ColorUtil.GREEN_CHANNEL & 0xFF) >>> shift) << bits
+                | (rgb & 0xFF) >>> shift;
+    }
+
+    /**
+     * Gets the value of the color channel represented by the quantized value.
+     *
+     * @param quantizedChannel quantized value of the color channel
+     * @return value of the color channel in the middle of the quantized range
+     */
+    private int channel(final int quantizedChannel) {
+        val shift = channelShift;
+
+        return shift == 0 ? quantizedChannel : quantizedChannel << shift | 1 << (shift - 1);
+    }
+
+    /**
+     * Computes the closest color code for the entry of this table.
+     *
+     * @param index index of the entry
+     * @return closest color code for the color of the entry
+     */
+    @SuppressWarnings("deprecation") // use of MapPalette#matchColor(..)
+    private byte computeColorCode(final int index) {
+        final int bits = bitsPerChannel, mask = (1 << bits) - 1;
+
+        return MapPalette.matchColor(new Color(
+                channel(index >>> (bits << 1)), channel(index >>> bits & mask), channel(index & mask)
+        ));
+    }
+
+    /**
+     * Computes all entries of this table in parallel.
+     */
+    private void computeAll() {
+        val colorCodes = this.colorCodes;
+        IntStream.range(0, colorCodes.length).parallel().forEach(index -> {
+            if (colorCodes[index] == NO_COLOR_CODE) colorCodes[index] = computeColorCode(index);
+        });
+    }
+
+    /**
+     * Attempts to load this table's entries from the file.
+     *
+     * @param file file from which to load the entries
+     * @return {@code true} if the entries were loaded and {@code false} if the file is absent or is invalid
+     */
+    private boolean tryLoad(final @NonNull File file) {
+        if (!file.isFile()) return false;
+
+        try (val input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_FORMAT_VERSION
+                    || input.readInt() != bitsPerChannel
+                    || input.readInt() != MapImageMinecraftColors.getPaletteHash()) return false;
+
+            input.readFully(colorCodes);
+        } catch (final IOException e) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Attempts to store this table's entries to the file.
+     *
+     * @param file file to which to store the entries
+     */
+    private void trySave(final @NonNull File file) {
+        try {
+            val directory = file.getAbsoluteFile().getParentFile();
+            Files.createDirectories(directory.toPath());
+
+            // write to a temporary file first so that the file never gets partially written
+            val temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+            try (val output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+                output.writeInt(FILE_MAGIC);
+                output.writeInt(FILE_FORMAT_VERSION);
+                output.writeInt(bitsPerChannel);
+                output.writeInt(MapImageMinecraftColors.getPaletteHash());
+                output.write(colorCodes);
+            }
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException ignored) {
+            // the table will simply be recomputed next time
+        }
+    }
+
+    /**
+     * Gets the size of the table of the specified number of bits per channel.
+     *
+     * @param bitsPerChannel number of bits used per color channel
+     * @return number of entries in the table
+     */
+    private static int tableSize(final int bitsPerChannel) {
+        return 1 << (bitsPerChannel * 3);
+    }
+
+    /**
+     * Checks that the number of bits per channel is valid.
+     *
+     * @param bitsPerChannel number of bits per channel to check
+     * @throws IllegalArgumentException if the number of bits per channel is not between {@code 1} and {@code 8}
+     */
+    private static void checkBitsPerChannel(final int bitsPerChannel) {
+        checkArgument(
+                bitsPerChannel > 0 && bitsPerChannel <= FULL_BITS_PER_CHANNEL,
+                "bitsPerChannel should be between 1 and " + FULL_BITS_PER_CHANNEL
+        );
+    }
+
+    /**
+     * Holder of the lazily initialized default table.
+     */
+    private static final class DefaultTableHolder {
+
+        /**
+         * Default lookup table.
+         */
+        private static final MapImageColorLookupTable TABLE;
+
+        static {
+            val bitsPerChannel = DEFAULT_BITS_PER_CHANNEL;
+            checkBitsPerChannel(bitsPerChannel);
+
+            if (SystemPropertyUtil.getSystemPropertyBoolean(
+                    PROPERTY_PREFIX + "precompute", bitsPerChannel < FULL_BITS_PER_CHANNEL
+            )) TABLE = SystemPropertyUtil.getSystemPropertyBoolean(PROPERTY_PREFIX + "persist", true)
+                    ? loadOrCompute(bitsPerChannel, new File(
+                            new File(MinecraftCommons.ROOT_DIRECTORY, SystemPropertyUtil.getSystemProperty(
+                                    PROPERTY_PREFIX + "directory-name", Function.identity(), "map_image_colors/"
+                            )), "lookup_table_" + bitsPerChannel + ".bin"
+                    ))
+                    : createPrecomputed(bitsPerChannel);
+            else TABLE = createLazy(bitsPerChannel);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import lombok.var;
+
+import static ru.progrm_jarvis.minecraft.commons.util.image.ColorUtil.*;
+
+/**
+ * Mode of conversion of RGB-pixels to map color codes.
+ *
+ * @apiNote the standard for 1-dimensional arrays of image pixels is {@code pixel(x, y) = pixels[x + y * width}
+ */
+@RequiredArgsConstructor
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public enum MapImageDithering {
+
+    /**
+     * Each pixel is converted to the closest color code.
+     */
+    NONE(true) {
+        @Override
+        public void dither(final @NonNull int[] pixels, final int width, final int height, final int y,
+                           final @NonNull byte[] target, final int targetOffset, final int targetScanSize,
+                           final @NonNull MapImageColorLookupTable lookupTable) {
+            var i = 0;
+            for (var row = 0; row < height; row++) {
+                val rowOffset = targetOffset + row * targetScanSize;
+                for (var x = 0; x < width; x++) target[x + rowOffset] = lookupTable.getClosestColorCode(pixels[i++]);
+            }
+        }
+    },
+
+    /**
+     * Error of each pixel's conversion is diffused to its neighbours using Floyd–Steinberg matrix.
+     */
+    FLOYD_STEINBERG(false) {
+        @Override
+        public void dither(final @NonNull int[] pixels, final int width, final int height, final int y,
+                           final @NonNull byte[] target, final int targetOffset, final int targetScanSize,
+                           final @NonNull MapImageColorLookupTable lookupTable) {
+            diffuseError(
+                    pixels, width, height, target, targetOffset, targetScanSize, lookupTable,
+                    FLOYD_STEINBERG_KERNEL, FLOYD_STEINBERG_DIVISOR_SHIFT
+            );
+        }
+    },
+
+    /**
+     * Error of each pixel's conversion is partially diffused to its neighbours using Atkinson matrix.
+     * This keeps more contrast than {@link #FLOYD_STEINBERG} as only {@code 3/4} of the error gets diffused.
+     */
+    ATKINSON(false) {
+        @Override
+        public void dither(final @NonNull int[] pixels, final int width, final int height, final int y,
+                           final @NonNull byte[] target, final int targetOffset, final int targetScanSize,
+                           final @NonNull MapImageColorLookupTable lookupTable) {
+            diffuseError(
+                    pixels, width, height, target, targetOffset, targetScanSize, lookupTable,
+                    ATKINSON_KERNEL, ATKINSON_DIVISOR_SHIFT
+            );
+        }
+    },
+
+    /**
+     * Each pixel is offset by the threshold of {@code 8}×{@code 8} Bayer matrix before conversion.
+     */
+    ORDERED(true) {
+        @Override
+        public void dither(final @NonNull int[] pixels, final int width, final int height, final int y,
+                           final @NonNull byte[] target, final int targetOffset, final int targetScanSize,
+                           final @NonNull MapImageColorLookupTable lookupTable) {
+            var i = 0;
+            for (var row = 0; row < height; row++) {
+                final int rowOffset = targetOffset + row * targetScanSize, matrixRowOffset = ((y + row) & 7) << 3;
+                for (var x = 0; x < width; x++) {
+                    val pixel = pixels[i++];
+                    val threshold = BAYER_THRESHOLDS[matrixRowOffset | x & 7];
+
+                    target[x + rowOffset] = lookupTable.getClosestColorCode(toArgb(
+                            clampChannel(red(pixel) + threshold),
+                            clampChannel(green(pixel) + threshold),
+                            clampChannel(blue(pixel) + threshold)
+                    ));
+                }
+            }
+        }
+    };
+
+    /**
+     * Spread of the thresholds of ordered dithering in each color channel.
+     */
+    private static final int ORDERED_DITHERING_SPREAD = 32;
+
+    /**
+     * Thresholds of {@code 8}×{@code 8} Bayer matrix scaled to
+     * [{@code -}{@link #ORDERED_DITHERING_SPREAD}{@code / 2}; {@link #ORDERED_DITHERING_SPREAD}{@code / 2})
+     * indexed as {@code x + y * 8}.
+     */
+    private static final int[] BAYER_THRESHOLDS;
+
+    /**
+     * Floyd–Steinberg error diffusion kernel as triples of X-offset, Y-offset and weight.
+     */
+    private static final int[] FLOYD_STEINBERG_KERNEL = {
+            /* current row */ 1, 0, 7,
+            /* next row */ -1, 1, 3, 0, 1, 5, 1, 1, 1
+    },
+    /**
+     * Atkinson error diffusion kernel as triples of X-offset, Y-offset and weight.
+     */
+    ATKINSON_KERNEL = {
+            /* current row */ 1, 0, 1, 2, 0, 1,
+            /* next row */ -1, 1, 1, 0, 1, 1, 1, 1, 1,
+            /* the row after the next one */ 0, 2, 1
+    };
+
+    /**
+     * Binary logarithm of the sum of weights by which the weighted error of Floyd–Steinberg kernel is divided.
+     */
+    private static final int FLOYD_STEINBERG_DIVISOR_SHIFT = 4,
+    /**
+     * Binary logarithm of the sum of weights by which the weighted error of Atkinson kernel is divided.
+     */
+    ATKINSON_DIVISOR_SHIFT = 3;
+
+    static {
+        val thresholds = new int[64];
+        for (var y = 0; y < 8; y++) for (var x = 0; x < 8; x++) {
+            // bit-reversed interleaving of x ^ y and y gives the index of the cell in Bayer matrix
+            val xy = x ^ y;
+            val index = (xy & 1) << 5 | (y & 1) << 4
+                    | (xy & 2) << 2 | (y & 2) << 1
+                    | (xy & 4) >> 1 | (y & 4) >> 2;
+
+            thresholds[x + (y << 3)] = ((index << 1) + 1) * ORDERED_DITHERING_SPREAD / 128
+                    - ORDERED_DITHERING_SPREAD / 2;
+        }
+        BAYER_THRESHOLDS = thresholds;
+    }
+
+    /**
+     * Marker indicating whether this dithering converts each row independently (so rows can be converted in parallel)
+     */
+    @Getter boolean rowIndependent;
+
+    /**
+     * Converts the rows of RGB-pixels to map color codes.
+     *
+     * @param pixels RGB-pixels of the rows ({@code width} pixels for each of {@code height} rows)
+     * @param width width of the rows
+     * @param height number of the rows
+     * @param y Y-coordinate of the first row in the image
+     * @param target array to which the color codes should be written
+     * @param targetOffset offset in the target array at which the color codes should start
+     * @param targetScanSize distance between the starts of the rows in the target array
+     * @param lookupTable lookup table used for finding the closest color codes
+     *
+     * @apiNote unless this dithering is {@link #isRowIndependent() row-independent}, whole image should be converted
+     * by a single call so that the error gets diffused between all of its rows
+     */
+    public abstract void dither(@NonNull int[] pixels, int width, int height, int y,
+                                @NonNull byte[] target, int targetOffset, int targetScanSize,
+                                @NonNull MapImageColorLookupTable lookupTable);
+
+    /**
+     * Makes the value of the color channel fit its bounds.
+     *
+     * @param value value of the color channel
+     * @return value bounded by [{@code 0}; {@code 255}]
+     */
+    private static int clampChannel(final int value) {
+        return value < 0 ? 0 : value > 0xFF ? 0xFF : value;
+    }
+
+    /**
+     * Converts the rows of RGB-pixels to map color codes diffusing the error of each conversion.
+     *
+     * @param pixels RGB-pixels of the rows ({@code width} pixels for each of {@code height} rows)
+     * @param width width of the rows
+     * @param height number of the rows
+     * @param target array to which the color codes should be written
+     * @param targetOffset offset in the target array at which the color codes should start
+     * @param targetScanSize distance between the starts of the rows in the target array
+     * @param lookupTable lookup table used for finding the closest color codes
+     * @param kernel triples of X-offset (from {@code -2} to {@code 2}), non-negative Y-offset and weight
+     * @param divisorShift binary logarithm of the sum of weights of the kernel
+     */
+    private static void diffuseError(final int[] pixels, final int width, final int height,
+                                     final byte[] target, final int targetOffset, final int targetScanSize,
+                                     final MapImageColorLookupTable lookupTable,
+                                     final int[] kernel, final int divisorShift) {
+        var maxKernelY = 0;
+        for (var i = 1; i < kernel.length; i += 3) if (kernel[i] > maxKernelY) maxKernelY = kernel[i];
+
+        // cyclic buffer of weighted errors of rows (with 2 pixels of padding on each side) for red, green and blue
+        final int errorRowsCount = maxKernelY + 1, errorRowLength = (width + 4) * 3;
+        val errors = new int[errorRowsCount * errorRowLength];
+
+        var i = 0;
+        for (var y = 0; y < height; y++) {
+            val errorRowOffset = (y % errorRowsCount) * errorRowLength;
+            val rowOffset = targetOffset + y * targetScanSize;
+            for (var x = 0; x < width; x++) {
+                val pixel = pixels[i++];
+
+                val errorOffset = errorRowOffset + (x + 2) * 3;
+                final int red = clampChannel(red(pixel) + (errors[errorOffset] >> divisorShift)),
+                        green = clampChannel(green(pixel) + (errors[errorOffset + 1] >> divisorShift)),
+                        blue = clampChannel(blue(pixel) + (errors[errorOffset + 2] >> divisorShift));
+                // the error is consumed so the row can be reused
+                errors[errorOffset] = errors[errorOffset + 1] = errors[errorOffset + 2] = 0;
+
+                val colorCode = lookupTable.getClosestColorCode(toArgb(red, green, blue));
+                target[x + rowOffset] = colorCode;
+
+                val paletteRgb = MapImageMinecraftColors.getPaletteRgb(colorCode);
+                final int redError = red - red(paletteRgb),
+                        greenError = green - green(paletteRgb),
+                        blueError = blue - blue(paletteRgb);
+
+                for (var k = 0; k < kernel.length; k += 3) {
+                    val errorX = x + kernel[k];
+                    if (errorX < 0 || errorX >= width) continue;
+
+                    final int weight = kernel[k + 2], targetErrorOffset
+                            = ((y + kernel[k + 1]) % errorRowsCount) * errorRowLength + (errorX + 2) * 3;
+                    errors[targetErrorOffset] += redError * weight;
+                    errors[targetErrorOffset + 1] += greenError * weight;
+                    errors[targetErrorOffset + 2] += blueError * weight;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR_CODE;
+
+/**
+ * Bitmap font for drawing text on {@link MapImage map images}.
+ * Glyphs of the font are rasterized once from AWT {@link Font} and are then cached as masks
+ * and as sprites of colors in which they were drawn.
+ *
+ * @see MapImage.Drawer#text(int, int, String, MapImageFont, byte) for drawing the text
+ * @see MapImage.Drawer#text(int, int, String, MapImageFont, byte, byte) for drawing the text with background
+ */
+@ToString(onlyExplicitlyIncluded = true)
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class MapImageFont {
+
+    /**
+     * Fonts created by {@link #of(Font)}
+     */
+    private static final Map<Font, MapImageFont> FONTS = new ConcurrentHashMap<>();
+
+    /**
+     * Number of the first code points whose glyphs are rasterized once the font is created.
+     */
+    private static final int PRERENDERED_GLYPHS_COUNT = 128;
+
+    /**
+     * AWT font from which the glyphs are rasterized
+     */
+    @ToString.Include @EqualsAndHashCode.Include @Getter @NonNull Font font;
+
+    /**
+     * Height of the font's line (which is also the height of each glyph)
+     */
+    @Getter int height,
+    /**
+     * Distance from the top of the line to the baseline
+     */
+    ascent;
+
+    /**
+     * Glyphs of the first {@link #PRERENDERED_GLYPHS_COUNT} code points
+     */
+    Glyph[] prerenderedGlyphs;
+
+    /**
+     * Glyphs of other code points rasterized on demand
+     */
+    Map<Integer, Glyph> glyphs = new ConcurrentHashMap<>();
+
+    private MapImageFont(final @NonNull Font font) {
+        this.font = font;
+
+        val graphics = newGraphics(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY));
+        try {
+            val metrics = graphics.getFontMetrics();
+            ascent = metrics.getAscent();
+            height = ascent + metrics.getDescent();
+        } finally {
+            graphics.dispose();
+        }
+
+        val prerenderedGlyphs = new Glyph[PRERENDERED_GLYPHS_COUNT];
+        for (var codePoint = 0; codePoint < PRERENDERED_GLYPHS_COUNT; codePoint++) prerenderedGlyphs[codePoint]
+                = rasterize(codePoint);
+        this.prerenderedGlyphs = prerenderedGlyphs;
+    }
+
+    /**
+     * Gets the map image font for the specified AWT font.
+     *
+     * @param font AWT font of which to get the map image font
+     * @return cached map image font
+     */
+    public static MapImageFont of(final @NonNull Font font) {
+        return FONTS.computeIfAbsent(font, MapImageFont::new);
+    }
+
+    /**
+     * Creates new graphics drawing on the image with this font without antialiasing
+     * so that the glyphs do not get blurred by intermediate colors.
+     *
+     * @param image image on which to draw
+     * @return created graphics which should be disposed after usage
+     */
+    private Graphics2D newGraphics(final @NonNull BufferedImage image) {
+        val graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+        graphics.setFont(font);
+
+        return graphics;
+    }
+
+    /**
+     * Rasterizes the glyph of the code point.
+     *
+     * @param codePoint code point whose glyph to rasterize
+     * @return rasterized glyph
+     */
+    private Glyph rasterize(final int codePoint) {
+        val text = new String(Character.toChars(codePoint));
+
+        final int width;
+        {
+            val graphics = newGraphics(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY));
+            try {
+                width = graphics.getFontMetrics().stringWidth(text);
+            } finally {
+                graphics.dispose();
+            }
+        }
+
+        val mask = new byte[width * height];
+        if (width != 0 && height != 0) {
+            val image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            val graphics = newGraphics(image);
+            try {
+                graphics.setColor(Color.WHITE);
+                graphics.drawString(text, 0, ascent);
+            } finally {
+                graphics.dispose();
+            }
+
+            val raster = image.getRaster();
+            for (var y = 0; y < height; y++) for (var x = 0; x < width; x++) {
+                if (raster.getSample(x, y, 0) >= 0x80) mask[x + y * width] = 1;
+            }
+        }
+
+        return new Glyph(width, height, mask);
+    }
+
+    /**
+     * Gets the glyph of the code point.
+     *
+     * @param codePoint code point whose glyph to get
+     * @return glyph of the code point
+     */
+    public Glyph glyph(final int codePoint) {
+        checkArgument(Character.isValidCodePoint(codePoint), "codePoint should be a valid code point");
+
+        if (codePoint < PRERENDERED_GLYPHS_COUNT) return prerenderedGlyphs[codePoint];
+        return glyphs.computeIfAbsent(codePoint, this::rasterize);
+    }
+
+    /**
+     * Gets the width of the text drawn with this font.
+     *
+     * @param text text whose width to get
+     * @return width of the text in pixels
+     */
+    public int width(final @NonNull String text) {
+        var width = 0;
+        for (var i = 0; i < text.length(); ) {
+            val codePoint = text.codePointAt(i);
+            width += glyph(codePoint).getWidth();
+            i += Character.charCount(codePoint);
+        }
+
+        return width;
+    }
+
+    /**
+     * Rasterized glyph of a code point.
+     */
+    @ToString(onlyExplicitlyIncluded = true)
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    public static final class Glyph {
+
+        /**
+         * Width of the glyph (which is also the distance to the next glyph)
+         */
+        @ToString.Include @Getter int width,
+        /**
+         * Height of the glyph
+         */
+        height;
+
+        /**
+         * Mask of the glyph's pixels ({@code width} columns for each of {@code height} rows)
+         * being {@code 1} for drawn pixels and {@code 0} for the others
+         */
+        @NonNull byte[] mask;
+
+        /**
+         * Sprites of this glyph lazily created for each color (indexed by unsigned color code)
+         */
+        byte[][] sprites = new byte[256][];
+
+        /**
+         * Opaque sprites of this glyph lazily created for pairs of color and background
+         */
+        Map<Integer, byte[]> opaqueSprites = new ConcurrentHashMap<>();
+
+        /**
+         * Checks whether the pixel of this glyph is drawn.
+         *
+         * @param x X-coordinate of the pixel
+         * @param y Y-coordinate of the pixel
+         * @return {@code true} if the pixel is drawn and {@code false} otherwise
+         */
+        public boolean isDrawn(final int x, final int y) {
+            checkArgument(x >= 0 && x < width, "x should be between 0 and " + (width - 1));
+            checkArgument(y >= 0 && y < height, "y should be between 0 and " + (height - 1));
+
+            return mask[x + y * width] != 0;
+        }
+
+        /**
+         * Gets the color of the pixels of {@link #sprite(byte) sprites} of this glyph which are not drawn.
+         *
+         * @param color color of the sprite
+         * @return color of the pixels of the sprite which are not drawn
+         */
+        public static byte transparentColor(final byte color) {
+            return color == NO_COLOR_CODE ? (byte) (NO_COLOR_CODE + 1) : NO_COLOR_CODE;
+        }
+
+        /**
+         * Gets the color which is neither the color nor the background of the {@link #sprite(byte, byte) sprite}.
+         *
+         * @param color color of the sprite
+         * @param background background of the sprite
+         * @return color which is not used by the sprite
+         */
+        public static byte unusedColor(final byte color, final byte background) {
+            byte unusedColor = NO_COLOR_CODE;
+            while (unusedColor == color || unusedColor == background) unusedColor++;
+
+            return unusedColor;
+        }
+
+        /**
+         * Creates the sprite of this glyph.
+         *
+         * @param color color of the drawn pixels
+         * @param background color of the pixels which are not drawn
+         * @return created sprite
+         */
+        private byte[] newSprite(final byte color, final byte background) {
+            val sprite = new byte[mask.length];
+            for (var i = 0; i < sprite.length; i++) sprite[i] = mask[i] == 0 ? background : color;
+
+            return sprite;
+        }
+
+        /**
+         * Gets the sprite of this glyph of the specified color.
+         *
+         * @param color color of the sprite
+         * @return sprite whose pixels are either of the specified color
+         * or of {@link #transparentColor(byte) transparent color}
+         *
+         * @apiNote the returned array is cached and so should not be modified
+         */
+        public byte[] sprite(final byte color) {
+            val index = color & 0xFF;
+            var sprite = sprites[index];
+            // race here is harmless as the sprites are equal
+            if (sprite == null) sprites[index] = sprite = newSprite(color, transparentColor(color));
+
+            return sprite;
+        }
+
+        /**
+         * Gets the opaque sprite of this glyph of the specified colors.
+         *
+         * @param color color of the drawn pixels
+         * @param background color of the pixels which are not drawn
+         * @return sprite whose pixels are either of the specified color or of the specified background
+         *
+         * @apiNote the returned array is cached and so should not be modified
+         */
+        public byte[] sprite(final byte color, final byte background) {
+            return opaqueSprites.computeIfAbsent(
+                    (color & 0xFF) << Byte.SIZE | background & 0xFF, key -> newSprite(color, background)
+            );
+        }
+    }
+}
@@ -6,8 +6,13 @@ import it.unimi.dsi.fastutil.ints.Int2ByteOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntSet;
 import lombok.experimental.UtilityClass;
 import lombok.val;
+import lombok.var;
+import org.bukkit.map.MapPalette;
 import ru.progrm_jarvis.minecraft.commons.util.image.ColorUtil;
 
+import java.awt.*;
+import java.util.Arrays;
+
 import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR_CODE;
 
 /**
@@ -302,4 +307,73 @@ public class MapImageMinecraftColors {
     public byte getMinecraftColorCode(final byte red, final byte green, final byte blue) {
         return MINECRAFT_RGB_COLOR_CODES.get(ColorUtil.toArgb(red, green, blue));
     }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // Bukkit palette
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Gets the RGB color associated with the specified color code by Bukkit's {@link MapPalette}.
+     *
+     * @param colorCode color code whose RGB color to get
+     * @return RGB color as {@code int} associated with the color code
+     * or {@code 0} if the color code is not available in the current palette
+     */
+    public int getPaletteRgb(final byte colorCode) {
+        return PaletteHolder.PALETTE_RGB[colorCode & 0xFF];
+    }
+
+    /**
+     * Checks whether the specified color code is available in Bukkit's {@link MapPalette}.
+     *
+     * @param colorCode color code to check
+     * @return {@code true} if the color code is available in the current palette and {@code false} otherwise
+     */
+    public boolean isPaletteColorCode(final byte colorCode) {
+        return PaletteHolder.PALETTE_RGB[colorCode & 0xFF] != 0;
+    }
+
+    /**
+     * Gets the hash of Bukkit's {@link MapPalette} which changes whenever the palette does.
+     *
+     * @return hash of the current palette
+     *
+     * @apiNote this is intended to be used for invalidation of data computed using the palette
+     */
+    public int getPaletteHash() {
+        return PaletteHolder.PALETTE_HASH;
+    }
+
+    /**
+     * Holder of lazily computed data of Bukkit's {@link MapPalette}.
+     */
+    private static final class PaletteHolder {
+
+        /**
+         * RGB colors of the palette indexed by unsigned color codes, {@code 0} for unavailable ones.
+         */
+        private static final int[] PALETTE_RGB = new int[256];
+
+        /**
+         * Hash of {@link #PALETTE_RGB}.
+         */
+        private static final int PALETTE_HASH;
+
+        static {
+            // the first 4 codes are transparent
+            for (var code = 4; code < PALETTE_RGB.length; code++) {
+                final Color color;
+                try {
+                    //noinspection deprecation ( use of MapPalette#getColor(..)
+                    color = MapPalette.getColor((byte) code);
+                } catch (final IndexOutOfBoundsException e) {
+                    continue;
+                }
+                // alpha is kept so that even black is non-zero
+                PALETTE_RGB[code] = color.getRGB() | 0xFF000000;
+            }
+
+            PALETTE_HASH = Arrays.hashCode(PALETTE_RGB);
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.jetbrains.annotations.NotNull;
+import ru.progrm_jarvis.minecraft.commons.util.SystemPropertyUtil;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Pool of {@code byte}-arrays of map image pixels shared by {@link PooledMapImage pooled images}.
+ * <p>
+ * Released arrays are retained (up to the limit of their total size) and are handed out again instead of new ones
+ * so that the images and their deltas which are created and released often do not cause GC churn.
+ * Arrays are only reused for the requests of the same length as the deltas' pixels should have exact lengths.
+ * This is thread-safe.
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class MapImagePixelPool {
+
+    /**
+     * Maximal total size of the retained arrays in bytes
+     */
+    @Getter long maxRetainedBytes;
+
+    /**
+     * Total size of the retained arrays in bytes
+     */
+    @ToString.Exclude @NonNull AtomicLong retainedBytes = new AtomicLong();
+
+    /**
+     * Retained arrays by their lengths
+     */
+    @ToString.Exclude @NonNull Map<Integer, Queue<byte[]>> retainedArrays = new ConcurrentHashMap<>();
+
+    /**
+     * Creates new pool.
+     *
+     * @param maxRetainedBytes maximal total size of the retained arrays in bytes
+     */
+    public MapImagePixelPool(final long maxRetainedBytes) {
+        checkArgument(maxRetainedBytes > 0, "maxRetainedBytes should be positive");
+
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Gets the default pool.
+     *
+     * @return default pool
+     *
+     * @apiNote the maximal total size of the retained arrays of the default pool (in bytes)
+     * is configured via system property {@code <this class's canonical name>.max-retained-bytes}
+     */
+    public static @NotNull MapImagePixelPool getDefault() {
+        return DefaultPoolHolder.POOL;
+    }
+
+    /**
+     * Acquires the array of pixels from this pool.
+     *
+     * @param length length of the array
+     * @return array of pixels filled with {@link MapImageColor#NO_COLOR_CODE}
+     */
+    public byte[] acquire(final int length) {
+        checkArgument(length >= 0, "length should be non-negative");
+        if (length == 0) return MapImage.Delta.NO_PIXELS;
+
+        val retained = retainedArrays.get(length);
+        if (retained != null) {
+            val pixels = retained.poll();
+            if (pixels != null) {
+                retainedBytes.addAndGet(-length);
+
+                return pixels;
+            }
+        }
+
+        return MapImage.blankPixels(new byte[length]);
+    }
+
+    /**
+     * Releases the array of pixels to this pool so that it can be acquired again.
+     *
+     * @param pixels array of pixels which is no longer used by anyone
+     *
+     * @apiNote the array should not be used after it gets released
+     */
+    public void release(final @NonNull byte[] pixels) {
+        val length = pixels.length;
+        if (length == 0) return;
+
+        // the array is left to GC if retaining it would exceed the limit
+        if (retainedBytes.addAndGet(length) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-length);
+
+            return;
+        }
+
+        // arrays are blanked on release so that acquiring them does not require it
+        MapImage.blankPixels(pixels);
+        retainedArrays.computeIfAbsent(length, retainedLength -> new ConcurrentLinkedQueue<>()).offer(pixels);
+    }
+
+    /**
+     * Gets the number of arrays retained by this pool.
+     *
+     * @return number of arrays retained by this pool
+     */
+    public int retained() {
+        var retained = 0;
+        for (val arrays : retainedArrays.values()) retained += arrays.size();
+
+        return retained;
+    }
+
+    /**
+     * Gets the total size of the arrays retained by this pool.
+     *
+     * @return total size of the arrays retained by this pool in bytes
+     */
+    public long retainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Releases all the arrays retained by this pool to GC.
+     */
+    public void clear() {
+        for (val arrays : retainedArrays.values()) {
+            byte[] pixels;
+            while ((pixels = arrays.poll()) != null) retainedBytes.addAndGet(-pixels.length);
+        }
+    }
+
+    /**
+     * Holder of the lazily initialized default pool.
+     */
+    private static final class DefaultPoolHolder {
+
+        /**
+         * Default pool.
+         */
+        private static final MapImagePixelPool POOL = new MapImagePixelPool(
+                SystemPropertyUtil.getSystemPropertyLong(
+                        MapImagePixelPool.class.getCanonicalName() + ".max-retained-bytes", 256L * MapImage.PIXELS_COUNT
+                )
+        );
+    }
+}
@@ -0,0 +1,158 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import com.comphenix.packetwrapper.WrapperPlayServerMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Registry of map images' pixels interned by their content.
+ * <p>
+ * Images created by this registry from identical pixels share a single immutable array of them
+ * which gets copied by an image only once it is drawn on (see {@link SharedMapImage}).
+ * The interned arrays are referenced weakly so they are collected once no image shares them.
+ * This is thread-safe.
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class MapImageRegistry {
+
+    /**
+     * Interner of the pixels
+     */
+    @ToString.Exclude @NonNull Interner<InternedPixels> interner = Interners.newWeakInterner();
+
+    /**
+     * Gets the default registry.
+     *
+     * @return default registry
+     */
+    public static @NotNull MapImageRegistry getDefault() {
+        return DefaultRegistryHolder.REGISTRY;
+    }
+
+    /**
+     * Creates new image sharing the pixels with the images of the same pixels created by this registry.
+     *
+     * @param pixels array of Minecraft color IDs (columns of rows) which gets copied if it is not interned yet
+     * @param displayMode possible map image display mode (from {@code 0} to {@code 4})
+     * @return created image
+     */
+    public @NotNull SharedMapImage intern(final @NonNull byte[] pixels, final byte displayMode) {
+        checkArgument(pixels.length == MapImage.PIXELS_COUNT, "pixels length should be " + MapImage.PIXELS_COUNT);
+
+        return new SharedMapImage(interner.intern(new InternedPixels(pixels.clone())), displayMode);
+    }
+
+    /**
+     * Creates new image sharing the pixels with the images of the same pixels created by this registry.
+     *
+     * @param image image whose pixels and display mode should be used
+     * @return created image
+     */
+    public @NotNull SharedMapImage intern(final @NonNull MapImage image) {
+        return intern(image.getMapData(), image.getDisplay());
+    }
+
+    /**
+     * Creates new image from image sharing the pixels with the images of the same pixels created by this registry.
+     *
+     * @param image from which to create the map image
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @param displayMode display mode of the image
+     * @return created image
+     */
+    public @NotNull SharedMapImage intern(final @NonNull BufferedImage image, final boolean resize,
+                                          final byte displayMode) {
+        // the converted pixels are not referenced by anyone else so there is no need to copy them
+        return new SharedMapImage(
+                interner.intern(new InternedPixels(MapImages.getMapImagePixels(image, resize))), displayMode
+        );
+    }
+
+    /**
+     * Immutable pixels compared by their content.
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    static final class InternedPixels {
+
+        /**
+         * Pixels which should never be modified
+         */
+        @Getter @NonNull byte[] pixels;
+
+        /**
+         * Hash code of the pixels computed once
+         */
+        int hashCode;
+
+        /**
+         * Packets of the whole image of the pixels (without the map ID set) indexed by their display modes
+         * which are built lazily and live as long as the pixels themselves
+         */
+        @NonNull AtomicReferenceArray<WrapperPlayServerMap> fullImagePackets = new AtomicReferenceArray<>(5);
+
+        private InternedPixels(final @NonNull byte[] pixels) {
+            this.pixels = pixels;
+            hashCode = Arrays.hashCode(pixels);
+        }
+
+        /**
+         * Gets the packet of the whole image of the pixels building it if needed.
+         *
+         * @param displayMode display mode of the image
+         * @return packet of the whole image (without the map ID set) which should not be modified as it is shared
+         */
+        @NotNull WrapperPlayServerMap fullImagePacket(final byte displayMode) {
+            // racing threads may build similar packets but any of them is valid
+            var packet = fullImagePackets.get(displayMode);
+            if (packet == null) {
+                packet = new WrapperPlayServerMap();
+                packet.setScale(displayMode);
+                packet.setColumns(MapImage.WIDTH);
+                packet.setRows(MapImage.HEIGHT);
+                packet.setX(0);
+                packet.setZ(0);
+                // the pixels are immutable so they are safe to be shared
+                packet.setData(pixels);
+
+                fullImagePackets.set(displayMode, packet);
+            }
+
+            return packet;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (this == object) return true;
+            if (!(object instanceof InternedPixels)) return false;
+
+            val other = (InternedPixels) object;
+            return hashCode == other.hashCode && Arrays.equals(pixels, other.pixels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Holder of the lazily initialized default registry.
+     */
+    private static final class DefaultRegistryHolder {
+
+        /**
+         * Default registry.
+         */
+        private static final MapImageRegistry REGISTRY = new MapImageRegistry();
+    }
+}
@@ -0,0 +1,563 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.*;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.Contract;
+import ru.progrm_jarvis.javacommons.lazy.Lazy;
+
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.*;
+
+/**
+ * Image spanning a grid of {@link MapImage map images} (tiles) of {@link MapImage#WIDTH}×{@link MapImage#HEIGHT}.
+ * <p>
+ * All changes made by its {@link #drawer() drawer} are tracked per tile
+ * and get published at once on {@link #flush()} so that a burst of drawing
+ * results in at most one delta per changed tile.
+ *
+ * @apiNote this is not thread-safe and so should normally be used only from the server's main thread
+ */
+@ToString(onlyExplicitlyIncluded = true)
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class MapImageWall {
+
+    /**
+     * Number of tiles in each row of this wall
+     */
+    @ToString.Include @Getter int columns,
+    /**
+     * Number of tiles in each column of this wall
+     */
+    rows;
+
+    /**
+     * Display mode of this wall's tiles
+     */
+    @ToString.Include @Getter byte displayMode;
+
+    /**
+     * Tiles of this wall indexed as {@code column + row * columns}
+     */
+    MapImage[] tiles;
+
+    /**
+     * Pixels of this wall's tiles indexed as the tiles
+     */
+    byte[][] tilePixels;
+
+    /**
+     * Bounds of the changed segments of the tiles as 4 values (least X, least Y, most X and most Y)
+     * for each tile, all of them being {@link Delta#NONE} if the tile is unchanged
+     */
+    int[] changedBounds;
+
+    /**
+     * Indices of the changed tiles, only the first {@link #changedTilesCount} of them are used
+     */
+    int[] changedTiles;
+
+    /**
+     * Number of changed tiles
+     */
+    @NonFinal int changedTilesCount;
+
+    /**
+     * Lazily initialized drawer
+     */
+    Lazy<Drawer> drawer = Lazy.create(Drawer::new);
+
+    /**
+     * All subscribers active.
+     */
+    UpdateSubscribers<List<TileDelta>> updateSubscribers = new UpdateSubscribers<>();
+
+    /**
+     * Creates new map image wall of the specified pixels.
+     *
+     * @param columns number of tiles in each row of the wall
+     * @param rows number of tiles in each column of the wall
+     * @param pixels pixels of the whole wall ({@code columns * }{@link MapImage#WIDTH} columns of rows)
+     * @param displayMode possible map image display mode (from {@code 0} to {@code 4})
+     */
+    protected MapImageWall(final int columns, final int rows, final @NonNull byte[] pixels, final byte displayMode) {
+        checkArgument(columns > 0, "columns should be positive");
+        checkArgument(rows > 0, "rows should be positive");
+        checkArgument(
+                pixels.length == columns * rows * PIXELS_COUNT,
+                "pixels length should be " + columns * rows * PIXELS_COUNT
+        );
+        checkArgument(displayMode >= 0 && displayMode <= 4, "displayMode should be between 0 and 4");
+
+        this.columns = columns;
+        this.rows = rows;
+        this.displayMode = displayMode;
+
+        val tilesCount = columns * rows;
+        tiles = new MapImage[tilesCount];
+        tilePixels = new byte[tilesCount][];
+        changedBounds = new int[tilesCount << 2];
+        Arrays.fill(changedBounds, Delta.NONE);
+        changedTiles = new int[tilesCount];
+
+        val wallWidth = columns * WIDTH;
+        for (var tile = 0; tile < tilesCount; tile++) {
+            val tilePixels = new byte[PIXELS_COUNT];
+            val offset = (tile % columns) * WIDTH + (tile / columns) * HEIGHT * wallWidth;
+            for (var y = 0; y < HEIGHT; y++) System.arraycopy(
+                    pixels, offset + y * wallWidth, tilePixels, y * WIDTH, WIDTH
+            );
+
+            this.tilePixels[tile] = tilePixels;
+            // the tile keeps the reference to the array so that the wall can change it directly
+            tiles[tile] = new DefaultMapImage(tilePixels, displayMode);
+        }
+    }
+
+    /**
+     * Creates new blank map image wall.
+     *
+     * @param columns number of tiles in each row of the wall
+     * @param rows number of tiles in each column of the wall
+     * @param displayMode possible map image display mode (from {@code 0} to {@code 4})
+     */
+    public MapImageWall(final int columns, final int rows, final byte displayMode) {
+        this(columns, rows, blankPixels(new byte[max(columns * rows, 0) * PIXELS_COUNT]), displayMode);
+    }
+
+    /**
+     * Creates new map image wall from image converting it as a whole.
+     *
+     * @param image from which to create the map image wall
+     * @param columns number of tiles in each row of the wall
+     * @param rows number of tiles in each column of the wall
+     * @param resize whether the image should be resized or cut to fit the wall's dimensions
+     * @param dithering dithering used for conversion of the image
+     * @param displayMode display mode of the wall's tiles
+     * @return created map image wall
+     */
+    public static MapImageWall from(final @NonNull BufferedImage image, final int columns, final int rows,
+                                    final boolean resize, final @NonNull MapImageDithering dithering,
+                                    final byte displayMode) {
+        checkArgument(columns > 0, "columns should be positive");
+        checkArgument(rows > 0, "rows should be positive");
+
+        return new MapImageWall(columns, rows, MapImages.getMapImagePixels(
+                image, columns * WIDTH, rows * HEIGHT, resize, dithering
+        ), displayMode);
+    }
+
+    /**
+     * Asynchronously creates new map image wall from image converting it as a whole in parallel.
+     *
+     * @param image from which to create the map image wall
+     * @param columns number of tiles in each row of the wall
+     * @param rows number of tiles in each column of the wall
+     * @param resize whether the image should be resized or cut to fit the wall's dimensions
+     * @param dithering dithering used for conversion of the image
+     * @param displayMode display mode of the wall's tiles
+     * @param pool pool used for image conversion
+     * @return future of created map image wall
+     *
+     * @see MapImages#getMapImagePixelsAsync(BufferedImage, int, int, boolean, MapImageDithering, ForkJoinPool)
+     * used for image conversion
+     */
+    public static CompletableFuture<MapImageWall> fromAsync(final @NonNull BufferedImage image,
+                                                            final int columns, final int rows, final boolean resize,
+                                                            final @NonNull MapImageDithering dithering,
+                                                            final byte displayMode,
+                                                            final @NonNull ForkJoinPool pool) {
+        checkArgument(columns > 0, "columns should be positive");
+        checkArgument(rows > 0, "rows should be positive");
+
+        return MapImages.getMapImagePixelsAsync(image, columns * WIDTH, rows * HEIGHT, resize, dithering, pool)
+                .thenApply(pixels -> new MapImageWall(columns, rows, pixels, displayMode));
+    }
+
+    /**
+     * Gets the width of this wall in pixels.
+     *
+     * @return this wall's width
+     */
+    public int getWidth() {
+        return columns * WIDTH;
+    }
+
+    /**
+     * Gets the height of this wall in pixels.
+     *
+     * @return this wall's height
+     */
+    public int getHeight() {
+        return rows * HEIGHT;
+    }
+
+    /**
+     * Gets the tile of this wall.
+     *
+     * @param column column of the tile
+     * @param row row of the tile
+     * @return tile of this wall at the specified position
+     */
+    public MapImage tile(final int column, final int row) {
+        checkArgument(column >= 0 && column < columns, "column should be between 0 and " + (columns - 1));
+        checkArgument(row >= 0 && row < rows, "row should be between 0 and " + (rows - 1));
+
+        return tiles[column + row * columns];
+    }
+
+    /**
+     * Gets all tiles of this wall.
+     *
+     * @return unmodifiable list of tiles of this wall indexed as {@code column + row * }{@link #getColumns()}
+     */
+    public List<MapImage> tiles() {
+        return Collections.unmodifiableList(Arrays.asList(tiles));
+    }
+
+    /**
+     * Gets the drawer of this wall.
+     *
+     * @return drawer of this wall
+     */
+    public Drawer drawer() {
+        return drawer.get();
+    }
+
+    /**
+     * Checks whether there are changes not yet {@link #flush() flushed}.
+     *
+     * @return {@code true} if there are changes not yet flushed and {@code false} otherwise
+     */
+    public boolean isChanged() {
+        return changedTilesCount != 0;
+    }
+
+    /**
+     * Marks the segment of the tile changed.
+     *
+     * @param tile index of the tile
+     * @param leastX least X-coordinate of the changed segment in the tile
+     * @param leastY least Y-coordinate of the changed segment in the tile
+     * @param mostX most X-coordinate of the changed segment in the tile
+     * @param mostY most Y-coordinate of the changed segment in the tile
+     */
+    private void markChanged(final int tile, final int leastX, final int leastY, final int mostX, final int mostY) {
+        val offset = tile << 2;
+        val bounds = changedBounds;
+        if (bounds[offset] == Delta.NONE) {
+            changedTiles[changedTilesCount++] = tile;
+
+            bounds[offset] = leastX;
+            bounds[offset + 1] = leastY;
+            bounds[offset + 2] = mostX;
+            bounds[offset + 3] = mostY;
+        } else {
+            if (leastX < bounds[offset]) bounds[offset] = leastX;
+            if (leastY < bounds[offset + 1]) bounds[offset + 1] = leastY;
+            if (mostX > bounds[offset + 2]) bounds[offset + 2] = mostX;
+            if (mostY > bounds[offset + 3]) bounds[offset + 3] = mostY;
+        }
+    }
+
+    /**
+     * Publishes all changes of this wall.
+     * This calls {@link MapImage#onUpdate(Delta)} of each changed tile
+     * and then notifies this wall's subscribers with all the deltas at once.
+     *
+     * @return deltas of the changed tiles (empty if there were no changes)
+     */
+    public List<TileDelta> flush() {
+        val changedTilesCount = this.changedTilesCount;
+        if (changedTilesCount == 0) return Collections.emptyList();
+
+        val deltas = new ArrayList<TileDelta>(changedTilesCount);
+        val bounds = changedBounds;
+        for (var i = 0; i < changedTilesCount; i++) {
+            val tile = changedTiles[i];
+            val offset = tile << 2;
+            final int leastX = bounds[offset], leastY = bounds[offset + 1],
+                    width = bounds[offset + 2] - leastX + 1, height = bounds[offset + 3] - leastY + 1;
+            bounds[offset] = bounds[offset + 1] = bounds[offset + 2] = bounds[offset + 3] = Delta.NONE;
+
+            val pixels = tilePixels[tile];
+            val changedPixels = new byte[width * height];
+            for (var y = 0; y < height; y++) System.arraycopy(
+                    pixels, leastX + (leastY + y) * WIDTH, changedPixels, y * width, width
+            );
+
+            deltas.add(new TileDelta(
+                    tile % columns, tile / columns, tiles[tile], Delta.of(changedPixels, width, leastX, leastY)
+            ));
+        }
+        this.changedTilesCount = 0;
+
+        for (val delta : deltas) delta.tile.onUpdate(delta.delta);
+
+        val publishedDeltas = Collections.unmodifiableList(deltas);
+        updateSubscribers.publish(publishedDeltas);
+
+        return publishedDeltas;
+    }
+
+    /**
+     * Starts {@link #flush() flushing} this wall's changes periodically.
+     *
+     * @param plugin plugin on behalf of which the task should be scheduled
+     * @param period period of flushing in ticks
+     * @return started task which should be cancelled once the flushing is no longer needed
+     */
+    public BukkitTask startFlushing(final @NonNull Plugin plugin, final long period) {
+        checkArgument(period > 0, "period should be positive");
+
+        return plugin.getServer().getScheduler().runTaskTimer(plugin, this::flush, period, period);
+    }
+
+    /**
+     * Subscribes on this wall's updates.
+     *
+     * @param subscriber subscriber to be notified with all the deltas of each {@link #flush() flush}
+     */
+    public void subscribeOnUpdates(final @NonNull Consumer<List<TileDelta>> subscriber) {
+        updateSubscribers.subscribe(subscriber, null);
+    }
+
+    /**
+     * Subscribes on this wall's updates so that the subscriber is notified by the executor.
+     *
+     * @param subscriber subscriber to be notified with all the deltas of each {@link #flush() flush}
+     * @param executor executor by which the subscriber should be notified so that it does not stall the flushing
+     *
+     * @apiNote the deltas are delivered in order of the flushes only if the executor runs the tasks sequentially
+     */
+    public void subscribeOnUpdates(final @NonNull Consumer<List<TileDelta>> subscriber,
+                                   final @NonNull Executor executor) {
+        updateSubscribers.subscribe(subscriber, executor);
+    }
+
+    /**
+     * Unsubscribes from this wall's updates.
+     *
+     * @param subscriber subscriber to stop being notified on this wall's updates
+     */
+    public void unsubscribeFromUpdates(final @NonNull Consumer<List<TileDelta>> subscriber) {
+        updateSubscribers.unsubscribe(subscriber);
+    }
+
+    /**
+     * Delta of a tile of the wall.
+     */
+    @Value
+    @Accessors(fluent = true)
+    public static class TileDelta {
+
+        /**
+         * Column of the changed tile
+         */
+        int column,
+        /**
+         * Row of the changed tile
+         */
+        row;
+
+        /**
+         * Changed tile
+         */
+        @NonNull MapImage tile;
+
+        /**
+         * Delta of the tile
+         */
+        @NonNull Delta delta;
+    }
+
+    /**
+     * An object responsible for changing the wall's content.
+     * Coordinates of the drawer are those of the whole wall.
+     */
+    @ToString
+    public final class Drawer {
+
+        /**
+         * Assures that the coordinates are inside the bounds of the wall.
+         *
+         * @param x X-coordinate to check
+         * @param y Y-coordinate to check
+         * @throws IllegalArgumentException if the coordinates are not inside the bounds of the wall
+         */
+        private void checkCoordinates(final int x, final int y) {
+            checkArgument(x >= 0 && x < columns * WIDTH, "X-coordinate should be between 0 and " + columns * WIDTH);
+            checkArgument(y >= 0 && y < rows * HEIGHT, "Y-coordinate should be between 0 and " + rows * HEIGHT);
+        }
+
+        /**
+         * Draws a pixel of the specified color at given coordinates.
+         *
+         * @param x X-coordinate to draw the pixel at
+         * @param y Y-coordinate to draw the pixel at
+         * @param color color of the pixel
+         * @return this drawer for chaining
+         */
+        @Contract("_, _, _ -> this")
+        public Drawer px(final int x, final int y, final byte color) {
+            checkCoordinates(x, y);
+
+            final int tile = x / WIDTH + y / HEIGHT * columns, tileX = x % WIDTH, tileY = y % HEIGHT;
+            val pixels = tilePixels[tile];
+            val index = tileX + tileY * WIDTH;
+            // unchanged pixels do not need to be sent
+            if (pixels[index] != color) {
+                pixels[index] = color;
+                markChanged(tile, tileX, tileY, tileX, tileY);
+            }
+
+            return this;
+        }
+
+        /**
+         * Draws a line between two points.
+         *
+         * @param x1 the first point's X-coordinate
+         * @param y1 the first point's Y-coordinate
+         * @param x2 the second point's X-coordinate
+         * @param y2 the second point's Y-coordinate
+         * @param color color of the line
+         * @return this drawer for chaining
+         */
+        @Contract("_, _, _, _, _ -> this")
+        public Drawer line(int x1, int y1, final int x2, final int y2, final byte color) {
+            checkCoordinates(x1, y1);
+            checkCoordinates(x2, y2);
+
+            // Bresenham's line algorithm
+            final int dX = Math.abs(x2 - x1), dY = -Math.abs(y2 - y1),
+                    stepX = x1 < x2 ? 1 : -1, stepY = y1 < y2 ? 1 : -1;
+            var error = dX + dY;
+            while (true) {
+                px(x1, y1, color);
+                if (x1 == x2 && y1 == y2) break;
+
+                val doubledError = error << 1;
+                if (doubledError >= dY) {
+                    error += dY;
+                    x1 += stepX;
+                }
+                if (doubledError <= dX) {
+                    error += dX;
+                    y1 += stepY;
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Draws a rectangle by given coordinates and color.
+         *
+         * @param x1 X-coordinate of the first rectangle point
+         * @param y1 Y-coordinate of the first rectangle point
+         * @param x2 X-coordinate of the second rectangle point
+         * @param y2 Y-coordinate of the second rectangle point
+         * @param color color of the rectangle
+         * @return this drawer for chaining
+         */
+        @Contract("_, _, _, _, _ -> this")
+        public Drawer rect(final int x1, final int y1, final int x2, final int y2, final byte color) {
+            checkCoordinates(x1, y1);
+            checkCoordinates(x2, y2);
+
+            spans(min(x1, x2), min(y1, y2), max(x1, x2), max(y1, y2), color);
+
+            return this;
+        }
+
+        /**
+         * Draws a round with the center specified of given radius and color.
+         *
+         * @param centerX X-coordinate of the round's center
+         * @param centerY Y-coordinate of the round's center
+         * @param radius radius of the round
+         * @param color color of the round
+         * @return this drawer for chaining
+         *
+         * @apiNote parts of the round out of the wall are not drawn
+         */
+        @Contract("_, _, _, _ -> this")
+        public Drawer round(final int centerX, final int centerY, final int radius, final byte color) {
+            checkArgument(radius >= 0, "radius should be non-negative");
+
+            final int minY = max(centerY - radius, 0), maxY = min(centerY + radius, rows * HEIGHT - 1),
+                    maxX = columns * WIDTH - 1, squaredRadius = radius * radius;
+            for (var y = minY; y <= maxY; y++) {
+                val dY = y - centerY;
+                // the widest span of the row inside the round
+                val dX = (int) Math.sqrt(squaredRadius - dY * dY);
+
+                final int fromX = max(centerX - dX, 0), toX = min(centerX + dX, maxX);
+                if (fromX <= toX) spans(fromX, y, toX, y, color);
+            }
+
+            return this;
+        }
+
+        /**
+         * Fills the whole wall with the specified color.
+         *
+         * @param color color to fill the wall with
+         * @return this drawer for chaining
+         */
+        @Contract("_ -> this")
+        public Drawer fill(final byte color) {
+            spans(0, 0, columns * WIDTH - 1, rows * HEIGHT - 1, color);
+
+            return this;
+        }
+
+        /**
+         * Fills the rectangle splitting it into spans of rows of each tile.
+         *
+         * @param leastX least X-coordinate of the rectangle
+         * @param leastY least Y-coordinate of the rectangle
+         * @param mostX most X-coordinate of the rectangle
+         * @param mostY most Y-coordinate of the rectangle
+         * @param color color of the rectangle
+         *
+         * @apiNote the rectangle should be inside the wall's bounds
+         */
+        private void spans(final int leastX, final int leastY, final int mostX, final int mostY, final byte color) {
+            final int leastColumn = leastX / WIDTH, mostColumn = mostX / WIDTH,
+                    leastRow = leastY / HEIGHT, mostRow = mostY / HEIGHT;
+
+            for (var row = leastRow; row <= mostRow; row++) {
+                final int tileLeastY = row == leastRow ? leastY % HEIGHT : 0,
+                        tileMostY = row == mostRow ? mostY % HEIGHT : HEIGHT - 1;
+
+                for (var column = leastColumn; column <= mostColumn; column++) {
+                    final int tileLeastX = column == leastColumn ? leastX % WIDTH : 0,
+                            tileMostX = column == mostColumn ? mostX % WIDTH : WIDTH - 1;
+
+                    val tile = column + row * columns;
+                    val pixels = tilePixels[tile];
+                    for (var y = tileLeastY; y <= tileMostY; y++) {
+                        val offset = y * WIDTH;
+                        Arrays.fill(pixels, offset + tileLeastX, offset + tileMostX + 1, color);
+                    }
+
+                    markChanged(tile, tileLeastX, tileLeastY, tileMostX, tileMostY);
+                }
+            }
+        }
+    }
+}
@@ -1,18 +1,27 @@
 package ru.progrm_jarvis.minecraft.commons.mapimage;
 
+import lombok.AccessLevel;
 import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
 import lombok.experimental.UtilityClass;
 import lombok.val;
 import lombok.var;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
+import ru.progrm_jarvis.minecraft.commons.util.SystemPropertyUtil;
+import ru.progrm_jarvis.minecraft.commons.util.image.ImageUtil;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.*;
 import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR_CODE;
@@ -25,6 +34,31 @@ import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR
 @UtilityClass
 public class MapImages {
 
+    /**
+     * Height of row bands in which images get normalized.
+     */
+    private final int BAND_HEIGHT = max(1, SystemPropertyUtil.getSystemPropertyInt(
+            MapImages.class.getCanonicalName() + ".band-height", 16
+    ));
+
+    /**
+     * Scratch buffers for RGB-pixels of a row band reused by each thread normalizing images.
+     */
+    private final ThreadLocal<int[]> BAND_BUFFER = ThreadLocal.withInitial(() -> new int[WIDTH * BAND_HEIGHT]);
+
+    /**
+     * Gets the scratch buffer of the current thread capable of storing a band of rows of the specified width.
+     *
+     * @param width width of the rows
+     * @return scratch buffer of the current thread
+     */
+    private int[] bandBuffer(final int width) {
+        var buffer = BAND_BUFFER.get();
+        if (buffer.length < width * BAND_HEIGHT) BAND_BUFFER.set(buffer = new int[width * BAND_HEIGHT]);
+
+        return buffer;
+    }
+
     /**
      * Normalizes the RGB-pixels array making them valid Minecraft {@link MapImageColor}s.
      *
@@ -83,30 +117,50 @@ public class MapImages {
      */
     @Contract(pure = true)
     public @NotNull BufferedImage fitImage(final @NonNull BufferedImage image, final boolean resize) {
+        return fitImage(image, WIDTH, HEIGHT, resize);
+    }
+
+    /**
+     * Makes the image fit the specified bounds.
+     *
+     * @param image image to fit (will be redrawn)
+     * @param maxWidth maximal allowed width of the image
+     * @param maxHeight maximal allowed height of the image
+     * @param resize whether the image should be resized ({@code true}) or cut ({@code false})
+     * @return the given image redrawn so that its non-empty pixels are in bound of {@code maxWidth}×{@code maxHeight}
+     *
+     * @see #fitImage(BufferedImage, boolean) for the logic of fitting
+     */
+    @Contract(pure = true)
+    public @NotNull BufferedImage fitImage(final @NonNull BufferedImage image,
+                                           final int maxWidth, final int maxHeight, final boolean resize) {
+        checkArgument(maxWidth > 0, "maxWidth should be positive");
+        checkArgument(maxHeight > 0, "maxHeight should be positive");
+
         int width = image.getWidth(), height = image.getHeight();
 
         // if an image is bigger at any bound
-        if (width > WIDTH || height > HEIGHT) if (resize) {
+        if (width > maxWidth || height > maxHeight) if (resize) {
 
             // resizing should be proportional, so:
             // k(bound) = bound / maxAllowed(bound)
             // then divide both by bigger k (treat same optimally!)
 
-            final float kWidth = width / WIDTH_F, kHeight = height / HEIGHT_F;
+            final float kWidth = width / (float) maxWidth, kHeight = height / (float) maxHeight;
             if (kWidth == kHeight) {
                 // if both overflow coefficients are the same than the image's proportions are same to image map's
-                width = WIDTH;
-                height = HEIGHT;
+                width = maxWidth;
+                height = maxHeight;
             } else if (kWidth > kHeight) {
                 // width overflow coefficient is bigger
                 //noinspection SuspiciousNameCombination the relatively least dimension is diveided by bigger's coef.
                 height /= kWidth;
-                width = WIDTH;
+                width = maxWidth;
             } else {
                 // height overflow coefficient is bigger
                 //noinspection SuspiciousNameCombination the relatively least dimension is diveided by bigger's coef.
                 width /= kHeight;
-                height = HEIGHT;
+                height = maxHeight;
             }
 
             val newImage = new BufferedImage(width, height, TYPE_INT_ARGB);
@@ -117,7 +171,7 @@ public class MapImages {
             return newImage;
         } else {
             // cut image
-            return image.getSubimage(0, 0, min(width, WIDTH), min(height, HEIGHT));
+            return image.getSubimage(0, 0, min(width, maxWidth), min(height, maxHeight));
         }
 
         return image;
@@ -157,27 +211,14 @@ public class MapImages {
      * @param image image whose pixels to get
      * @param resize whether the image should be resized or cut to fit map image dimensions
      * @return array of RGB-{@code int} colors.
+     *
+     * @apiNote pixels out of the fitted image are {@link MapImageColor#NO_COLOR_CODE}
      */
     public int[] getNonNormalizedMapImagePixels(@NonNull BufferedImage image, final boolean resize) {
         image = fitImage(image, resize);
-        final int width = image.getWidth(), height = image.getHeight();
-
-        val pixels = new int[PIXELS_COUNT];
-        val rgb = image.getRGB(0, 0, width, height, new int[width * height], 0, width);
-
-        // whether or not empty pixels should be added as width is not ideal
-        val requiresEmptyXFilling = width < WIDTH;
-
-        // index in rgb
-        var i = 0;
-        for (var y = 0; y < height; y++) {
-            val rowOffset = y * width;
-            for (var x = 0; x < width; x++) pixels[x + rowOffset] = rgb[i++];
-            if (requiresEmptyXFilling) Arrays.fill(pixels, width + rowOffset, WIDTH + rowOffset, NO_COLOR_CODE);
-        }
-        if (height < HEIGHT) Arrays.fill(pixels, height * WIDTH, pixels.length, NO_COLOR_CODE);
 
-        return pixels;
+        // pixels out of the image are left empty
+        return ImageUtil.getRgb(image, 0, 0, image.getWidth(), image.getHeight(), new int[PIXELS_COUNT], 0, WIDTH);
     }
 
     /**
@@ -198,8 +239,239 @@ public class MapImages {
      * @param image image whose pixels to get
      * @param resize whether the image should be resized or cut to fit map image dimensions
      * @return array of {@link MapImageColor} IDs valid for minecraft.
+     *
+     * @apiNote pixels out of the fitted image are {@link MapImageColor#NO_COLOR_CODE}
      */
     public byte[] getMapImagePixels(final @NonNull BufferedImage image, final boolean resize) {
-        return normalizePixels(getNonNormalizedMapImagePixels(image, resize));
+        return getMapImagePixels(image, resize, MapImageDithering.NONE);
+    }
+
+    /**
+     * Gets the {@code byte}-array of size {@link MapImage#PIXELS_COUNT} of valid map color ids.
+     *
+     * @param image image whose pixels to get
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @param dithering dithering used for conversion of the pixels
+     * @return array of {@link MapImageColor} IDs valid for minecraft.
+     *
+     * @apiNote pixels out of the fitted image are {@link MapImageColor#NO_COLOR_CODE}
+     */
+    public byte[] getMapImagePixels(final @NonNull BufferedImage image, final boolean resize,
+                                    final @NonNull MapImageDithering dithering) {
+        return getMapImagePixels(image, WIDTH, HEIGHT, resize, dithering);
+    }
+
+    /**
+     * Gets the {@code byte}-array of size {@code width * height} of valid map color ids.
+     * This is used for images spanning multiple maps.
+     *
+     * @param image image whose pixels to get
+     * @param width width of the resulting pixels
+     * @param height height of the resulting pixels
+     * @param resize whether the image should be resized or cut to fit the specified dimensions
+     * @param dithering dithering used for conversion of the pixels
+     * @return array of {@link MapImageColor} IDs valid for minecraft.
+     *
+     * @apiNote pixels out of the fitted image are {@link MapImageColor#NO_COLOR_CODE}
+     */
+    public byte[] getMapImagePixels(final @NonNull BufferedImage image, final int width, final int height,
+                                    final boolean resize, final @NonNull MapImageDithering dithering) {
+        val fittedImage = fitImage(image, width, height, resize);
+
+        val pixels = new byte[width * height];
+        if (dithering.isRowIndependent()) {
+            val buffer = bandBuffer(width);
+            for (var y = 0; y < height; y += BAND_HEIGHT) convertRows(
+                    fittedImage, pixels, width, y, min(y + BAND_HEIGHT, height), buffer, dithering
+            );
+        } else convertRows(fittedImage, pixels, width, 0, height, new int[width * height], dithering);
+
+        return pixels;
+    }
+
+    /**
+     * Asynchronously gets the {@code byte}-array of size {@link MapImage#PIXELS_COUNT} of valid map color ids
+     * normalizing the image in parallel using {@link ForkJoinPool#commonPool() common pool}.
+     *
+     * @param image image whose pixels to get
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @return future of array of {@link MapImageColor} IDs valid for minecraft.
+     *
+     * @apiNote the image should not be modified until the future is completed
+     */
+    public @NotNull CompletableFuture<byte[]> getMapImagePixelsAsync(final @NonNull BufferedImage image,
+                                                                    final boolean resize) {
+        return getMapImagePixelsAsync(image, resize, MapImageDithering.NONE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Asynchronously gets the {@code byte}-array of size {@link MapImage#PIXELS_COUNT} of valid map color ids
+     * normalizing the image in parallel using the specified pool.
+     *
+     * @param image image whose pixels to get
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @param pool pool used for image conversion
+     * @return future of array of {@link MapImageColor} IDs valid for minecraft.
+     *
+     * @apiNote the image should not be modified until the future is completed
+     */
+    public @NotNull CompletableFuture<byte[]> getMapImagePixelsAsync(final @NonNull BufferedImage image,
+                                                                    final boolean resize,
+                                                                    final @NonNull ForkJoinPool pool) {
+        return getMapImagePixelsAsync(image, resize, MapImageDithering.NONE, pool);
+    }
+
+    /**
+     * Asynchronously gets the {@code byte}-array of size {@link MapImage#PIXELS_COUNT} of valid map color ids
+     * normalizing the image in parallel using {@link ForkJoinPool#commonPool() common pool}.
+     *
+     * @param image image whose pixels to get
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @param dithering dithering used for conversion of the pixels
+     * @return future of array of {@link MapImageColor} IDs valid for minecraft.
+     *
+     * @apiNote the image should not be modified until the future is completed
+     */
+    public @NotNull CompletableFuture<byte[]> getMapImagePixelsAsync(final @NonNull BufferedImage image,
+                                                                    final boolean resize,
+                                                                    final @NonNull MapImageDithering dithering) {
+        return getMapImagePixelsAsync(image, resize, dithering, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Asynchronously gets the {@code byte}-array of size {@link MapImage#PIXELS_COUNT} of valid map color ids
+     * normalizing the image in parallel using the specified pool.
+     *
+     * @param image image whose pixels to get
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @param dithering dithering used for conversion of the pixels
+     * @param pool pool used for image conversion
+     * @return future of array of {@link MapImageColor} IDs valid for minecraft.
+     *
+     * @apiNote the image should not be modified until the future is completed
+     * @apiNote the conversion happens in parallel only if the dithering is
+     * {@link MapImageDithering#isRowIndependent() row-independent}
+     */
+    public @NotNull CompletableFuture<byte[]> getMapImagePixelsAsync(final @NonNull BufferedImage image,
+                                                                    final boolean resize,
+                                                                    final @NonNull MapImageDithering dithering,
+                                                                    final @NonNull ForkJoinPool pool) {
+        return getMapImagePixelsAsync(image, WIDTH, HEIGHT, resize, dithering, pool);
+    }
+
+    /**
+     * Asynchronously gets the {@code byte}-array of size {@code width * height} of valid map color ids
+     * normalizing the image in parallel using the specified pool.
+     * This is used for images spanning multiple maps.
+     *
+     * @param image image whose pixels to get
+     * @param width width of the resulting pixels
+     * @param height height of the resulting pixels
+     * @param resize whether the image should be resized or cut to fit the specified dimensions
+     * @param dithering dithering used for conversion of the pixels
+     * @param pool pool used for image conversion
+     * @return future of array of {@link MapImageColor} IDs valid for minecraft.
+     *
+     * @apiNote the image should not be modified until the future is completed
+     * @apiNote the conversion happens in parallel only if the dithering is
+     * {@link MapImageDithering#isRowIndependent() row-independent}
+     */
+    public @NotNull CompletableFuture<byte[]> getMapImagePixelsAsync(final @NonNull BufferedImage image,
+                                                                    final int width, final int height,
+                                                                    final boolean resize,
+                                                                    final @NonNull MapImageDithering dithering,
+                                                                    final @NonNull ForkJoinPool pool) {
+        if (!dithering.isRowIndependent()) return CompletableFuture.supplyAsync(
+                () -> getMapImagePixels(image, width, height, resize, dithering), pool
+        );
+
+        return CompletableFuture.supplyAsync(() -> {
+            val pixels = new byte[width * height];
+            // invoked on the pool's worker thread so that subtasks get forked to the pool
+            new ConvertRowsTask(fitImage(image, width, height, resize), pixels, width, 0, height, dithering).invoke();
+
+            return pixels;
+        }, pool);
+    }
+
+    /**
+     * Converts the rows of the image to valid Minecraft {@link MapImageColor}s.
+     *
+     * @param image image fitting the bounds of the normalized pixels whose rows to convert
+     * @param normalizedPixels array to which to write converted pixels
+     * @param normalizedWidth width of the normalized pixels
+     * @param fromY Y-coordinate of the first row to convert (inclusive)
+     * @param toY Y-coordinate of the last row to convert (exclusive)
+     * @param buffer buffer capable of storing pixels of each row of the image
+     * @param dithering dithering used for conversion of the pixels
+     *
+     * @apiNote pixels out of the image are not touched so they should be empty
+     */
+    private void convertRows(final @NotNull BufferedImage image,
+                             final byte[] normalizedPixels, final int normalizedWidth,
+                             final int fromY, final int toY, final int[] buffer,
+                             final @NotNull MapImageDithering dithering) {
+        final int width = image.getWidth(), imageToY = min(toY, image.getHeight());
+        if (imageToY <= fromY) return;
+
+        val height = imageToY - fromY;
+        dithering.dither(
+                ImageUtil.getRgb(image, 0, fromY, width, height, buffer, 0, width), width, height, fromY,
+                normalizedPixels, fromY * normalizedWidth, normalizedWidth, MapImageColorLookupTable.getDefault()
+        );
+    }
+
+    /**
+     * Task converting rows of an image splitting them into bands of {@link #BAND_HEIGHT} rows.
+     */
+    @RequiredArgsConstructor
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    private static final class ConvertRowsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 0L;
+
+        /**
+         * Image whose rows to convert
+         */
+        @NonNull BufferedImage image;
+
+        /**
+         * Array to which to write converted pixels
+         */
+        @NonNull byte[] normalizedPixels;
+
+        /**
+         * Width of the normalized pixels
+         */
+        int normalizedWidth;
+
+        /**
+         * Y-coordinate of the first row to convert (inclusive)
+         */
+        int fromY,
+        /**
+         * Y-coordinate of the last row to convert (exclusive)
+         */
+        toY;
+
+        /**
+         * Row-independent dithering used for conversion of the pixels
+         */
+        @NonNull MapImageDithering dithering;
+
+        @Override
+        protected void compute() {
+            final int fromY = this.fromY, toY = this.toY;
+            if (toY - fromY <= BAND_HEIGHT) convertRows(
+                    image, normalizedPixels, normalizedWidth, fromY, toY, bandBuffer(normalizedWidth), dithering
+            );
+            else {
+                val middleY = fromY + (toY - fromY >>> 1);
+                invokeAll(
+                        new ConvertRowsTask(image, normalizedPixels, normalizedWidth, fromY, middleY, dithering),
+                        new ConvertRowsTask(image, normalizedPixels, normalizedWidth, middleY, toY, dithering)
+                );
+            }
+        }
     }
 }
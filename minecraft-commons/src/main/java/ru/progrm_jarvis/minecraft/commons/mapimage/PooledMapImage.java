@@ -0,0 +1,198 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import com.google.common.collect.MapMaker;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * {@link DefaultMapImage} whose pixels, buffered drawer's buffer and deltas' pixels are taken from
+ * {@link MapImagePixelPool} so that the images created and discarded often do not cause GC churn.
+ * <p>
+ * The image should be {@link #release() released} once it is no longer used so that its arrays return to the pool.
+ * Deltas created by its buffered drawer may be {@link #release(MapImage.Delta) released} the same way
+ * once neither the caller nor the subscribers of the image keep them.
+ */
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class PooledMapImage extends DefaultMapImage {
+
+    /**
+     * Pool from which the arrays of this image are taken
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude final @NonNull MapImagePixelPool pool;
+
+    /**
+     * Buffer of the buffered drawer or {@code null} if it was not allocated yet
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @Nullable byte[] buffer;
+
+    /**
+     * Pixels of the deltas acquired from the pool and not yet released (compared by identity and held weakly)
+     * so that only they get released to the pool rather than the arrays of the deltas created otherwise
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude final @NonNull Set<byte[]> deltaPixels
+            = Collections.newSetFromMap(new MapMaker().weakKeys().makeMap());
+
+    /**
+     * Whether this image was released
+     */
+    @EqualsAndHashCode.Exclude volatile boolean released;
+
+    /**
+     * Creates new pooled map image.
+     *
+     * @param pool pool from which the arrays of this image are taken
+     * @param pixels pixels of this image acquired from the pool
+     * @param displayMode possible map image display mode (from {@code 0} to {@code 4})
+     */
+    protected PooledMapImage(final @NonNull MapImagePixelPool pool, final @NonNull byte[] pixels,
+                             final byte displayMode) {
+        super(pixels, displayMode);
+
+        this.pool = pool;
+    }
+
+    /**
+     * Creates new blank pooled map image.
+     *
+     * @param pool pool from which the arrays of the image should be taken
+     * @param displayMode possible map image display mode (from {@code 0} to {@code 4})
+     * @return created map image filled with {@link MapImageColor#NO_COLOR_CODE}
+     */
+    public static @NotNull PooledMapImage create(final @NonNull MapImagePixelPool pool, final byte displayMode) {
+        return new PooledMapImage(pool, pool.acquire(PIXELS_COUNT), displayMode);
+    }
+
+    /**
+     * Creates new pooled map image copying the pixels.
+     *
+     * @param pool pool from which the arrays of the image should be taken
+     * @param pixels array of Minecraft color IDs (columns of rows) to copy
+     * @param displayMode possible map image display mode (from {@code 0} to {@code 4})
+     * @return created map image
+     */
+    public static @NotNull PooledMapImage of(final @NonNull MapImagePixelPool pool, final @NonNull byte[] pixels,
+                                             final byte displayMode) {
+        checkArgument(pixels.length == PIXELS_COUNT, "pixels length should be " + PIXELS_COUNT);
+
+        val imagePixels = pool.acquire(PIXELS_COUNT);
+        System.arraycopy(pixels, 0, imagePixels, 0, PIXELS_COUNT);
+
+        return new PooledMapImage(pool, imagePixels, displayMode);
+    }
+
+    /**
+     * Creates new pooled map image from image.
+     *
+     * @param pool pool from which the arrays of the image should be taken
+     * @param image from which to create the map image
+     * @param resize whether the image should be resized or cut to fit map image dimensions
+     * @param displayMode display mode of the image
+     * @return created map image
+     */
+    public static @NotNull PooledMapImage from(final @NonNull MapImagePixelPool pool,
+                                               final @NonNull BufferedImage image, final boolean resize,
+                                               final byte displayMode) {
+        return of(pool, MapImages.getMapImagePixels(image, resize), displayMode);
+    }
+
+    @Override
+    public byte[] getMapData() {
+        checkState(!released, "This image was released");
+
+        return super.getMapData();
+    }
+
+    @Override
+    public MapImage.Drawer drawer() {
+        checkState(!released, "This image was released");
+
+        return super.drawer();
+    }
+
+    @Override
+    public MapImage.BufferedDrawer bufferedDrawer() {
+        checkState(!released, "This image was released");
+
+        return super.bufferedDrawer();
+    }
+
+    @Override
+    protected byte[] allocateBuffer() {
+        return buffer = pool.acquire(getWidth() * getHeight());
+    }
+
+    @Override
+    protected byte[] allocateDeltaPixels(final int length) {
+        val pixels = pool.acquire(length);
+        if (pixels.length != 0) deltaPixels.add(pixels);
+
+        return pixels;
+    }
+
+    /**
+     * Releases the delta created by the buffered drawer of this image returning its pixels to the pool.
+     *
+     * @param delta delta to release
+     *
+     * @apiNote the delta should not be used by anyone after it gets released
+     * while the deltas not created by the buffered drawer (such as the one of {@link MapImage.Drawer#fill(byte)}
+     * which shares the image's pixels) are ignored
+     */
+    public void release(final @NonNull MapImage.Delta delta) {
+        if (delta.isEmpty()) return;
+
+        val pixels = delta.pixels();
+        if (deltaPixels.remove(pixels)) pool.release(pixels);
+    }
+
+    /**
+     * Releases the deltas created by the buffered drawer of this image returning their pixels to the pool.
+     *
+     * @param deltas deltas to release
+     *
+     * @apiNote the deltas should not be used by anyone after they get released
+     */
+    public void release(final @NonNull Iterable<? extends MapImage.Delta> deltas) {
+        for (val delta : deltas) release(delta);
+    }
+
+    /**
+     * Releases this image returning its arrays to the pool.
+     *
+     * @apiNote this image should not be used after it gets released: although accessing its data or drawers
+     * fails fast, the drawers obtained previously must not be used either as its arrays may be reused by others
+     */
+    public synchronized void release() {
+        checkState(!released, "This image was already released");
+
+        val pixels = super.getMapData();
+        released = true;
+        pool.release(pixels);
+
+        val buffer = this.buffer;
+        if (buffer != null) {
+            this.buffer = null;
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Checks whether this image was released.
+     *
+     * @return {@code true} if this image was released and {@code false} otherwise
+     */
+    public boolean isReleased() {
+        return released;
+    }
+}
@@ -0,0 +1,84 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import com.comphenix.packetwrapper.WrapperPlayServerMap;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * {@link DefaultMapImage} sharing its pixels with the identical images created by the same {@link MapImageRegistry}.
+ * <p>
+ * The shared pixels are immutable so the image copies them once it is drawn on for the first time
+ * (after which it no longer shares them with anyone).
+ *
+ * @apiNote the array returned by {@link #getMapData()} should not be modified directly
+ * as it may be shared by other images
+ */
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = true)
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class SharedMapImage extends DefaultMapImage {
+
+    /**
+     * Pixels shared by this image or {@code null} if this image has its own copy of them
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @Nullable MapImageRegistry.InternedPixels sharedPixels;
+
+    /**
+     * Creates new shared map image.
+     *
+     * @param sharedPixels interned pixels shared by this image
+     * @param displayMode possible map image display mode (from {@code 0} to {@code 4})
+     */
+    SharedMapImage(final @NonNull MapImageRegistry.InternedPixels sharedPixels, final byte displayMode) {
+        super(sharedPixels.getPixels(), displayMode);
+
+        this.sharedPixels = sharedPixels;
+    }
+
+    @Override
+    protected byte[] writablePixels() {
+        if (sharedPixels == null) return super.writablePixels();
+
+        val pixels = getMapData().clone();
+        setPixels(pixels);
+        sharedPixels = null;
+
+        return pixels;
+    }
+
+    /**
+     * Checks whether this image still shares its pixels.
+     *
+     * @return {@code true} if this image was not drawn on yet and so shares its pixels and {@code false} otherwise
+     */
+    public boolean isShared() {
+        return sharedPixels != null;
+    }
+
+    /**
+     * Gets the pixels shared by this image.
+     *
+     * @return immutable pixels shared by this image which are the same (by identity) for all identical images
+     * or {@code null} if this image no longer shares its pixels
+     */
+    @Nullable
+    public byte[] getSharedPixels() {
+        val sharedPixels = this.sharedPixels;
+
+        return sharedPixels == null ? null : sharedPixels.getPixels();
+    }
+
+    /**
+     * Gets the packet of the whole image shared by all identical images.
+     *
+     * @return packet of the whole image (without the map ID set) which should not be modified as it is shared
+     * or {@code null} if this image no longer shares its pixels
+     */
+    @Nullable
+    public WrapperPlayServerMap getSharedFullImagePacket() {
+        val sharedPixels = this.sharedPixels;
+
+        return sharedPixels == null ? null : sharedPixels.fullImagePacket(getDisplay());
+    }
+}
@@ -0,0 +1,97 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe collection of update subscribers.
+ * <p>
+ * The subscribers are stored in an array which is copied on each (un)subscription
+ * and published via a volatile write so that notifying them requires neither locking nor allocations.
+ *
+ * @param <T> type of the updates
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE)
+final class UpdateSubscribers<T> {
+
+    /**
+     * Subscriptions of the subscribers, replaced (while holding the lock of this object) on each change
+     */
+    @SuppressWarnings("unchecked") @NonFinal volatile Subscription<T>[] subscriptions = new Subscription[0];
+
+    /**
+     * Subscribes the subscriber.
+     *
+     * @param subscriber subscriber to be notified on each update
+     * @param executor executor by which the subscriber should be notified
+     * or {@code null} if it should be notified by the thread publishing the update
+     */
+    synchronized void subscribe(final @NonNull Consumer<T> subscriber, final @Nullable Executor executor) {
+        val subscriptions = this.subscriptions;
+        val newSubscriptions = Arrays.copyOf(subscriptions, subscriptions.length + 1);
+        newSubscriptions[subscriptions.length] = new Subscription<>(subscriber, executor);
+
+        this.subscriptions = newSubscriptions;
+    }
+
+    /**
+     * Unsubscribes the subscriber.
+     *
+     * @param subscriber subscriber which should stop being notified
+     */
+    synchronized void unsubscribe(final @NonNull Consumer<T> subscriber) {
+        val subscriptions = this.subscriptions;
+        for (var index = 0; index < subscriptions.length; index++) if (subscriptions[index].subscriber.equals(
+                subscriber
+        )) {
+            @SuppressWarnings("unchecked") final Subscription<T>[] newSubscriptions
+                    = new Subscription[subscriptions.length - 1];
+            System.arraycopy(subscriptions, 0, newSubscriptions, 0, index);
+            System.arraycopy(subscriptions, index + 1, newSubscriptions, index, newSubscriptions.length - index);
+            this.subscriptions = newSubscriptions;
+
+            return;
+        }
+    }
+
+    /**
+     * Checks whether there are no subscribers.
+     *
+     * @return {@code true} if there are no subscribers and {@code false} otherwise
+     */
+    boolean isEmpty() {
+        return subscriptions.length == 0;
+    }
+
+    /**
+     * Notifies all the subscribers on the update.
+     *
+     * @param update update to notify the subscribers on
+     */
+    void publish(final T update) {
+        for (val subscription : subscriptions) {
+            val executor = subscription.executor;
+            if (executor == null) subscription.subscriber.accept(update);
+            else executor.execute(() -> subscription.subscriber.accept(update));
+        }
+    }
+
+    /**
+     * Subscription of a subscriber.
+     *
+     * @param <T> type of the updates
+     */
+    @Value
+    private static class Subscription<T> {
+
+        @NonNull Consumer<T> subscriber;
+        @Nullable Executor executor;
+    }
+}
@@ -0,0 +1,235 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import com.comphenix.packetwrapper.WrapperPlayServerMap;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.Nullable;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapAnimation;
+import ru.progrm_jarvis.minecraft.commons.util.shutdown.Shutdownable;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Player of {@link MapAnimation map animations} on {@link ProtocolBasedMapImageDisplay protocol-based displays}.
+ * <p>
+ * All the animations are played by a single task running each tick while there is anything to play.
+ * Packets of the frames are built once per animation and are shared by all the displays playing it.
+ *
+ * @apiNote this player is not thread-safe and so should only be used from the main thread
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PROTECTED, makeFinal = true)
+public class MapAnimationPlayer implements Shutdownable {
+
+    @NonNull Plugin plugin;
+
+    /**
+     * Playbacks by the displays on which they happen
+     */
+    @ToString.Exclude @NonNull Map<ProtocolBasedMapImageDisplay, Playback> playbacks = new IdentityHashMap<>();
+
+    /**
+     * Packets of the animations being played, the last packet of each being the packet of the key frame
+     */
+    @ToString.Exclude @NonNull Map<MapAnimation, WrapperPlayServerMap[]> packets = new IdentityHashMap<>();
+
+    /**
+     * Task playing the animations or {@code null} if there is nothing to play
+     */
+    @NonFinal @Nullable BukkitTask task;
+
+    public MapAnimationPlayer(final @NonNull Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Creates new packet of the frame's delta (without the map ID set).
+     *
+     * @param animation animation of the frame
+     * @param frame frame whose packet to create
+     * @return created packet or {@code null} if the frame's delta is empty
+     */
+    protected @Nullable WrapperPlayServerMap newFramePacket(final @NonNull MapAnimation animation,
+                                                            final @NonNull MapAnimation.Frame frame) {
+        val delta = frame.delta();
+        if (delta.isEmpty()) return null;
+
+        return new WrapperPlayServerMap() {{
+            setScale(animation.getDisplayMode());
+            setColumns(delta.width());
+            setRows(delta.height());
+            setX(delta.leastX());
+            setZ(delta.leastY());
+            // delta pixels are immutable so they are safe to be shared
+            setData(delta.pixels());
+        }};
+    }
+
+    /**
+     * Gets the packets of the animation creating them if they do not exist yet.
+     *
+     * @param animation animation whose packets to get
+     * @return packets of the animation's frames followed by the packet of its key frame
+     */
+    protected WrapperPlayServerMap[] framePackets(final @NonNull MapAnimation animation) {
+        return packets.computeIfAbsent(animation, playedAnimation -> {
+            val frames = playedAnimation.frames();
+            val framesCount = frames.size();
+            val framePackets = new WrapperPlayServerMap[framesCount + 1];
+            for (var frame = 0; frame < framesCount; frame++) framePackets[frame] = newFramePacket(
+                    playedAnimation, frames.get(frame)
+            );
+            framePackets[framesCount] = newFramePacket(playedAnimation, playedAnimation.keyFrame());
+
+            return framePackets;
+        });
+    }
+
+    /**
+     * Starts playing the animation on the display replacing the animation played on it if there is one.
+     *
+     * @param display display on which to play the animation
+     * @param animation animation to play
+     * @param loop whether the animation should be looped or stopped on its last frame
+     */
+    public void play(final @NonNull ProtocolBasedMapImageDisplay display, final @NonNull MapAnimation animation,
+                     final boolean loop) {
+        val framePackets = framePackets(animation);
+        val previousPlayback = playbacks.put(display, new Playback(animation, framePackets, loop));
+        if (previousPlayback != null && previousPlayback.animation != animation) releasePackets(
+                previousPlayback.animation
+        );
+
+        val keyFrame = animation.keyFrame();
+        display.showFrame(keyFrame.delta(), framePackets[framePackets.length - 1], keyFrame.unusedColor());
+
+        if (task == null) task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+    }
+
+    /**
+     * Stops playing the animation on the display keeping its current frame shown.
+     *
+     * @param display display on which the animation should be stopped
+     * @return {@code true} if an animation was played on the display and {@code false} otherwise
+     */
+    public boolean stop(final @NonNull ProtocolBasedMapImageDisplay display) {
+        val playback = playbacks.remove(display);
+        if (playback == null) return false;
+
+        releasePackets(playback.animation);
+        cancelIfIdle();
+
+        return true;
+    }
+
+    /**
+     * Checks whether an animation is being played on the display.
+     *
+     * @param display display to check
+     * @return {@code true} if an animation is being played on the display and {@code false} otherwise
+     */
+    public boolean isPlaying(final @NonNull ProtocolBasedMapImageDisplay display) {
+        return playbacks.containsKey(display);
+    }
+
+    /**
+     * Releases the packets of the animation if it is not played on any display.
+     *
+     * @param animation animation whose packets may be released
+     */
+    protected void releasePackets(final @NonNull MapAnimation animation) {
+        for (val playback : playbacks.values()) if (playback.animation == animation) return;
+
+        packets.remove(animation);
+    }
+
+    /**
+     * Cancels the task if there is nothing to play.
+     */
+    protected void cancelIfIdle() {
+        if (playbacks.isEmpty() && task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Advances all the animations by a single tick.
+     */
+    protected void tick() {
+        for (final Iterator<Map.Entry<ProtocolBasedMapImageDisplay, Playback>> iterator
+             = playbacks.entrySet().iterator(); iterator.hasNext(); ) {
+            val entry = iterator.next();
+            val playback = entry.getValue();
+            if (--playback.remainingTicks > 0) continue;
+
+            val frames = playback.animation.frames();
+            var frame = playback.frame + 1;
+            if (frame == frames.size()) {
+                if (!playback.loop) {
+                    iterator.remove();
+                    releasePackets(playback.animation);
+
+                    continue;
+                }
+                frame = 0;
+            }
+
+            val shownFrame = frames.get(frame);
+            playback.frame = frame;
+            playback.remainingTicks = shownFrame.duration();
+
+            val packet = playback.framePackets[frame];
+            // empty deltas (of frames similar to the previous ones) have no packets
+            if (packet != null) entry.getKey().showFrame(shownFrame.delta(), packet, shownFrame.unusedColor());
+        }
+
+        cancelIfIdle();
+    }
+
+    /**
+     * Stops playing all the animations.
+     */
+    @Override
+    public void shutdown() {
+        playbacks.clear();
+        packets.clear();
+        cancelIfIdle();
+    }
+
+    /**
+     * State of the animation being played on a display.
+     */
+    @ToString
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    protected static final class Playback {
+
+        final @NonNull MapAnimation animation;
+        @ToString.Exclude final @NonNull WrapperPlayServerMap[] framePackets;
+        final boolean loop;
+
+        /**
+         * Index of the frame shown currently
+         */
+        int frame;
+
+        /**
+         * Number of ticks remaining until the next frame is shown
+         */
+        long remainingTicks;
+
+        private Playback(final @NonNull MapAnimation animation, final @NonNull WrapperPlayServerMap[] framePackets,
+                         final boolean loop) {
+            this.animation = animation;
+            this.framePackets = framePackets;
+            this.loop = loop;
+
+            remainingTicks = animation.keyFrame().duration();
+        }
+    }
+}
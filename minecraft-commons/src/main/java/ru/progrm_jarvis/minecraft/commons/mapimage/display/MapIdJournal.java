@@ -0,0 +1,324 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * Append-only journal of IDs of maps allocated by {@link PlayerMapManager}
+ * whose records are only overwritten once the maps get replaced.
+ * <p>
+ * The journal is a memory-mapped file of fixed-size records each containing the ID and its checksum
+ * so that appending an ID is a plain memory write and a torn record (written partially on crash)
+ * only terminates the journal instead of corrupting it. Appended records are forced to the disk
+ * asynchronously once per {@link #FORCE_BATCH_SIZE} records as they survive crashes of the process anyway.
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class MapIdJournal implements Closeable {
+
+    /**
+     * Magic number of the journal files.
+     */
+    private static final int FILE_MAGIC = 0x4D494A4C, // MIJL
+    /**
+     * Version of the journal files' format.
+     */
+    FILE_FORMAT_VERSION = 1,
+    /**
+     * Size of the header of the journal files.
+     */
+    HEADER_SIZE = 2 * Integer.BYTES,
+    /**
+     * Size of a single record of the journal files.
+     */
+    RECORD_SIZE = 2 * Integer.BYTES,
+    /**
+     * Number of records by which the journal file grows once it is full.
+     */
+    GROWTH_RECORDS = 1024,
+    /**
+     * Number of records after appending which the journal gets forced to the disk.
+     */
+    FORCE_BATCH_SIZE = 64;
+
+    /**
+     * Hash function used for checksums of the records
+     */
+    private static final HashFunction CHECKSUM = Hashing.crc32c();
+
+    /**
+     * File of the journal
+     */
+    @NonNull File file;
+
+    /**
+     * Channel of the journal file
+     */
+    @ToString.Exclude @NonNull FileChannel channel;
+
+    /**
+     * Buffer mapped to the whole journal file
+     */
+    @ToString.Exclude @NonFinal volatile MappedByteBuffer buffer;
+
+    /**
+     * Number of the records in the journal
+     */
+    @NonFinal int records,
+    /**
+     * Number of the records appended since the last time the journal was forced to the disk
+     */
+    unforcedRecords;
+
+    private MapIdJournal(final @NonNull File file, final @NonNull FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+
+        val size = channel.size();
+        if (size < HEADER_SIZE) {
+            // the journal is new or it was not even initialized
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacitySize(0));
+            buffer.putInt(0, FILE_MAGIC);
+            buffer.putInt(Integer.BYTES, FILE_FORMAT_VERSION);
+        } else {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) != FILE_MAGIC
+                    || buffer.getInt(Integer.BYTES) != FILE_FORMAT_VERSION) throw new IOException(
+                    "File " + file + " is not a map ID journal of supported version"
+            );
+
+            // records are read until the first invalid one which is either the end or a torn record
+            val capacity = (int) ((size - HEADER_SIZE) / RECORD_SIZE);
+            var records = 0;
+            while (records < capacity && isValid(records)) records++;
+            this.records = records;
+
+            // records after the first invalid one are erased so that they do not become valid after appends
+            for (var record = records; record < capacity; record++) eraseIfPresent(record);
+        }
+    }
+
+    /**
+     * Opens the journal creating it if it does not exist.
+     *
+     * @param file file of the journal
+     * @param legacyIdsListFile text file with an ID per line used by older versions whose IDs should be imported
+     * into the journal if it exists (the file is then renamed not to be imported again)
+     * @return opened journal
+     * @throws IOException if an exception occurs while opening the journal
+     */
+    static MapIdJournal open(final @NonNull File file, final @NonNull File legacyIdsListFile) throws IOException {
+        val channel = FileChannel.open(
+                file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        final MapIdJournal journal;
+        try {
+            journal = new MapIdJournal(file, channel);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        val journalIds = journal.ids();
+        val ids = new LinkedHashSet<Integer>();
+        for (val id : journalIds) ids.add(id);
+        // duplicates only appear if some IDs were reallocated after the journal was last compacted
+        var compact = ids.size() != journalIds.length;
+        val legacy = legacyIdsListFile.isFile();
+        if (legacy) for (val line : Files.readAllLines(legacyIdsListFile.toPath())) if (
+                !line.isEmpty() && line.indexOf('#') != 0 && ids.add(Integer.parseInt(line))
+        ) compact = true;
+
+        if (compact) journal.compact(ids.stream().mapToInt(Integer::intValue).toArray());
+        if (legacy) Files.move(
+                legacyIdsListFile.toPath(), new File(legacyIdsListFile.getPath() + ".migrated").toPath(),
+                StandardCopyOption.REPLACE_EXISTING
+        );
+
+        return journal;
+    }
+
+    /**
+     * Computes the checksum of the ID.
+     *
+     * @param id ID whose checksum to compute
+     * @return checksum of the ID which is never equal to {@code 0} for ID {@code 0}
+     * so that zero-filled records are invalid
+     */
+    private static int checksum(final int id) {
+        return CHECKSUM.hashInt(id).asInt();
+    }
+
+    /**
+     * Gets the size of the journal file sufficient for the number of records.
+     *
+     * @param records number of records
+     * @return size of the journal file rounded up to the number of records by which it grows
+     */
+    private static long capacitySize(final int records) {
+        return HEADER_SIZE + (long) (records / GROWTH_RECORDS + 1) * GROWTH_RECORDS * RECORD_SIZE;
+    }
+
+    /**
+     * Gets the offset of the record in the journal file.
+     *
+     * @param record index of the record
+     * @return offset of the record
+     */
+    private static int offset(final int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    /**
+     * Checks whether the record is valid.
+     *
+     * @param record index of the record
+     * @return {@code true} if the record's checksum matches its ID and {@code false} otherwise
+     */
+    private boolean isValid(final int record) {
+        val offset = offset(record);
+
+        return buffer.getInt(offset + Integer.BYTES) == checksum(buffer.getInt(offset));
+    }
+
+    /**
+     * Fills the record with zeros unless it is already zero-filled.
+     *
+     * @param record index of the record
+     */
+    private void eraseIfPresent(final int record) {
+        val offset = offset(record);
+        if (buffer.getLong(offset) != 0) buffer.putLong(offset, 0);
+    }
+
+    /**
+     * Writes the record.
+     *
+     * @param record index of the record
+     * @param id ID to write
+     */
+    private void write(final int record, final int id) {
+        val offset = offset(record);
+        // checksum is written after the ID so that partially written record is invalid
+        buffer.putInt(offset, id);
+        buffer.putInt(offset + Integer.BYTES, checksum(id));
+    }
+
+    /**
+     * Grows the journal file if it is not large enough to contain the number of records.
+     *
+     * @param records number of records which the journal should be able to contain
+     * @throws IOException if an exception occurs while growing the file
+     */
+    private void ensureCapacity(final int records) throws IOException {
+        if (offset(records) > buffer.capacity()) buffer = channel.map(
+                FileChannel.MapMode.READ_WRITE, 0, capacitySize(records)
+        );
+    }
+
+    /**
+     * Gets the IDs stored in the journal.
+     *
+     * @return IDs stored in the journal in order of their allocation
+     */
+    synchronized int[] ids() {
+        val ids = new int[records];
+        val buffer = this.buffer;
+        for (var record = 0; record < ids.length; record++) ids[record] = buffer.getInt(offset(record));
+
+        return ids;
+    }
+
+    /**
+     * Gets the number of records in the journal.
+     *
+     * @return number of records in the journal
+     */
+    synchronized int records() {
+        return records;
+    }
+
+    /**
+     * Appends the ID to the journal.
+     *
+     * @param id ID to append
+     *
+     * @apiNote this only performs I/O once the journal file has to grow
+     * (which happens once per {@link #GROWTH_RECORDS} records)
+     */
+    @SneakyThrows(IOException.class)
+    synchronized void append(final int id) {
+        ensureCapacity(records + 1);
+        write(records++, id);
+
+        if (++unforcedRecords >= FORCE_BATCH_SIZE) {
+            unforcedRecords = 0;
+            ForkJoinPool.commonPool().execute(this::force);
+        }
+    }
+
+    /**
+     * Replaces the ID stored in the record so that the records stay aligned with the indices of the maps.
+     *
+     * @param record index of the record
+     * @param id ID with which to replace the stored one
+     *
+     * @apiNote the record is written by a single aligned write (and forced to the disk immediately)
+     * so that it either contains the old ID or the new one even if the process crashes
+     */
+    synchronized void replace(final int record, final int id) {
+        checkElementIndex(record, records, "record");
+
+        buffer.putLong(offset(record), (long) id << Integer.SIZE | checksum(id) & 0xFFFFFFFFL);
+        buffer.force();
+    }
+
+    /**
+     * Rewrites the journal in place so that it contains only the specified IDs.
+     *
+     * @param ids IDs which should be stored in the journal
+     *
+     * @apiNote if the IDs are a subsequence of the stored ones (which is so when the journal gets compacted)
+     * then the journal stays valid and contains all of them even if the process crashes while compacting
+     */
+    @SneakyThrows(IOException.class)
+    synchronized void compact(final @NonNull int[] ids) {
+        ensureCapacity(ids.length);
+
+        for (var record = 0; record < ids.length; record++) write(record, ids[record]);
+        for (var record = ids.length; record < records; record++) eraseIfPresent(record);
+        records = ids.length;
+
+        unforcedRecords = 0;
+        buffer.force();
+    }
+
+    /**
+     * Forces the appended records to the disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+}
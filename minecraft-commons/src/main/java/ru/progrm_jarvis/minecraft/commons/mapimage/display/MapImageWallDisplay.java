@@ -0,0 +1,237 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import com.comphenix.packetwrapper.WrapperPlayServerMap;
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import org.bukkit.entity.Player;
+import org.bukkit.map.MapView;
+import org.bukkit.plugin.Plugin;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImage;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImageWall;
+import ru.progrm_jarvis.minecraft.commons.player.collection.PlayerContainer;
+import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistries;
+import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistry;
+import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistryRegistration;
+import ru.progrm_jarvis.minecraft.commons.util.shutdown.Shutdownable;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Display of {@link MapImageWall}.
+ * It sends all the deltas of each {@link MapImageWall#flush() flush of the wall} at once
+ * building a single packet for each changed tile which is then sent to all the players.
+ * The packets of the whole tiles sent to the added players are also shared until the tiles get modified.
+ */
+@ToString
+@EqualsAndHashCode
+@FieldDefaults(level = AccessLevel.PROTECTED, makeFinal = true)
+public class MapImageWallDisplay implements PlayerContainer, Shutdownable {
+
+    @NonNull MapImageWall wall;
+    /**
+     * Maps of the players indexed as the tiles of the wall
+     */
+    @NonNull Map<Player, MapView[]> playerMaps;
+    @NonNull Set<Player> playersView;
+    @Getter boolean global;
+
+    /**
+     * Subscriber of this display on the wall's updates
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @NonNull Consumer<List<MapImageWall.TileDelta>> updateSubscriber;
+
+    /**
+     * Packets of the whole tiles (without the map IDs set) indexed as the tiles of the wall,
+     * each one built for the modification count of its tile or {@code null} if it was not built yet
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @NonNull AtomicReferenceArray<VersionedMapPacket> fullTilePackets;
+
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public MapImageWallDisplay(final @NonNull MapImageWall wall, final @NonNull Map<Player, MapView[]> playerMaps,
+                               final boolean global, final @NonNull PlayerRegistry playerRegistry) {
+        this.wall = wall;
+        this.playerMaps = playerMaps;
+        playersView = Collections.unmodifiableSet(playerMaps.keySet());
+        this.global = global;
+        fullTilePackets = new AtomicReferenceArray<>(wall.getColumns() * wall.getRows());
+
+        playerRegistry.register(this);
+        wall.subscribeOnUpdates(updateSubscriber = this::sendDeltasToAllPlayers);
+    }
+
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public MapImageWallDisplay(final @NonNull MapImageWall wall, final @NonNull Map<Player, MapView[]> playerMaps,
+                               final @NonNull Plugin plugin, final boolean global) {
+        this(wall, playerMaps, global, PlayerRegistries.defaultRegistry(plugin));
+    }
+
+    /**
+     * Gets the wall displayed.
+     *
+     * @return wall displayed
+     */
+    public MapImageWall wall() {
+        return wall;
+    }
+
+    /**
+     * Sends the whole wall to the player.
+     *
+     * @param player player to whom the wall should be sent
+     * @param maps maps of the player indexed as the tiles of the wall
+     */
+    protected void sendFullWall(final @NonNull Player player, final @NonNull MapView[] maps) {
+        for (var tile = 0; tile < maps.length; tile++) sendPacket(player, maps[tile], fullTilePacket(tile));
+    }
+
+    /**
+     * Gets the packet of the whole tile (without the map ID set) building it if the tile was modified.
+     *
+     * @param tile index of the tile
+     * @return packet of the whole tile which should not be modified as it is shared
+     */
+    protected WrapperPlayServerMap fullTilePacket(final int tile) {
+        val image = wall.tiles().get(tile);
+        // the count is got before the data is copied so that the packet is never newer than the count
+        val modificationCount = image.getModificationCount();
+
+        var packet = fullTilePackets.get(tile);
+        if (packet == null || packet.getModificationCount() != modificationCount) fullTilePackets.set(
+                tile, packet = new VersionedMapPacket(modificationCount, newTilePacket(image))
+        );
+
+        return packet.getPacket();
+    }
+
+    /**
+     * Creates new packet containing the whole tile (without the map ID set).
+     *
+     * @param image image of the tile
+     * @return created packet
+     */
+    protected WrapperPlayServerMap newTilePacket(final @NonNull MapImage image) {
+        final int width = image.getWidth(), height = image.getHeight();
+
+        return new WrapperPlayServerMap() {{
+            setScale(image.getDisplay());
+            setColumns(width);
+            setRows(height);
+            setX(0);
+            setZ(0);
+            // the data is copied as the wall may be drawn on before the packet gets encoded
+            setData(image.getMapData(0, 0, width, height));
+        }};
+    }
+
+    protected WrapperPlayServerMap newDeltaPacket(final @NonNull MapImageWall.TileDelta tileDelta) {
+        val delta = tileDelta.delta();
+        val scale = tileDelta.tile().getDisplay();
+
+        return new WrapperPlayServerMap() {{
+            setScale(scale);
+            setColumns(delta.width());
+            setRows(delta.height());
+            setX(delta.leastX());
+            setZ(delta.leastY());
+            // delta pixels are already a copy of the changed segment
+            setData(delta.pixels());
+        }};
+    }
+
+    protected void sendDeltasToAllPlayers(final @NonNull List<MapImageWall.TileDelta> deltas) {
+        if (deltas.isEmpty() || playerMaps.isEmpty()) return;
+
+        val columns = wall.getColumns();
+        for (val tileDelta : deltas) {
+            if (tileDelta.delta().isEmpty()) continue;
+
+            // the packet is built once for all players
+            val packet = newDeltaPacket(tileDelta);
+            val tile = tileDelta.column() + tileDelta.row() * columns;
+            for (val entry : playerMaps.entrySet()) sendPacket(entry.getKey(), entry.getValue()[tile], packet);
+        }
+    }
+
+    /**
+     * Sends the shared packet to the player changing only the map ID of its copy.
+     *
+     * @param player player to whom the packet should be sent
+     * @param map map of the player
+     * @param packet packet to send (without the map ID set) which itself is not modified
+     */
+    protected void sendPacket(final @NonNull Player player, final @NonNull MapView map,
+                              final @NonNull WrapperPlayServerMap packet) {
+        // the packet may still be queued for the other players so their map IDs should not be overwritten
+        val playerPacket = new WrapperPlayServerMap(packet.getHandle().shallowClone());
+        playerPacket.setItemDamage(PlayerMapManager.getMapId(map));
+
+        playerPacket.sendPacket(player);
+    }
+
+    /**
+     * Stops sending the wall's updates to the players and frees their maps.
+     */
+    @Override
+    public void shutdown() {
+        wall.unsubscribeFromUpdates(updateSubscriber);
+        // the players are copied as they get removed while iterating
+        for (val player : new ArrayList<>(playerMaps.keySet())) removePlayer(player);
+    }
+
+    @Override
+    public void addPlayer(final Player player) {
+        // computeIfAbsent not to allocate the IDs if the player is already contained (and so has IDs allocated)
+        val maps = playerMaps.computeIfAbsent(player, p -> {
+            val tilesCount = wall.getColumns() * wall.getRows();
+            val allocatedMaps = new MapView[tilesCount];
+            for (var tile = 0; tile < tilesCount; tile++) {
+                val map = PlayerMapManager.allocateMap(player);
+                // although the rendering is contextual there is no need to use Bukkit's contextual renderer
+                map.addRenderer(BlankMapRenderer.NON_CONTEXTUAL);
+                allocatedMaps[tile] = map;
+            }
+
+            return allocatedMaps;
+        });
+        sendFullWall(player, maps);
+    }
+
+    @Override
+    public void removePlayer(final Player player) {
+        val maps = playerMaps.remove(player);
+        if (maps != null) /* null-check just in case */ for (val map : maps) PlayerMapManager.freeMap(player, map);
+    }
+
+    @Override
+    public boolean containsPlayer(final Player player) {
+        return playerMaps.containsKey(player);
+    }
+
+    @Override
+    public Collection<? extends Player> getPlayers() {
+        return playersView;
+    }
+
+    /**
+     * Gets the map ID used by this display for the tile of the wall for the player specified.
+     *
+     * @param player player whose map ID for the tile to get
+     * @param column column of the tile
+     * @param row row of the tile
+     * @return optional containing map ID used by this display for the tile of the wall for the player
+     * or empty optional if none (this display is not used for the player)
+     */
+    @NonNull
+    public Optional<Number> getMapId(final @NonNull Player player, final int column, final int row) {
+        val columns = wall.getColumns();
+        checkArgument(column >= 0 && column < columns, "column should be between 0 and " + (columns - 1));
+        checkArgument(row >= 0 && row < wall.getRows(), "row should be between 0 and " + (wall.getRows() - 1));
+
+        val maps = playerMaps.get(player);
+        return maps == null ? Optional.empty() : Optional.of(PlayerMapManager.getMapId(maps[column + row * columns]));
+    }
+}
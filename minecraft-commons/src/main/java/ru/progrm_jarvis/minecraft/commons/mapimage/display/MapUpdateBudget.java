@@ -0,0 +1,504 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import lombok.*;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import org.bukkit.entity.Player;
+import org.bukkit.map.MapView;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.progrm_jarvis.minecraft.commons.player.collection.PlayerContainer;
+import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistries;
+import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistry;
+import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistryRegistration;
+import ru.progrm_jarvis.minecraft.commons.util.SystemPropertyUtil;
+import ru.progrm_jarvis.minecraft.commons.util.shutdown.Shutdownable;
+
+import java.util.*;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Per-player budget of bytes of map data sent each tick by {@link ProtocolBasedMapImageDisplay displays} using it.
+ * <p>
+ * Updates of the maps wait in the queues of the players until there is enough budget for them to be sent.
+ * While waiting, the updates of the same map get merged into a single segment which is read from the image
+ * only once it is sent. The updates of the displays of the higher {@link ProtocolBasedMapImageDisplay#getPriority()
+ * priority} are sent first and the most recent ones go first among the updates of the same priority.
+ * The updates which have waited for {@link #getMaxWaitTicks() too long} are sent before any other ones
+ * in the order in which they were queued so that frequently updated maps cannot delay the other ones forever.
+ * <p>
+ * The budget is accumulated up to a single tick's one, but the update which is larger than the budget
+ * still gets sent making the budget negative until it is restored.
+ * <p>
+ * The budget is a {@link PlayerContainer} of the players having pending updates
+ * so that their updates get discarded by the {@link PlayerRegistry} once they leave the server.
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PROTECTED, makeFinal = true)
+public class MapUpdateBudget implements PlayerContainer, Shutdownable {
+
+    /**
+     * Estimated size of the map packet excluding its data.
+     */
+    protected static final int PACKET_OVERHEAD = 16;
+
+    /**
+     * Default number of ticks after which the pending update is sent before the ones of higher priority
+     */
+    protected static final int DEFAULT_MAX_WAIT_TICKS = Math.max(1, SystemPropertyUtil.getSystemPropertyInt(
+            MapUpdateBudget.class.getCanonicalName() + ".max-wait-ticks", 20
+    ));
+
+    /**
+     * Order in which the pending updates which have not waited for too long are sent
+     */
+    private static final Comparator<PendingUpdate> SENDING_ORDER = Comparator
+            .comparingInt((PendingUpdate update) -> update.priority).reversed()
+            .thenComparing(Comparator.comparingLong((PendingUpdate update) -> update.sequence).reversed());
+
+    /**
+     * Order in which the pending updates which have waited for too long are sent
+     */
+    private static final Comparator<PendingUpdate> QUEUEING_ORDER
+            = Comparator.comparingLong(update -> update.queueSequence);
+
+    @NonNull Plugin plugin;
+
+    /**
+     * Player registry to which this budget is registered
+     */
+    @ToString.Exclude @NonNull PlayerRegistry playerRegistry;
+
+    /**
+     * Number of bytes which can be sent to a single player each tick
+     */
+    @Getter int bytesPerTick;
+
+    /**
+     * Number of ticks after which the pending update is sent before the ones of higher priority
+     */
+    @Getter int maxWaitTicks;
+
+    /**
+     * Queues of the players
+     */
+    @ToString.Exclude @NonNull Map<Player, PlayerQueue> queues = new HashMap<>();
+
+    /**
+     * Sequence number of the last queued update
+     */
+    @NonFinal long sequence;
+
+    /**
+     * Number of ticks in which the pending updates were sent
+     */
+    @NonFinal long ticks;
+
+    /**
+     * Task sending the pending updates or {@code null} if there is nothing to send
+     */
+    @NonFinal @Nullable BukkitTask task;
+
+    /**
+     * Creates new budget.
+     *
+     * @param plugin plugin on behalf of which the task sending the updates is scheduled
+     * @param bytesPerTick number of bytes of map data which can be sent to a single player each tick
+     * @param maxWaitTicks number of ticks after which the pending update is sent before the ones of higher priority
+     * @param playerRegistry player registry to which this budget should be registered
+     */
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public MapUpdateBudget(final @NonNull Plugin plugin, final int bytesPerTick, final int maxWaitTicks,
+                           final @NonNull PlayerRegistry playerRegistry) {
+        checkArgument(bytesPerTick > 0, "bytesPerTick should be positive");
+        checkArgument(maxWaitTicks > 0, "maxWaitTicks should be positive");
+
+        this.plugin = plugin;
+        this.bytesPerTick = bytesPerTick;
+        this.maxWaitTicks = maxWaitTicks;
+        this.playerRegistry = playerRegistry;
+
+        playerRegistry.register(this);
+    }
+
+    /**
+     * Creates new budget.
+     *
+     * @param plugin plugin on behalf of which the task sending the updates is scheduled
+     * @param bytesPerTick number of bytes of map data which can be sent to a single player each tick
+     * @param maxWaitTicks number of ticks after which the pending update is sent before the ones of higher priority
+     */
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public MapUpdateBudget(final @NonNull Plugin plugin, final int bytesPerTick, final int maxWaitTicks) {
+        this(plugin, bytesPerTick, maxWaitTicks, PlayerRegistries.defaultRegistry(plugin));
+    }
+
+    /**
+     * Creates new budget.
+     *
+     * @param plugin plugin on behalf of which the task sending the updates is scheduled
+     * @param bytesPerTick number of bytes of map data which can be sent to a single player each tick
+     */
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public MapUpdateBudget(final @NonNull Plugin plugin, final int bytesPerTick) {
+        this(plugin, bytesPerTick, DEFAULT_MAX_WAIT_TICKS);
+    }
+
+    /**
+     * Estimates the number of bytes sent in order to update the segment of the map.
+     *
+     * @param width width of the segment
+     * @param height height of the segment
+     * @return estimated number of bytes
+     */
+    protected static int cost(final int width, final int height) {
+        return PACKET_OVERHEAD + width * height;
+    }
+
+    /**
+     * Queues the update of the map's segment to be sent to the player merging it with the pending one if there is.
+     *
+     * @param player player to whom the update should be sent
+     * @param display display whose image's segment should be sent
+     * @param map map of the player on which the display shows the image
+     * @param leastX least X-coordinate of the segment
+     * @param leastY least Y-coordinate of the segment
+     * @param width width of the segment
+     * @param height height of the segment
+     */
+    public synchronized void queue(final @NonNull Player player, final @NonNull ProtocolBasedMapImageDisplay display,
+                                   final @NonNull MapView map, final int leastX, final int leastY,
+                                   final int width, final int height) {
+        if (width <= 0 || height <= 0) return;
+
+        val queue = queues.computeIfAbsent(player, queuedPlayer -> new PlayerQueue(bytesPerTick));
+        val mapId = getMapId(map);
+        val update = queue.updates.get(mapId);
+        if (update == null || update.display != display) {
+            // the map is not expected to be used by another display at the same time, but it may be reallocated
+            if (update != null) queue.bytes -= update.cost();
+
+            val newUpdate = new PendingUpdate(
+                    display, map, leastX, leastY, leastX + width - 1, leastY + height - 1, ticks, sequence + 1
+            );
+            queue.updates.put(mapId, newUpdate);
+            queue.bytes += newUpdate.cost();
+            touch(newUpdate, display);
+        } else {
+            queue.bytes -= update.cost();
+            update.merge(leastX, leastY, leastX + width - 1, leastY + height - 1);
+            queue.bytes += update.cost();
+            touch(update, display);
+        }
+
+        if (task == null) task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+    }
+
+    /**
+     * Marks the update as the most recent one.
+     *
+     * @param update update to mark
+     * @param display display of the update
+     */
+    private void touch(final @NonNull PendingUpdate update, final @NonNull ProtocolBasedMapImageDisplay display) {
+        update.priority = display.getPriority();
+        update.sequence = ++sequence;
+    }
+
+    /**
+     * Discards the pending update of the map for the player.
+     *
+     * @param player player for whom to discard the update
+     * @param map map whose update should be discarded
+     *
+     * @apiNote this should be called whenever the map is freed for the player
+     */
+    public synchronized void discard(final @NonNull Player player, final @NonNull MapView map) {
+        val queue = queues.get(player);
+        if (queue == null) return;
+
+        val update = queue.updates.remove(getMapId(map));
+        if (update != null) queue.bytes -= update.cost();
+    }
+
+    /**
+     * Discards all the pending updates for the player.
+     *
+     * @param player player for whom to discard the updates
+     *
+     * @apiNote this is called by {@link #removePlayer(Player)} once the player leaves the server
+     */
+    public synchronized void discardAll(final @NonNull Player player) {
+        queues.remove(player);
+    }
+
+    @Override
+    public boolean isGlobal() {
+        return false;
+    }
+
+    /**
+     * Does nothing as the players are added once their updates get queued.
+     *
+     * @param player player to add
+     */
+    @Override
+    public void addPlayer(final Player player) {}
+
+    /**
+     * Discards all the pending updates for the player.
+     *
+     * @param player player to remove
+     *
+     * @see #discardAll(Player) equivalent method
+     */
+    @Override
+    public void removePlayer(final Player player) {
+        discardAll(player);
+    }
+
+    @Override
+    public synchronized boolean containsPlayer(final Player player) {
+        return queues.containsKey(player);
+    }
+
+    @Override
+    public synchronized Collection<? extends Player> getPlayers() {
+        return new ArrayList<>(queues.keySet());
+    }
+
+    /**
+     * Gets the backlog of the player.
+     *
+     * @param player player whose backlog to get
+     * @return backlog of the player
+     */
+    public synchronized @NotNull Backlog getBacklog(final @NonNull Player player) {
+        val queue = queues.get(player);
+
+        return queue == null
+                ? new Backlog(0, 0, bytesPerTick) : new Backlog(queue.updates.size(), queue.bytes, queue.budget);
+    }
+
+    /**
+     * Sends the pending updates to each player within their budgets.
+     *
+     * @apiNote this is called each tick while there are pending updates
+     */
+    protected void tick() {
+        val sentUpdates = new ArrayList<Map.Entry<Player, PendingUpdate>>();
+        synchronized (this) {
+            val currentTick = ++ticks;
+            for (final Iterator<Map.Entry<Player, PlayerQueue>> iterator
+                 = queues.entrySet().iterator(); iterator.hasNext(); ) {
+                val entry = iterator.next();
+                val queue = entry.getValue();
+                queue.budget = Math.min(queue.budget + bytesPerTick, bytesPerTick);
+
+                val updates = queue.updates;
+                if (updates.isEmpty()) {
+                    // players with nothing to be sent and with the whole budget do not need to be tracked
+                    if (queue.budget == bytesPerTick) iterator.remove();
+
+                    continue;
+                }
+
+                // the updates which have waited for too long go first so that they cannot be starved
+                val overdueUpdates = new ArrayList<PendingUpdate>();
+                val sortedUpdates = new ArrayList<PendingUpdate>(updates.size());
+                for (val update : updates.values()) (
+                        currentTick - update.queueTick >= maxWaitTicks ? overdueUpdates : sortedUpdates
+                ).add(update);
+                overdueUpdates.sort(QUEUEING_ORDER);
+                sortedUpdates.sort(SENDING_ORDER);
+                sortedUpdates.addAll(0, overdueUpdates);
+                for (val update : sortedUpdates) {
+                    if (queue.budget <= 0) break;
+
+                    val cost = update.cost();
+                    queue.budget -= cost;
+                    queue.bytes -= cost;
+                    updates.remove(getMapId(update.map));
+                    sentUpdates.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), update));
+                }
+            }
+
+            if (queues.isEmpty() && task != null) {
+                task.cancel();
+                task = null;
+            }
+        }
+
+        // the packets are built and sent without holding the lock
+        for (val entry : sentUpdates) {
+            val update = entry.getValue();
+            send(
+                    entry.getKey(), update.display, update.map, update.leastX, update.leastY,
+                    update.mostX - update.leastX + 1, update.mostY - update.leastY + 1
+            );
+        }
+    }
+
+    /**
+     * Gets the ID of the map by which its pending updates are merged.
+     *
+     * @param map map whose ID should be got
+     * @return ID of the map
+     */
+    protected int getMapId(final @NonNull MapView map) {
+        return PlayerMapManager.getMapId(map);
+    }
+
+    /**
+     * Sends the update of the map's segment to the player.
+     *
+     * @param player player to whom the update should be sent
+     * @param display display whose image's segment should be sent
+     * @param map map of the player on which the display shows the image
+     * @param leastX least X-coordinate of the segment
+     * @param leastY least Y-coordinate of the segment
+     * @param width width of the segment
+     * @param height height of the segment
+     *
+     * @apiNote this is called by {@link #tick()} without holding the lock
+     */
+    protected void send(final @NonNull Player player, final @NonNull ProtocolBasedMapImageDisplay display,
+                        final @NonNull MapView map, final int leastX, final int leastY,
+                        final int width, final int height) {
+        display.sendSegment(player, map, leastX, leastY, width, height);
+    }
+
+    /**
+     * Discards all the pending updates and unregisters this budget from its player registry.
+     */
+    @Override
+    public synchronized void shutdown() {
+        playerRegistry.unregister(this);
+        queues.clear();
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Backlog of the player.
+     */
+    @Value
+    public static class Backlog {
+
+        /**
+         * Number of the maps having pending updates
+         */
+        int updates;
+
+        /**
+         * Estimated number of bytes of the pending updates
+         */
+        long bytes;
+
+        /**
+         * Number of bytes which can still be sent to the player this tick (negative if the budget was exceeded)
+         */
+        long remainingBudget;
+    }
+
+    /**
+     * Queue of the updates of a player.
+     */
+    @ToString
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class PlayerQueue {
+
+        /**
+         * Pending updates by the IDs of the maps
+         */
+        final @NonNull Map<Integer, PendingUpdate> updates = new HashMap<>();
+
+        /**
+         * Estimated number of bytes of the pending updates
+         */
+        long bytes;
+
+        /**
+         * Number of bytes which can be sent to the player this tick (negative if it was exceeded)
+         */
+        long budget;
+
+        private PlayerQueue(final long budget) {
+            this.budget = budget;
+        }
+    }
+
+    /**
+     * Pending update of the map's segment.
+     */
+    @ToString
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class PendingUpdate {
+
+        final @NonNull ProtocolBasedMapImageDisplay display;
+        final @NonNull MapView map;
+        int leastX, leastY, mostX, mostY;
+
+        /**
+         * Priority of the display at the moment of the last update
+         */
+        int priority;
+
+        /**
+         * Sequence number of the last update
+         */
+        long sequence;
+
+        /**
+         * Number of the tick after which this update was queued (not changed by merging)
+         */
+        final long queueTick;
+
+        /**
+         * Sequence number of the update with which this update was queued (not changed by merging)
+         */
+        final long queueSequence;
+
+        private PendingUpdate(final @NonNull ProtocolBasedMapImageDisplay display, final @NonNull MapView map,
+                              final int leastX, final int leastY, final int mostX, final int mostY,
+                              final long queueTick, final long queueSequence) {
+            this.display = display;
+            this.map = map;
+            this.leastX = leastX;
+            this.leastY = leastY;
+            this.mostX = mostX;
+            this.mostY = mostY;
+            this.queueTick = queueTick;
+            this.queueSequence = queueSequence;
+        }
+
+        /**
+         * Extends the segment of this update so that it includes the specified one.
+         *
+         * @param leastX least X-coordinate of the included segment
+         * @param leastY least Y-coordinate of the included segment
+         * @param mostX most X-coordinate of the included segment
+         * @param mostY most Y-coordinate of the included segment
+         */
+        private void merge(final int leastX, final int leastY, final int mostX, final int mostY) {
+            if (leastX < this.leastX) this.leastX = leastX;
+            if (leastY < this.leastY) this.leastY = leastY;
+            if (mostX > this.mostX) this.mostX = mostX;
+            if (mostY > this.mostY) this.mostY = mostY;
+        }
+
+        /**
+         * Estimates the number of bytes sent in order to apply this update.
+         *
+         * @return estimated number of bytes
+         */
+        private int cost() {
+            return MapUpdateBudget.cost(mostX - leastX + 1, mostY - leastY + 1);
+        }
+    }
+}
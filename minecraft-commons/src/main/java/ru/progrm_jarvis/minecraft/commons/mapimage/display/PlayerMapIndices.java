@@ -0,0 +1,76 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.experimental.FieldDefaults;
+import lombok.val;
+import org.bukkit.entity.Player;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Indices of the maps allocated by {@link PlayerMapManager} which are held by the players.
+ * Similar indices may be held by different players as the image logic doesn't intersect.
+ * <p>
+ * This only reserves the indices so that the maps themselves get resolved (or allocated) by the caller
+ * without holding any locks of this object.
+ */
+@ToString
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class PlayerMapIndices {
+
+    /**
+     * Indices held by the players
+     *
+     * @apiNote bit sets are only accessed inside of atomic operations of this map on their keys
+     * so that reservations for different players don't contend
+     */
+    @ToString.Exclude ConcurrentMap<Player, BitSet> heldIndices;
+
+    /**
+     * Creates new indices of the players' maps.
+     *
+     * @param expectedPlayers expected number of the players holding the indices
+     */
+    PlayerMapIndices(final int expectedPlayers) {
+        heldIndices = new ConcurrentHashMap<>(Math.max(16, expectedPlayers));
+    }
+
+    /**
+     * Reserves the least index not held by the player.
+     *
+     * @param player player for whom to reserve the index
+     * @return reserved index which is at most the number of indices held by the player
+     */
+    int reserve(final @NonNull Player player) {
+        val index = new int[1];
+        heldIndices.compute(player, (owner, indices) -> {
+            if (indices == null) indices = new BitSet();
+
+            // the first index not held by the player (if all are held this is the index following them)
+            indices.set(index[0] = indices.nextClearBit(0));
+
+            return indices;
+        });
+
+        return index[0];
+    }
+
+    /**
+     * Releases the index held by the player so that it can be reserved again.
+     *
+     * @param player player for whom to release the index
+     * @param index index to release
+     */
+    void release(final @NonNull Player player, final int index) {
+        heldIndices.computeIfPresent(player, (owner, indices) -> {
+            indices.clear(index);
+
+            // players holding no indices are removed not to be leaked
+            return indices.isEmpty() ? null : indices;
+        });
+    }
+}
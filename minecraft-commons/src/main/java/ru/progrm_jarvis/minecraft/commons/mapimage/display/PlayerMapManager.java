@@ -1,12 +1,10 @@
 package ru.progrm_jarvis.minecraft.commons.mapimage.display;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.SetMultimap;
 import lombok.NonNull;
 import lombok.SneakyThrows;
-import lombok.Synchronized;
 import lombok.experimental.UtilityClass;
 import lombok.val;
+import lombok.var;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.map.MapView;
@@ -19,13 +17,11 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Objects;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  * Utility responsible to allocate minimal amount of {@link MapView} for internal usage.
@@ -95,20 +91,50 @@ public class PlayerMapManager {
     );
 
     /**
-     * File containing IDs of allocated maps.
+     * File containing IDs of allocated maps in the format used by older versions.
      */
     private final File IDS_LIST_FILE = new File(ROOT_DIRECTORY, "map_ids.list");
 
     /**
-     * Maps allocated in Bukkit for internal usage.
+     * Journal of IDs of allocated maps whose records are aligned with {@link #allocatedMapIds}.
      */
-    private final Set<MapView> ALLOCATED_MAPS;
+    private final MapIdJournal IDS_JOURNAL;
 
     /**
-     * Maps of {@link #ALLOCATED_MAPS} available for the player.
-     * Similar maps may be related to different players as the image logic doesn't intersect.
+     * Lock used for allocation of new maps.
      */
-    private final SetMultimap<Player, MapView> PLAYER_MAPS;
+    @SuppressWarnings("ZeroLengthArrayAllocation") private final Object NEW_MAP_ALLOCATION_LOCK = new Object[0];
+
+    /**
+     * IDs of maps allocated in Bukkit for internal usage indexed densely in order of their allocation.
+     *
+     * @apiNote guarded by {@link #NEW_MAP_ALLOCATION_LOCK}
+     */
+    private int[] allocatedMapIds;
+
+    /**
+     * Maps of {@link #allocatedMapIds} which are resolved lazily once those are first needed.
+     *
+     * @apiNote this gets replaced (while holding {@link #NEW_MAP_ALLOCATION_LOCK}) only once it has to grow
+     */
+    private volatile AtomicReferenceArray<MapView> allocatedMaps;
+
+    /**
+     * Number of allocated maps.
+     *
+     * @apiNote this is updated after {@link #allocatedMaps} so it should be read before it
+     */
+    private volatile int allocatedMapsCount;
+
+    /**
+     * Indices of {@link #allocatedMaps}.
+     */
+    private final Map<MapView, Integer> ALLOCATED_MAP_INDICES = new ConcurrentHashMap<>();
+
+    /**
+     * Indices of {@link #allocatedMaps} held by the players.
+     */
+    private final PlayerMapIndices PLAYER_MAP_INDICES;
 
     // static initialization of file-related stuff
     static {
@@ -118,41 +144,20 @@ public class PlayerMapManager {
             throw new RuntimeException("Couldn't create source directory of PlayerMapManager", e);
         }
 
-        // Loads the maps stored in a file between sessions
-        if (IDS_LIST_FILE.isFile()) {
-            final List<String> fileLines;
-            try {
-                fileLines = Files.readAllLines(IDS_LIST_FILE.toPath());
-            } catch (final IOException e) {
-                throw new RuntimeException(
-                        "Couldn't read file " + IDS_LIST_FILE.getName() + " of PlayerMapManager ", e
-                );
-            }
-
-            ALLOCATED_MAPS = fileLines.stream()
-                    .filter(line -> !line.isEmpty() && line.indexOf('#') != 0)
-                    .map(line -> getMap(Integer.parseInt(line)))
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toSet()); // HashSet is used by default
-
-            Bukkit.getLogger().info(
-                    "Loaded " + ALLOCATED_MAPS.size() + " internally allocated world map IDs: " + ALLOCATED_MAPS
-            );
-        } else {
-            try {
-                Files.createFile(IDS_LIST_FILE.toPath());
-            } catch (final IOException e) {
-                throw new RuntimeException(
-                        "Couldn't create file " + IDS_LIST_FILE.getName() + " of PlayerMapManager ", e
-                );
-            }
-            ALLOCATED_MAPS = new HashSet<>();
+        // Loads the IDs stored between sessions (maps themselves are resolved only once needed)
+        try {
+            IDS_JOURNAL = MapIdJournal.open(new File(ROOT_DIRECTORY, "map_ids.journal"), IDS_LIST_FILE);
+        } catch (final IOException e) {
+            throw new RuntimeException("Couldn't open map IDs journal of PlayerMapManager", e);
         }
-
-        // use optimal key size for allocatedMap
-        PLAYER_MAPS = HashMultimap.create(
-                Math.max(8, ALLOCATED_MAPS.size()), Math.max(16, Bukkit.getOnlinePlayers().size())
+        allocatedMapIds = IDS_JOURNAL.ids();
+        allocatedMaps = new AtomicReferenceArray<>(allocatedMapIds.length);
+        allocatedMapsCount = allocatedMapIds.length;
+        if (allocatedMapsCount != 0) Bukkit.getLogger().info(
+                "Loaded " + allocatedMapsCount + " internally allocated world map IDs"
         );
+
+        PLAYER_MAP_INDICES = new PlayerMapIndices(Bukkit.getOnlinePlayers().size());
     }
 
     /**
@@ -180,14 +185,71 @@ public class PlayerMapManager {
                 : (MapView) BUKKIT__GET_MAP__METHOD.invokeExact((short) mapId);
     }
 
+    /**
+     * Gets the allocated map of the index allocating new map if there is no such one.
+     *
+     * @param index index of the map which is at most the number of allocated maps
+     * @return allocated map of the index with only blank renderer applied if it was newly allocated
+     */
+    private MapView allocatedMap(final int index) {
+        // fast path not requiring the lock
+        if (index < allocatedMapsCount) {
+            val map = allocatedMaps.get(index);
+            if (map != null) return map;
+        }
+
+        synchronized (NEW_MAP_ALLOCATION_LOCK) {
+            // the map might have been allocated or resolved concurrently
+            val count = allocatedMapsCount;
+            var maps = allocatedMaps;
+            if (index < count) {
+                var map = maps.get(index);
+                if (map != null) return map;
+
+                map = getMap(allocatedMapIds[index]);
+                // the stored map might not exist anymore (e.g. if the world was reset) so it gets replaced
+                if (map == null) {
+                    map = allocateNewMap();
+                    val mapId = getMapId(map);
+                    allocatedMapIds[index] = mapId;
+                    // the stale ID is overwritten so that it is not resolved again after restart
+                    IDS_JOURNAL.replace(index, mapId);
+                }
+                ALLOCATED_MAP_INDICES.put(map, index);
+                maps.set(index, map);
+
+                return map;
+            }
+
+            val map = allocateNewMap();
+            if (count == allocatedMapIds.length) {
+                val capacity = Math.max(16, count << 1);
+                allocatedMapIds = Arrays.copyOf(allocatedMapIds, capacity);
+                val grownMaps = new AtomicReferenceArray<MapView>(capacity);
+                for (var copiedIndex = 0; copiedIndex < count; copiedIndex++) grownMaps.set(
+                        copiedIndex, maps.get(copiedIndex)
+                );
+                allocatedMaps = maps = grownMaps;
+            }
+            val mapId = getMapId(map);
+            allocatedMapIds[count] = mapId;
+            // this is a memory write so no disk I/O happens while holding the lock
+            IDS_JOURNAL.append(mapId);
+            ALLOCATED_MAP_INDICES.put(map, count);
+            maps.set(count, map);
+            allocatedMapsCount = count + 1;
+
+            return map;
+        }
+    }
+
     /**
      * Allocates new map instance.
      *
      * @return newly allocated map with only blank renderer applied
      *
-     * @apiNote should be called only in case of need
+     * @apiNote should be called only in case of need while holding {@link #NEW_MAP_ALLOCATION_LOCK}
      */
-    @Synchronized
     private MapView allocateNewMap() {
         final MapView map;
         {
@@ -196,21 +258,8 @@ public class PlayerMapManager {
             map = Bukkit.createMap(worlds.get(0));
         }
 
-        try {
-            Files.write(
-                    IDS_LIST_FILE.toPath(),
-                    (getMapId(map) + System.lineSeparator()).getBytes(),
-                    StandardOpenOption.APPEND
-            );
-        } catch (final IOException e) {
-            throw new RuntimeException(
-                    "Couldn't write newly allocated ID to " + IDS_LIST_FILE.getName() + " of PlayerMapManager", e
-            );
-        }
-
         // clear renderers for map
         for (val renderer : map.getRenderers()) map.removeRenderer(renderer);
-        ALLOCATED_MAPS.add(map);
 
         return map;
     }
@@ -225,30 +274,16 @@ public class PlayerMapManager {
      *
      * @see #freeMap(Player, MapView) should be called whenever the player stops seeing this map or leaves the server
      */
-    @Synchronized
     public MapView allocateMap(final @NonNull Player player) {
-        val mapsOfPlayer = PLAYER_MAPS.get(player);
-
-        // if the player has all maps allocated of available than allocate another one (specially for him <3)
-        // this is a fast equivalent of iterating through each allocated map
-        // because only maps from allocatedMaps may be contained in mapsOfPlayers which is a Set
-        if (mapsOfPlayer.size() == ALLOCATED_MAPS.size()) {
-            val map = allocateNewMap();
-            mapsOfPlayer.add(map);
-
-            return map;
-        }
-        //otherwise take one of the available maps for him
-        for (val map : ALLOCATED_MAPS) if (!mapsOfPlayer.contains(map)) {
-            mapsOfPlayer.add(map);
-
-            return map;
+        // the index is only reserved atomically so that the map gets resolved (or allocated) without holding
+        // the player's entry as this calls Bukkit and its listeners which may allocate maps themselves
+        val index = PLAYER_MAP_INDICES.reserve(player);
+        try {
+            return allocatedMap(index);
+        } catch (final Throwable e) {
+            PLAYER_MAP_INDICES.release(player, index);
+            throw e;
         }
-
-        // this should never be reached
-        throw new IllegalStateException(
-                "Something went wrong, could not find any allocated map for the player although there should be one"
-        );
     }
 
     /**
@@ -261,9 +296,9 @@ public class PlayerMapManager {
      *
      * @see #allocateMap(Player) only obtained by calling this method should be freed
      */
-    @Synchronized
     public void freeMap(final @NonNull Player player, final @NonNull MapView map) {
-        PLAYER_MAPS.remove(player, map);
+        val index = ALLOCATED_MAP_INDICES.get(map);
+        if (index != null) PLAYER_MAP_INDICES.release(player, index);
         for (val renderer : map.getRenderers()) map.removeRenderer(renderer);
     }
 }
@@ -3,45 +3,201 @@ package ru.progrm_jarvis.minecraft.commons.mapimage.display;
 import com.comphenix.packetwrapper.WrapperPlayServerMap;
 import lombok.*;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import org.bukkit.entity.Player;
 import org.bukkit.map.MapView;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.Nullable;
 import ru.progrm_jarvis.javacommons.collection.MapUtil;
 import ru.progrm_jarvis.minecraft.commons.mapimage.MapImage;
+import ru.progrm_jarvis.minecraft.commons.mapimage.SharedMapImage;
 import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistries;
 import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistry;
 import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistryRegistration;
+import ru.progrm_jarvis.minecraft.commons.util.SystemPropertyUtil;
+import ru.progrm_jarvis.minecraft.commons.util.shutdown.Shutdownable;
 
 import java.util.*;
+import java.util.function.Consumer;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * {@link MapImageDisplay} sending map packets directly to the players.
+ * <p>
+ * Deltas of the image are either sent immediately or, if the flush interval is positive,
+ * get accumulated into a single changed segment which is sent once per the interval.
+ * <p>
+ * The packet of the whole image is built once per {@link MapImage#getModificationCount() modification}
+ * of the image (or each time if the image does not track its modifications) and is shared by all the players
+ * to whom it gets sent by a task sending at most {@link #FULL_IMAGES_PER_TICK} of them each tick.
+ * <p>
+ * If the display uses {@link MapUpdateBudget} then all the updates of the image (including the whole image
+ * sent to the added players) are queued in it instead of being sent immediately.
+ */
 @ToString
 @EqualsAndHashCode
 @FieldDefaults(level = AccessLevel.PROTECTED, makeFinal = true)
-public class ProtocolBasedMapImageDisplay implements MapImageDisplay {
+public class ProtocolBasedMapImageDisplay implements MapImageDisplay, Shutdownable {
+
+    /**
+     * Maximal number of players to whom the whole image is sent by a single display each tick.
+     */
+    protected static final int FULL_IMAGES_PER_TICK = Math.max(1, SystemPropertyUtil.getSystemPropertyInt(
+            ProtocolBasedMapImageDisplay.class.getCanonicalName() + ".full-images-per-tick", 16
+    ));
 
     @NonNull MapImage image;
     @NonNull Map<Player, MapView> playerMaps;
     @NonNull Set<Player> playersView;
     @Getter boolean global;
 
+    /**
+     * Plugin on behalf of which the tasks of this display are scheduled
+     */
+    @NonNull Plugin plugin;
+
+    /**
+     * Subscriber of this display on the image's updates
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @NonNull Consumer<MapImage.Delta> updateSubscriber;
+
+    /**
+     * Task flushing the accumulated changes or {@code null} if the deltas are sent immediately
+     */
+    @Nullable BukkitTask flushTask;
+
+    /**
+     * Lock guarding the bounds of the accumulated changed segment
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude
+    @SuppressWarnings("ZeroLengthArrayAllocation") Object changesLock = new Object[0];
+
+    /**
+     * The least X-coordinate of the accumulated changed segment.
+     */
+    @NonFinal int changedLeastX = MapImage.Delta.NONE,
+    /**
+     * The least Y-coordinate of the accumulated changed segment.
+     */
+    changedLeastY = MapImage.Delta.NONE,
+    /**
+     * The most X-coordinate of the accumulated changed segment.
+     */
+    changedMostX = MapImage.Delta.NONE,
+    /**
+     * The most Y-coordinate of the accumulated changed segment.
+     */
+    changedMostY = MapImage.Delta.NONE;
+
+    /**
+     * Flag indicating that the image is being updated by {@link #showFrame(MapImage.Delta, WrapperPlayServerMap, byte)}
+     * so that its update should not be sent by this display
+     */
+    @NonFinal boolean showingFrame;
+
+    /**
+     * Packet of the whole image (without the map ID set) built for the modification count of the image
+     * or {@code null} if it was not built yet
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @NonFinal volatile @Nullable VersionedMapPacket fullImagePacket;
+
+    /**
+     * Players to whom the whole image should be sent by {@link #fullImagesTask}
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @NonNull Set<Player> pendingFullImagePlayers = new LinkedHashSet<>();
+
+    /**
+     * Task sending the whole image to {@link #pendingFullImagePlayers}
+     * or {@code null} if there are no players to whom it should be sent
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @NonFinal @Nullable BukkitTask fullImagesTask;
+
+    /**
+     * Budget in which the updates are queued or {@code null} if they are sent immediately
+     */
+    @ToString.Exclude @EqualsAndHashCode.Exclude @Nullable MapUpdateBudget budget;
+
+    /**
+     * Priority of the updates of this display in {@link #budget} (e.g. higher for the more visible displays)
+     */
+    @Getter @Setter @NonFinal volatile int priority;
+
+    /**
+     * Creates new map image display.
+     *
+     * @param image image to display
+     * @param playerMaps map to be used for storing maps of the players
+     * @param plugin plugin on behalf of which the flushing task is scheduled
+     * @param global whether this display is global
+     * @param flushInterval interval (in ticks) at which the accumulated changes get sent
+     * or {@code 0} if the deltas should be sent immediately
+     * @param budget budget in which the updates should be queued or {@code null} if they should be sent immediately
+     * @param playerRegistry player registry to which this display should be registered
+     */
     @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
     public ProtocolBasedMapImageDisplay(final @NonNull MapImage image, final @NonNull Map<Player, MapView> playerMaps,
-                                        final @NonNull Plugin plugin, final boolean global,
+                                        final @NonNull Plugin plugin, final boolean global, final long flushInterval,
+                                        final @Nullable MapUpdateBudget budget,
                                         final @NonNull PlayerRegistry playerRegistry) {
+        checkArgument(flushInterval >= 0, "flushInterval should be non-negative");
+
         this.image = image;
         this.playerMaps = playerMaps;
         playersView = Collections.unmodifiableSet(playerMaps.keySet());
         this.global = global;
+        this.plugin = plugin;
+        this.budget = budget;
 
         playerRegistry.register(this);
-        image.subscribeOnUpdates(this::sendDeltaToAllPlayers);
+        if (flushInterval == 0) {
+            flushTask = null;
+            updateSubscriber = delta -> {
+                if (!showingFrame) sendDeltaToAllPlayers(delta);
+            };
+        } else {
+            flushTask = plugin.getServer().getScheduler().runTaskTimer(
+                    plugin, this::flush, flushInterval, flushInterval
+            );
+            updateSubscriber = delta -> {
+                if (!showingFrame) accumulateDelta(delta);
+            };
+        }
+        image.subscribeOnUpdates(updateSubscriber);
+    }
+
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public ProtocolBasedMapImageDisplay(final @NonNull MapImage image, final @NonNull Map<Player, MapView> playerMaps,
+                                        final @NonNull Plugin plugin, final boolean global, final long flushInterval,
+                                        final @Nullable MapUpdateBudget budget) {
+        this(image, playerMaps, plugin, global, flushInterval, budget, PlayerRegistries.defaultRegistry(plugin));
+    }
+
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public ProtocolBasedMapImageDisplay(final @NonNull MapImage image, final @NonNull Map<Player, MapView> playerMaps,
+                                        final @NonNull Plugin plugin, final boolean global, final long flushInterval,
+                                        final @NonNull PlayerRegistry playerRegistry) {
+        this(image, playerMaps, plugin, global, flushInterval, null, playerRegistry);
+    }
+
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public ProtocolBasedMapImageDisplay(final @NonNull MapImage image, final @NonNull Map<Player, MapView> playerMaps,
+                                        final @NonNull Plugin plugin, final boolean global, final long flushInterval) {
+        this(image, playerMaps, plugin, global, flushInterval, PlayerRegistries.defaultRegistry(plugin));
+    }
+
+    @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
+    public ProtocolBasedMapImageDisplay(final @NonNull MapImage image, final @NonNull Map<Player, MapView> playerMaps,
+                                        final @NonNull Plugin plugin, final boolean global,
+                                        final @NonNull PlayerRegistry playerRegistry) {
+        this(image, playerMaps, plugin, global, 0, playerRegistry);
     }
 
     @PlayerRegistryRegistration(PlayerRegistryRegistration.Policy.AUTO)
     public ProtocolBasedMapImageDisplay(final @NonNull MapImage image, final @NonNull Map<Player, MapView> playerMaps,
                                         final @NonNull Plugin plugin, final boolean global) {
-        this(image, playerMaps, plugin, global, PlayerRegistries.defaultRegistry(plugin));
+        this(image, playerMaps, plugin, global, 0);
     }
 
     @Override
@@ -55,25 +211,83 @@ public class ProtocolBasedMapImageDisplay implements MapImageDisplay {
      * @param player player to whom the image should be sent
      */
     protected void sendFullImage(final @NonNull Player player) {
-        new WrapperPlayServerMap() {{
-            setItemDamage(PlayerMapManager.getMapId(playerMaps.get(player)));
-            setScale(image.getDisplay());
-            setColumns(image.getWidth());
-            setRows(image.getHeight());
-            setX(0);
-            setZ(0);
-            setData(image.getMapData());
-        }}.sendPacket(player);
+        val map = playerMaps.get(player);
+        if (map != null) sendPacket(player, map, fullImagePacket());
     }
 
-    protected WrapperPlayServerMap newDeltaPacket(final @Nullable MapImage.Delta delta) {
+    /**
+     * Gets the packet of the whole image (without the map ID set) building it if the image was modified.
+     *
+     * @return packet of the whole image which should not be modified as it is shared
+     *
+     * @apiNote the packet is rebuilt on each call if the image does not track its modifications
+     */
+    protected WrapperPlayServerMap fullImagePacket() {
+        if (image instanceof SharedMapImage) {
+            // the packet of the shared pixels is shared by all the displays of identical images
+            val sharedPacket = ((SharedMapImage) image).getSharedFullImagePacket();
+            if (sharedPacket != null) return sharedPacket;
+        }
+
+        // the count is got before the data is copied so that the packet is never newer than the count
+        val modificationCount = image.getModificationCount();
+        // the segment is a copy of the image's data so that it is not changed after the packet is built
+        if (modificationCount < 0) return newSegmentPacket(0, 0, image.getWidth(), image.getHeight());
+
+        var packet = fullImagePacket;
+        if (packet == null || packet.getModificationCount() != modificationCount) {
+            fullImagePacket = packet = new VersionedMapPacket(
+                    modificationCount, newSegmentPacket(0, 0, image.getWidth(), image.getHeight())
+            );
+        }
+
+        return packet.getPacket();
+    }
+
+    /**
+     * Sends the whole image to the players added to this display since the previous call.
+     *
+     * @apiNote this is called each tick while there are such players
+     */
+    protected void sendPendingFullImages() {
+        val players = new ArrayList<Player>(FULL_IMAGES_PER_TICK);
+        synchronized (pendingFullImagePlayers) {
+            val iterator = pendingFullImagePlayers.iterator();
+            while (iterator.hasNext() && players.size() < FULL_IMAGES_PER_TICK) {
+                players.add(iterator.next());
+                iterator.remove();
+            }
+            if (pendingFullImagePlayers.isEmpty() && fullImagesTask != null) {
+                fullImagesTask.cancel();
+                fullImagesTask = null;
+            }
+        }
+
+        for (val player : players) sendFullImage(player);
+    }
+
+    protected WrapperPlayServerMap newDeltaPacket(final @NonNull MapImage.Delta delta) {
+        return newSegmentPacket(delta.leastX(), delta.leastY(), delta.width(), delta.height());
+    }
+
+    /**
+     * Creates new packet containing the segment of the image (without the map ID set).
+     *
+     * @param leastX least X-coordinate of the segment
+     * @param leastY least Y-coordinate of the segment
+     * @param width width of the segment
+     * @param height height of the segment
+     * @return created packet
+     */
+    protected WrapperPlayServerMap newSegmentPacket(final int leastX, final int leastY,
+                                                    final int width, final int height) {
         return new WrapperPlayServerMap() {{
             setScale(image.getDisplay());
-            setColumns(delta.width());
-            setRows(delta.height());
-            setX(delta.leastX());
-            setZ(delta.leastY());
-            setData(image.getMapData(delta));
+            setColumns(width);
+            setRows(height);
+            setX(leastX);
+            setZ(leastY);
+            setData(image.getMapData(leastX, leastY, width, height));
         }};
     }
 
@@ -86,34 +300,213 @@ public class ProtocolBasedMapImageDisplay implements MapImageDisplay {
         packet.sendPacket(player);
     }
 
+    /**
+     * Sends the shared packet to the player changing only the map ID of its copy.
+     *
+     * @param player player to whom the packet should be sent
+     * @param map map of the player
+     * @param packet packet to send (without the map ID set) which itself is not modified
+     */
+    protected void sendPacket(final @NonNull Player player, final @NonNull MapView map,
+                              final @NonNull WrapperPlayServerMap packet) {
+        // the copy shares the packet's data while not being affected by the map IDs of the other players
+        val playerPacket = new WrapperPlayServerMap(packet.getHandle().shallowClone());
+        playerPacket.setItemDamage(PlayerMapManager.getMapId(map));
+
+        playerPacket.sendPacket(player);
+    }
+
+    /**
+     * Sends the current content of the image's segment to the player.
+     *
+     * @param player player to whom the segment should be sent
+     * @param map map of the player
+     * @param leastX least X-coordinate of the segment
+     * @param leastY least Y-coordinate of the segment
+     * @param width width of the segment
+     * @param height height of the segment
+     *
+     * @see MapUpdateBudget budget which uses this method to send the queued updates
+     */
+    protected void sendSegment(final @NonNull Player player, final @NonNull MapView map,
+                               final int leastX, final int leastY, final int width, final int height) {
+        // the map might have been freed while the update was queued
+        if (playerMaps.get(player) != map) return;
+
+        if (width == image.getWidth() && height == image.getHeight()) sendPacket(player, map, fullImagePacket());
+        else {
+            val packet = newSegmentPacket(leastX, leastY, width, height);
+            packet.setItemDamage(PlayerMapManager.getMapId(map));
+
+            packet.sendPacket(player);
+        }
+    }
+
+    /**
+     * Queues the image's segment to be sent to all players in {@link #budget}.
+     *
+     * @param leastX least X-coordinate of the segment
+     * @param leastY least Y-coordinate of the segment
+     * @param width width of the segment
+     * @param height height of the segment
+     */
+    protected void queueSegmentToAllPlayers(final int leastX, final int leastY, final int width, final int height) {
+        val budget = this.budget;
+        assert budget != null;
+
+        for (val entry : playerMaps.entrySet()) budget.queue(
+                entry.getKey(), this, entry.getValue(), leastX, leastY, width, height
+        );
+    }
+
     protected void sendDeltaToAllPlayers(final @NonNull MapImage.Delta delta) {
         if (delta.isEmpty()) return;
 
-        val packet = newDeltaPacket(delta);
+        if (budget == null) sendPacketToAllPlayers(newDeltaPacket(delta));
+        else queueSegmentToAllPlayers(delta.leastX(), delta.leastY(), delta.width(), delta.height());
+    }
+
+    /**
+     * Sends the packet to all players changing only the map IDs of its copies.
+     *
+     * @param packet packet to send (without the map ID set) which itself is not modified
+     */
+    protected void sendPacketToAllPlayers(final @NonNull WrapperPlayServerMap packet) {
+        for (val entry : playerMaps.entrySet()) sendPacket(entry.getKey(), entry.getValue(), packet);
+    }
+
+    /**
+     * Shows the frame updating the image with the delta and sending the prebuilt packet of it to all players
+     * instead of building a new one so that the packets of the frame can be shared by multiple displays.
+     *
+     * @param delta delta of the frame to apply to the image
+     * @param packet packet of the delta (without the map ID set)
+     * @param unusedColor color not used by the pixels of the delta
+     *
+     * @see MapAnimationPlayer the player of animations which uses this method
+     */
+    protected void showFrame(final @NonNull MapImage.Delta delta, final @NonNull WrapperPlayServerMap packet,
+                             final byte unusedColor) {
+        if (delta.isEmpty()) return;
+
+        showingFrame = true;
+        try {
+            image.drawer().blit(
+                    delta.pixels(), delta.width(), delta.height(), delta.leastX(), delta.leastY(), unusedColor
+            );
+        } finally {
+            showingFrame = false;
+        }
+
+        if (playerMaps.isEmpty()) return;
+        if (budget == null) sendPacketToAllPlayers(packet);
+        else queueSegmentToAllPlayers(delta.leastX(), delta.leastY(), delta.width(), delta.height());
+    }
+
+    /**
+     * Accumulates the delta into the changed segment which is sent on the next {@link #flush()}.
+     *
+     * @param delta delta to accumulate
+     */
+    protected void accumulateDelta(final @NonNull MapImage.Delta delta) {
+        if (delta.isEmpty()) return;
 
-        for (val entry : playerMaps.entrySet()) {
-            packet.setItemDamage(PlayerMapManager.getMapId(entry.getValue()));
-            packet.sendPacket(entry.getKey());
+        final int leastX = delta.leastX(), leastY = delta.leastY(),
+                mostX = leastX + delta.width() - 1, mostY = leastY + delta.height() - 1;
+        synchronized (changesLock) {
+            if (changedLeastX == MapImage.Delta.NONE) {
+                changedLeastX = leastX;
+                changedLeastY = leastY;
+                changedMostX = mostX;
+                changedMostY = mostY;
+            } else {
+                if (leastX < changedLeastX) changedLeastX = leastX;
+                if (leastY < changedLeastY) changedLeastY = leastY;
+                if (mostX > changedMostX) changedMostX = mostX;
+                if (mostY > changedMostY) changedMostY = mostY;
+            }
         }
     }
 
+    /**
+     * Sends the changes accumulated since the previous flush to all players as a single packet.
+     *
+     * @apiNote this is called periodically if the flush interval is positive
+     */
+    public void flush() {
+        final int leastX, leastY, mostX, mostY;
+        synchronized (changesLock) {
+            if ((leastX = changedLeastX) == MapImage.Delta.NONE) return;
+
+            leastY = changedLeastY;
+            mostX = changedMostX;
+            mostY = changedMostY;
+            changedLeastX = changedLeastY = changedMostX = changedMostY = MapImage.Delta.NONE;
+        }
+
+        if (playerMaps.isEmpty()) return;
+        final int width = mostX - leastX + 1, height = mostY - leastY + 1;
+        if (budget == null) sendPacketToAllPlayers(newSegmentPacket(leastX, leastY, width, height));
+        else queueSegmentToAllPlayers(leastX, leastY, width, height);
+    }
+
+    /**
+     * Stops sending the image's updates to the players.
+     * Changes accumulated but not yet flushed are sent unless the updates are queued in {@link #budget}
+     * in which case all the pending updates of this display are discarded.
+     */
+    @Override
+    public void shutdown() {
+        image.unsubscribeFromUpdates(updateSubscriber);
+        if (flushTask != null) {
+            flushTask.cancel();
+            if (budget == null) flush();
+        }
+        synchronized (pendingFullImagePlayers) {
+            pendingFullImagePlayers.clear();
+            if (fullImagesTask != null) {
+                fullImagesTask.cancel();
+                fullImagesTask = null;
+            }
+        }
+        if (budget != null) for (val entry : playerMaps.entrySet()) budget.discard(entry.getKey(), entry.getValue());
+    }
+
     @Override
     public void addPlayer(final Player player) {
         // computeIfAbsent not to allocate the ID if the player is already contained (and so has ID allocated)
-        playerMaps.computeIfAbsent(player, p -> {
+        val playerMap = playerMaps.computeIfAbsent(player, p -> {
             val map = PlayerMapManager.allocateMap(player);
             // although the rendering is contextual there is no need to use Bukkit's contextual renderer
             map.addRenderer(BlankMapRenderer.NON_CONTEXTUAL);
 
             return map;
         });
-        sendFullImage(player);
+
+        if (budget != null) {
+            budget.queue(player, this, playerMap, 0, 0, image.getWidth(), image.getHeight());
+
+            return;
+        }
+        // the image is sent later so that the players added at once do not get it all in a single tick
+        synchronized (pendingFullImagePlayers) {
+            pendingFullImagePlayers.add(player);
+            if (fullImagesTask == null) fullImagesTask = plugin.getServer().getScheduler().runTaskTimer(
+                    plugin, this::sendPendingFullImages, 1, 1
+            );
+        }
     }
 
     @Override
     public void removePlayer(final Player player) {
+        synchronized (pendingFullImagePlayers) {
+            pendingFullImagePlayers.remove(player);
+        }
         val map = playerMaps.remove(player);
-        if (map != null) /* null-check just in case */ PlayerMapManager.freeMap(player, map);
+        if (map != null) /* null-check just in case */ {
+            if (budget != null) budget.discard(player, map);
+            PlayerMapManager.freeMap(player, map);
+        }
     }
 
     @Override
@@ -0,0 +1,22 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import com.comphenix.packetwrapper.WrapperPlayServerMap;
+import lombok.Value;
+
+/**
+ * Packet (without the map ID set) built for the specific {@link
+ * ru.progrm_jarvis.minecraft.commons.mapimage.MapImage#getModificationCount() modification count} of the image.
+ */
+@Value
+class VersionedMapPacket {
+
+    /**
+     * Modification count of the image for which the packet was built
+     */
+    int modificationCount;
+
+    /**
+     * Packet built
+     */
+    WrapperPlayServerMap packet;
+}
@@ -1,7 +1,9 @@
 package ru.progrm_jarvis.minecraft.commons.util.image;
 
+import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 import lombok.val;
+import lombok.var;
 import org.jetbrains.annotations.Contract;
 
 import static java.lang.Math.min;
@@ -131,4 +133,45 @@ public class ColorUtil {
                 min((blue(backgroundColor) * backgroundAlpha + blue(foregroundColor) * foregroundAlpha) / 255, 255)
         );
     }
+
+    /**
+     * Blends the ranges of ARGB colors into one respecting alphas
+     * so that each of the target colors is the result of {@link #blendColors(int, int)}.
+     *
+     * @param backgroundColors array of background colors as standard {@code int}-ARGB
+     * @param backgroundOffset offset of the first background color in its array
+     * @param foregroundColors array of foreground colors as standard {@code int}-ARGB
+     * @param foregroundOffset offset of the first foreground color in its array
+     * @param targetColors array to which to write the blended colors, may be the array of background colors
+     * @param targetOffset offset of the first blended color in its array
+     * @param length number of colors to blend
+     * @return the given target array with the blended colors written to it
+     *
+     * @implNote alphas of the whole range of foreground colors are checked first in a branch-free loop
+     * so that fully transparent and fully opaque ranges (which are the common case for overlays)
+     * get copied as a whole instead of being blended color-by-color
+     */
+    @Contract("null, _, _, _, _, _, _ -> fail; _, _, null, _, _, _, _ -> fail; _, _, _, _, null, _, _ -> fail; "
+            + "_, _, _, _, _, _, _ -> param5")
+    public int[] blendColors(final @NonNull int[] backgroundColors, final int backgroundOffset,
+                             final @NonNull int[] foregroundColors, final int foregroundOffset,
+                             final @NonNull int[] targetColors, final int targetOffset, final int length) {
+        int allBits = -1, anyBits = 0;
+        for (var i = 0; i < length; i++) {
+            val foregroundColor = foregroundColors[foregroundOffset + i];
+            allBits &= foregroundColor;
+            anyBits |= foregroundColor;
+        }
+
+        if (alpha(anyBits) == 0x0) {
+            if (targetColors != backgroundColors || targetOffset != backgroundOffset) System
+                    .arraycopy(backgroundColors, backgroundOffset, targetColors, targetOffset, length);
+        } else if (alpha(allBits) == 0xFF) System
+                .arraycopy(foregroundColors, foregroundOffset, targetColors, targetOffset, length);
+        else for (var i = 0; i < length; i++) targetColors[targetOffset + i] = blendColors(
+                backgroundColors[backgroundOffset + i], foregroundColors[foregroundOffset + i]
+        );
+
+        return targetColors;
+    }
 }
@@ -5,8 +5,10 @@ import lombok.experimental.UtilityClass;
 import lombok.val;
 import lombok.var;
 import org.jetbrains.annotations.Contract;
+import ru.progrm_jarvis.minecraft.commons.util.SystemPropertyUtil;
 
-import java.awt.image.BufferedImage;
+import java.awt.image.*;
+import java.util.stream.IntStream;
 
 import static java.lang.Math.min;
 
@@ -16,6 +18,13 @@ import static java.lang.Math.min;
 @UtilityClass
 public class ImageUtil {
 
+    /**
+     * Minimal number of pixels of a region for its rows to be merged in parallel.
+     */
+    private final int PARALLEL_MERGE_THRESHOLD = SystemPropertyUtil.getSystemPropertyInt(
+            ImageUtil.class.getCanonicalName() + ".parallel-merge-threshold", 1 << 16
+    );
+
     /**
      * Clones the BufferedImage into a new one.
      *
@@ -59,7 +68,9 @@ public class ImageUtil {
      * @param foregrounds images to merge to the foreground
      * @return the given background with foregrounds merged
      *
-     * @implNote current implementation is based on pixel-by-pixel operation
+     * @implNote the pixels of each image are read at once and get blended row-by-row
+     * (in parallel for big images) by {@link #mergeSharp(int[], int, int, int[], int, int, int, int)};
+     * pixels of {@link BufferedImage#TYPE_INT_ARGB} background are blended in its raster without being copied
      *
      * @see #clone(BufferedImage) should be used to keep your source image unmodified
      * @see ColorUtil#blendColors(int, int) used color blending algorithm
@@ -69,14 +80,224 @@ public class ImageUtil {
                                     final @NonNull BufferedImage... foregrounds) {
         final int width = background.getWidth(), height = background.getHeight();
 
+        final int[] backgroundPixels;
+        final int backgroundOffset, backgroundScanSize;
+        val direct = background.getType() == BufferedImage.TYPE_INT_ARGB;
+        if (direct) {
+            val raster = background.getRaster();
+            val dataBuffer = raster.getDataBuffer();
+            val sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+
+            backgroundPixels = ((DataBufferInt) dataBuffer).getData();
+            backgroundOffset = dataBuffer.getOffset() + sampleModel.getOffset(
+                    -raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY()
+            );
+            backgroundScanSize = sampleModel.getScanlineStride();
+        } else {
+            backgroundPixels = getRgb(background, 0, 0, width, height, new int[width * height], 0, width);
+            backgroundOffset = 0;
+            backgroundScanSize = width;
+        }
+
         for (val foreground : foregrounds) {
             final int foregroundWidth = min(width, foreground.getWidth()),
                     foregroundHeight = min(height, foreground.getHeight());
 
-            for (var x = 0; x < foregroundWidth; x++) for (var y = 0; y < foregroundHeight; y++) background
-                    .setRGB(x, y, ColorUtil.blendColors(background.getRGB(x, y), foreground.getRGB(x, y)));
+            mergeSharp(
+                    backgroundPixels, backgroundOffset, backgroundScanSize,
+                    getRgb(
+                            foreground, 0, 0, foregroundWidth, foregroundHeight,
+                            new int[foregroundWidth * foregroundHeight], 0, foregroundWidth
+                    ), 0, foregroundWidth,
+                    foregroundWidth, foregroundHeight
+            );
         }
 
+        if (!direct) setRgb(background, 0, 0, width, height, backgroundPixels, 0, width);
+
         return background;
     }
+
+    /**
+     * Merges the ARGB pixels of the foreground into the background ones using {@link ColorUtil#blendColors(int, int)}.
+     *
+     * @param background array of pixels of the background to which to merge the foreground
+     * @param backgroundOffset offset of the first pixel of the background in its array
+     * @param backgroundScanSize distance between the starts of the rows of the background in its array
+     * @param foreground array of pixels of the foreground
+     * @param foregroundOffset offset of the first pixel of the foreground in its array
+     * @param foregroundScanSize distance between the starts of the rows of the foreground in its array
+     * @param width width of the merged region
+     * @param height height of the merged region
+     * @return the given background array with the foreground merged into it
+     *
+     * @implNote the rows are merged in parallel if the region has at least {@link #PARALLEL_MERGE_THRESHOLD} pixels
+     *
+     * @see ColorUtil#blendColors(int[], int, int[], int, int[], int, int) used for blending of each row
+     */
+    @Contract("null, _, _, _, _, _, _, _ -> fail; _, _, _, null, _, _, _, _ -> fail; _, _, _, _, _, _, _, _ -> param1")
+    public int[] mergeSharp(final @NonNull int[] background, final int backgroundOffset, final int backgroundScanSize,
+                            final @NonNull int[] foreground, final int foregroundOffset, final int foregroundScanSize,
+                            final int width, final int height) {
+        val rows = IntStream.range(0, height);
+        (width * height < PARALLEL_MERGE_THRESHOLD ? rows : rows.parallel()).forEach(row -> ColorUtil.blendColors(
+                background, backgroundOffset + row * backgroundScanSize,
+                foreground, foregroundOffset + row * foregroundScanSize,
+                background, backgroundOffset + row * backgroundScanSize, width
+        ));
+
+        return background;
+    }
+
+    /**
+     * Reads ARGB pixels of the image's region into the array.
+     * This is equivalent to {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}
+     * but reads the raster's data buffer directly whenever the image type allows it.
+     *
+     * @param image image whose pixels to read
+     * @param x X-coordinate of the region's upper-left corner
+     * @param y Y-coordinate of the region's upper-left corner
+     * @param width width of the region
+     * @param height height of the region
+     * @param target array to which the pixels should be written
+     * @param offset offset in the array at which the pixels should start
+     * @param scanSize distance between the starts of the rows in the array
+     * @return the given array with pixels read into it
+     *
+     * @implNote direct reading is available for {@link BufferedImage#TYPE_INT_ARGB}, {@link BufferedImage#TYPE_INT_RGB},
+     * {@link BufferedImage#TYPE_3BYTE_BGR} and {@link BufferedImage#TYPE_4BYTE_ABGR} images
+     */
+    @Contract("null, _, _, _, _, _, _, _ -> fail; _, _, _, _, _, null, _, _ -> fail; _, _, _, _, _, _, _, _ -> param6")
+    public int[] getRgb(final @NonNull BufferedImage image, final int x, final int y, final int width, final int height,
+                        final @NonNull int[] target, final int offset, final int scanSize) {
+        val raster = image.getRaster();
+        final int sampleModelX = x - raster.getSampleModelTranslateX(),
+                sampleModelY = y - raster.getSampleModelTranslateY();
+        val dataBuffer = raster.getDataBuffer();
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_RGB: {
+                val data = ((DataBufferInt) dataBuffer).getData();
+                val sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+                final int scanlineStride = sampleModel.getScanlineStride(),
+                        // alpha has to be added for images without it
+                        alphaMask = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+
+                var sourceOffset = dataBuffer.getOffset() + sampleModel.getOffset(sampleModelX, sampleModelY);
+                var targetOffset = offset;
+                for (var row = 0; row < height; row++, sourceOffset += scanlineStride, targetOffset += scanSize) {
+                    if (alphaMask == 0) System.arraycopy(data, sourceOffset, target, targetOffset, width);
+                    else for (var column = 0; column < width; column++) target[targetOffset + column]
+                            = data[sourceOffset + column] | alphaMask;
+                }
+
+                return target;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                val data = ((DataBufferByte) dataBuffer).getData();
+                val sampleModel = (ComponentSampleModel) raster.getSampleModel();
+                val bandOffsets = sampleModel.getBandOffsets();
+                final int scanlineStride = sampleModel.getScanlineStride(), pixelStride = sampleModel.getPixelStride(),
+                        redOffset = bandOffsets[0], greenOffset = bandOffsets[1], blueOffset = bandOffsets[2],
+                        // negative offset is used for images without alpha
+                        alphaOffset = bandOffsets.length > 3 ? bandOffsets[3] : -1;
+
+                var rowOffset = dataBuffer.getOffset() + sampleModelY * scanlineStride + sampleModelX * pixelStride;
+                var targetOffset = offset;
+                for (var row = 0; row < height; row++, rowOffset += scanlineStride, targetOffset += scanSize) {
+                    var sourceOffset = rowOffset;
+                    for (var column = 0; column < width; column++, sourceOffset += pixelStride) target[
+                            targetOffset + column
+                            ] = (alphaOffset < 0 ? 0xFF000000 : (data[sourceOffset + alphaOffset] & 0xFF) << 24)
+                            | (data[sourceOffset + redOffset] & 0xFF) << 16
+                            | (data[sourceOffset + greenOffset] & 0xFF) << 8
+                            | data[sourceOffset + blueOffset] & 0xFF;
+                }
+
+                return target;
+            }
+            default: return image.getRGB(x, y, width, height, target, offset, scanSize);
+        }
+    }
+
+    /**
+     * Writes ARGB pixels from the array into the image's region.
+     * This is equivalent to {@link BufferedImage#setRGB(int, int, int, int, int[], int, int)}
+     * but writes the raster's data buffer directly whenever the image type allows it.
+     *
+     * @param image image whose pixels to write
+     * @param x X-coordinate of the region's upper-left corner
+     * @param y Y-coordinate of the region's upper-left corner
+     * @param width width of the region
+     * @param height height of the region
+     * @param source array from which the pixels should be read
+     * @param offset offset in the array at which the pixels start
+     * @param scanSize distance between the starts of the rows in the array
+     * @return the given image with pixels written into it
+     *
+     * @implNote direct writing is available for {@link BufferedImage#TYPE_INT_ARGB}, {@link BufferedImage#TYPE_INT_RGB},
+     * {@link BufferedImage#TYPE_3BYTE_BGR} and {@link BufferedImage#TYPE_4BYTE_ABGR} images
+     */
+    @Contract("null, _, _, _, _, _, _, _ -> fail; _, _, _, _, _, null, _, _ -> fail; _, _, _, _, _, _, _, _ -> param1")
+    public BufferedImage setRgb(final @NonNull BufferedImage image, final int x, final int y,
+                                final int width, final int height,
+                                final @NonNull int[] source, final int offset, final int scanSize) {
+        val raster = image.getRaster();
+        final int sampleModelX = x - raster.getSampleModelTranslateX(),
+                sampleModelY = y - raster.getSampleModelTranslateY();
+        val dataBuffer = raster.getDataBuffer();
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_RGB: {
+                val data = ((DataBufferInt) dataBuffer).getData();
+                val sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+                final int scanlineStride = sampleModel.getScanlineStride(),
+                        // alpha has to be dropped for images without it
+                        rgbMask = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFFFFFF : -1;
+
+                var targetOffset = dataBuffer.getOffset() + sampleModel.getOffset(sampleModelX, sampleModelY);
+                var sourceOffset = offset;
+                for (var row = 0; row < height; row++, targetOffset += scanlineStride, sourceOffset += scanSize) {
+                    if (rgbMask == -1) System.arraycopy(source, sourceOffset, data, targetOffset, width);
+                    else for (var column = 0; column < width; column++) data[targetOffset + column]
+                            = source[sourceOffset + column] & rgbMask;
+                }
+
+                return image;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                val data = ((DataBufferByte) dataBuffer).getData();
+                val sampleModel = (ComponentSampleModel) raster.getSampleModel();
+                val bandOffsets = sampleModel.getBandOffsets();
+                final int scanlineStride = sampleModel.getScanlineStride(), pixelStride = sampleModel.getPixelStride(),
+                        redOffset = bandOffsets[0], greenOffset = bandOffsets[1], blueOffset = bandOffsets[2],
+                        // negative offset is used for images without alpha
+                        alphaOffset = bandOffsets.length > 3 ? bandOffsets[3] : -1;
+
+                var rowOffset = dataBuffer.getOffset() + sampleModelY * scanlineStride + sampleModelX * pixelStride;
+                var sourceOffset = offset;
+                for (var row = 0; row < height; row++, rowOffset += scanlineStride, sourceOffset += scanSize) {
+                    var targetOffset = rowOffset;
+                    for (var column = 0; column < width; column++, targetOffset += pixelStride) {
+                        val rgb = source[sourceOffset + column];
+                        if (alphaOffset >= 0) data[targetOffset + alphaOffset] = (byte) (rgb >>> 24);
+                        data[targetOffset + redOffset] = (byte) (rgb >>> 16);
+                        data[targetOffset + greenOffset] = (byte) (rgb >>> 8);
+                        data[targetOffset + blueOffset] = (byte) rgb;
+                    }
+                }
+
+                return image;
+            }
+            default: {
+                image.setRGB(x, y, width, height, source, offset, scanSize);
+
+                return image;
+            }
+        }
+    }
 }
@@ -0,0 +1,345 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.*;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR_CODE;
+
+class DefaultMapImageTest {
+
+    private static DefaultMapImage randomImage(final Random random) {
+        val pixels = new byte[PIXELS_COUNT];
+        random.nextBytes(pixels);
+
+        return new DefaultMapImage(pixels, (byte) 0);
+    }
+
+    @Test
+    void testGetMapDataSegment() {
+        val random = new Random();
+        val image = randomImage(random);
+        val pixels = image.getMapData();
+
+        for (var i = 0; i < 256; i++) {
+            final int width = 1 + random.nextInt(WIDTH), height = 1 + random.nextInt(HEIGHT),
+                    leastX = random.nextInt(WIDTH - width + 1), leastY = random.nextInt(HEIGHT - height + 1);
+
+            val data = image.getMapData(leastX, leastY, width, height);
+            assertEquals(width * height, data.length);
+            for (var y = 0; y < height; y++) for (var x = 0; x < width; x++) assertEquals(
+                    pixels[leastX + x + (leastY + y) * WIDTH], data[x + y * width]
+            );
+
+            assertArrayEquals(data, image.getMapData(Delta.of(new byte[width * height], width, leastX, leastY)));
+        }
+
+        assertArrayEquals(pixels, image.getMapData(0, 0, WIDTH, HEIGHT));
+    }
+
+    @Test
+    void testGetMapDataSegmentToTarget() {
+        val image = randomImage(new Random());
+
+        val target = new byte[3 + 10 * 20 + 5];
+        assertSame(target, image.getMapData(7, 100, 10, 20, target, 3));
+        assertArrayEquals(image.getMapData(7, 100, 10, 20), Arrays.copyOfRange(target, 3, 3 + 10 * 20));
+        // bytes out of the segment are not touched
+        for (var i = 0; i < 3; i++) assertEquals(0, target[i]);
+        for (var i = 3 + 10 * 20; i < target.length; i++) assertEquals(0, target[i]);
+
+        assertThrows(IllegalArgumentException.class, () -> image.getMapData(120, 0, 9, 1));
+        assertThrows(IllegalArgumentException.class, () -> image.getMapData(0, -1, 1, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> image.getMapData(0, 0, 10, 10, new byte[99], 0));
+    }
+
+    @Test
+    void testSubscribers() {
+        val image = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        val updates = new ArrayList<Delta>();
+        final Consumer<Delta> subscriber = updates::add;
+        val queuedTasks = new ArrayList<Runnable>();
+        val asyncUpdates = new ArrayList<Delta>();
+        final Consumer<Delta> asyncSubscriber = asyncUpdates::add;
+        // a subscriber unsubscribing itself while the subscribers are being notified
+        image.subscribeOnUpdates(new Consumer<Delta>() {
+            @Override
+            public void accept(final Delta delta) {
+                image.unsubscribeFromUpdates(this);
+            }
+        });
+        image.subscribeOnUpdates(subscriber);
+        image.subscribeOnUpdates(asyncSubscriber, queuedTasks::add);
+
+        val drawer = image.bufferedDrawer();
+        drawer.px(1, 1, (byte) 1);
+        drawer.dispose();
+        assertEquals(1, updates.size());
+        assertTrue(asyncUpdates.isEmpty());
+        assertEquals(1, queuedTasks.size());
+        queuedTasks.get(0).run();
+        assertEquals(updates, asyncUpdates);
+
+        image.unsubscribeFromUpdates(subscriber);
+        image.unsubscribeFromUpdates(asyncSubscriber);
+        drawer.px(2, 2, (byte) 2);
+        drawer.dispose();
+        assertEquals(1, updates.size());
+        assertEquals(1, queuedTasks.size());
+    }
+
+    @Test
+    void testBufferedDrawerSplitsDistantChanges() {
+        val image = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        val updates = new ArrayList<Delta>();
+        image.subscribeOnUpdates(updates::add);
+
+        val drawer = image.bufferedDrawer();
+        assertTrue(drawer.getDeltas().isEmpty());
+        assertTrue(drawer.dispose().isEmpty());
+
+        drawer.px(1, 2, (byte) 4).px(126, 125, (byte) 5).px(3, 1, (byte) 6);
+        assertEquals(1, drawer.getLeastChangedX());
+        assertEquals(1, drawer.getLeastChangedY());
+        assertEquals(126, drawer.getMostChangedX());
+        assertEquals(125, drawer.getMostChangedY());
+
+        val boundingDelta = drawer.getDelta();
+        assertEquals(126, boundingDelta.width());
+        assertEquals(125, boundingDelta.height());
+
+        val deltas = drawer.dispose();
+        assertEquals(deltas, updates);
+        assertEquals(2, deltas.size());
+        assertEquals(new Delta.NonEmpty(new byte[]{NO_COLOR_CODE, NO_COLOR_CODE, 6, 4, NO_COLOR_CODE, NO_COLOR_CODE},
+                3, 1, 1), deltas.get(0));
+        assertEquals(new Delta.SinglePixel((byte) 5, 126, 125), deltas.get(1));
+
+        val pixels = image.getMapData();
+        assertEquals(4, pixels[1 + 2 * WIDTH]);
+        assertEquals(5, pixels[126 + 125 * WIDTH]);
+        assertEquals(6, pixels[3 + WIDTH]);
+        // pixels not drawn are kept
+        assertEquals(0, pixels[2 + WIDTH]);
+
+        assertTrue(drawer.getDeltas().isEmpty());
+        assertSame(Delta.EMPTY, drawer.getDelta());
+    }
+
+    @Test
+    void testBufferedDrawerMergesTiles() {
+        val image = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        val drawer = image.bufferedDrawer();
+
+        // rectangle spanning multiple tiles is a single delta
+        drawer.rect(10, 20, 70, 40, (byte) 3);
+        val deltas = drawer.getDeltas();
+        assertEquals(1, deltas.size());
+        val delta = deltas.get(0);
+        assertEquals(10, delta.leastX());
+        assertEquals(20, delta.leastY());
+        assertEquals(61, delta.width());
+        assertEquals(21, delta.height());
+        drawer.dispose();
+
+        drawer.fill((byte) 7);
+        val fillDeltas = drawer.dispose();
+        assertEquals(1, fillDeltas.size());
+        assertEquals(WIDTH, fillDeltas.get(0).width());
+        assertEquals(HEIGHT, fillDeltas.get(0).height());
+        for (val pixel : image.getMapData()) assertEquals(7, pixel);
+    }
+
+    @Test
+    void testBufferedDrawerRandomChanges() {
+        val random = new Random();
+        val image = randomImage(random);
+        val expected = image.getMapData().clone();
+        val drawer = image.bufferedDrawer();
+
+        for (var iteration = 0; iteration < 64; iteration++) {
+            val changed = new boolean[PIXELS_COUNT];
+            for (var i = random.nextInt(32); i >= 0; i--) {
+                final int x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+                byte color;
+                do color = (byte) random.nextInt(); while (color == NO_COLOR_CODE);
+
+                drawer.px(x, y, color);
+                expected[x + y * WIDTH] = color;
+                changed[x + y * WIDTH] = true;
+            }
+
+            val covered = new boolean[PIXELS_COUNT];
+            for (val delta : drawer.dispose()) for (var y = 0; y < delta.height(); y++) for (
+                    var x = 0; x < delta.width(); x++
+            ) {
+                val index = delta.leastX() + x + (delta.leastY() + y) * WIDTH;
+                // deltas do not overlap
+                assertFalse(covered[index]);
+                covered[index] = true;
+            }
+            for (var i = 0; i < PIXELS_COUNT; i++) if (changed[i]) assertTrue(covered[i]);
+
+            assertArrayEquals(expected, image.getMapData());
+        }
+    }
+
+    /**
+     * Creates a drawer using only default implementations of {@link MapImage.Drawer} methods.
+     *
+     * @param pixels pixels on which the drawer should draw
+     * @return created drawer
+     */
+    private static MapImage.Drawer defaultDrawer(final byte[] pixels) {
+        return new MapImage.Drawer() {
+            @Override
+            public MapImage.Drawer px(final int x, final int y, final byte color) {
+                pixels[x + y * WIDTH] = color;
+
+                return this;
+            }
+
+            @Override
+            public MapImage.Drawer fill(final byte color) {
+                Arrays.fill(pixels, color);
+
+                return this;
+            }
+        };
+    }
+
+    private static void draw(final MapImage.Drawer drawer, final MapImage source) {
+        val sprite = new byte[20 * 10];
+        for (var i = 0; i < sprite.length; i++) sprite[i] = (byte) (i % 3 == 0 ? 0 : i);
+
+        drawer
+                .span(-5, 200, 0, (byte) 1)
+                .span(90, 10, 127, (byte) 2)
+                .span(0, 10, 128, (byte) 3)
+                // fully off-image spans and shapes are not drawn on the edges
+                .span(-10, -5, 20, (byte) 9)
+                .span(200, 130, 21, (byte) 9)
+                .round(-40, 60, 10, (byte) 9)
+                .round(170, 60, 10, (byte) 9)
+                .rect(100, 3, 20, 50, (byte) 4)
+                .line(0, 127, 127, 0, (byte) 5)
+                .line(3, 7, 3, 90, (byte) 6)
+                .round(64, 64, 30, (byte) 7)
+                .round(0, 127, 15, (byte) 8)
+                .blit(sprite, 20, 10, 115, -3, (byte) 0)
+                .blit(sprite, 20, 10, 40, 40, (byte) 0)
+                .copyRegion(source, 10, 10, 30, 30, 110, 110)
+                .copyRegion(source, 0, 0, 5, 5, 5, 80);
+    }
+
+    @Test
+    void testDrawerPrimitives() {
+        val random = new Random();
+        val source = randomImage(random);
+
+        val expected = new byte[PIXELS_COUNT];
+        draw(defaultDrawer(expected), source);
+
+        // sanity checks of the default implementations
+        assertEquals(7, expected[64 + 64 * WIDTH]);
+        assertEquals(7, expected[94 + 64 * WIDTH]);
+        assertEquals(7, expected[64 + 34 * WIDTH]);
+        assertNotEquals(7, expected[94 + 94 * WIDTH]);
+        assertEquals(8, expected[15 + 127 * WIDTH]);
+        assertNotEquals(8, expected[11 + 116 * WIDTH]);
+        for (var y = 20; y <= 70; y++) {
+            assertNotEquals(9, expected[y * WIDTH]);
+            assertNotEquals(9, expected[WIDTH - 1 + y * WIDTH]);
+        }
+
+        val image = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        draw(image.drawer(), source);
+        assertArrayEquals(expected, image.getMapData());
+
+        val bufferedImage = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        val bufferedDrawer = bufferedImage.bufferedDrawer();
+        draw(bufferedDrawer, source);
+        bufferedDrawer.dispose();
+        assertArrayEquals(expected, bufferedImage.getMapData());
+    }
+
+    @Test
+    void testBufferedDrawerWritesBlankPixels() {
+        val image = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        image.drawer().fill((byte) 3);
+
+        val drawer = image.bufferedDrawer();
+        drawer.px(100, 100, NO_COLOR_CODE)
+                .span(10, 20, 2, NO_COLOR_CODE)
+                .rect(30, 30, 31, 31, NO_COLOR_CODE)
+                .blit(new byte[]{NO_COLOR_CODE, 1, 1, NO_COLOR_CODE}, 2, 2, 40, 40, (byte) 1)
+                .copyRegion(new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0), 0, 0, 2, 1, 50, 50);
+        // written pixels are not mistaken for the pixels which were not written
+        val deltas = drawer.getDeltas();
+        assertEquals(new Delta.SinglePixel(NO_COLOR_CODE, 100, 100), deltas.get(deltas.size() - 1));
+        drawer.dispose();
+
+        val expected = new byte[PIXELS_COUNT];
+        Arrays.fill(expected, (byte) 3);
+        val expectedDrawer = new DefaultMapImage(expected, (byte) 0).drawer();
+        expectedDrawer.px(100, 100, NO_COLOR_CODE)
+                .span(10, 20, 2, NO_COLOR_CODE)
+                .rect(30, 30, 31, 31, NO_COLOR_CODE)
+                .px(40, 40, NO_COLOR_CODE)
+                .px(41, 41, NO_COLOR_CODE)
+                .span(50, 51, 50, NO_COLOR_CODE);
+        assertArrayEquals(expected, image.getMapData());
+        assertEquals(3, image.getMapData()[41 + 40 * WIDTH]);
+    }
+
+    @Test
+    void testLineEndpoints() {
+        val random = new Random();
+        for (var i = 0; i < 256; i++) {
+            final int x1 = random.nextInt(WIDTH), y1 = random.nextInt(HEIGHT),
+                    x2 = random.nextInt(WIDTH), y2 = random.nextInt(HEIGHT);
+
+            val pixels = new byte[PIXELS_COUNT];
+            defaultDrawer(pixels).line(x1, y1, x2, y2, (byte) 1);
+            assertEquals(1, pixels[x1 + y1 * WIDTH]);
+            assertEquals(1, pixels[x2 + y2 * WIDTH]);
+
+            var drawn = 0;
+            for (val pixel : pixels) drawn += pixel;
+            assertEquals(Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1)) + 1, drawn);
+        }
+    }
+
+    @Test
+    void testModificationCount() {
+        val image = randomImage(new Random());
+        val drawer = image.drawer();
+
+        var modificationCount = image.getModificationCount();
+        assertTrue(modificationCount >= 0);
+        for (val draw : Arrays.<Consumer<MapImage.Drawer>>asList(
+                imageDrawer -> imageDrawer.px(1, 2, (byte) 3),
+                imageDrawer -> imageDrawer.span(1, 10, 2, (byte) 3),
+                imageDrawer -> imageDrawer.blit(new byte[]{1, 2, 3, 4}, 2, 2, 5, 5, NO_COLOR_CODE),
+                imageDrawer -> imageDrawer.copyRegion(randomImage(new Random()), 0, 0, 4, 4, 10, 10),
+                imageDrawer -> imageDrawer.fill((byte) 4)
+        )) {
+            draw.accept(drawer);
+            assertNotEquals(modificationCount, modificationCount = image.getModificationCount());
+        }
+
+        // buffered changes modify the image only once they are disposed
+        val bufferedDrawer = image.bufferedDrawer();
+        bufferedDrawer.px(1, 2, (byte) 5);
+        assertEquals(modificationCount, image.getModificationCount());
+        bufferedDrawer.dispose();
+        assertNotEquals(modificationCount, image.getModificationCount());
+    }
+}
@@ -0,0 +1,116 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.*;
+
+class MapAnimationTest {
+
+    private static BufferedImage frame(final int squareX) {
+        val image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        val graphics = image.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, WIDTH, HEIGHT);
+            graphics.setColor(Color.RED);
+            graphics.fillRect(squareX, 10, 8, 8);
+        } finally {
+            graphics.dispose();
+        }
+
+        return image;
+    }
+
+    private static void apply(final byte[] pixels, final Delta delta) {
+        for (var y = 0; y < delta.height(); y++) System.arraycopy(
+                delta.pixels(), y * delta.width(), pixels, delta.leastX() + (delta.leastY() + y) * WIDTH, delta.width()
+        );
+    }
+
+    private static void assertPlayedCorrectly(final MapAnimation animation, final List<BufferedImage> frames) {
+        val pixels = animation.keyFrame().delta().pixels().clone();
+        assertArrayEquals(MapImages.getMapImagePixels(frames.get(0), false), pixels);
+
+        // two runs to check the looping delta
+        for (var run = 0; run < 2; run++) for (var frame = 1; frame <= frames.size(); frame++) {
+            val index = frame % frames.size();
+            apply(pixels, animation.frames().get(index).delta());
+            assertArrayEquals(MapImages.getMapImagePixels(frames.get(index), false), pixels);
+        }
+    }
+
+    @Test
+    void testFrameDeltas() {
+        val frames = Arrays.asList(frame(0), frame(4), frame(4), frame(50));
+        val animation = MapAnimation.from(frames, 2, false, MapImageDithering.NONE, (byte) 0);
+
+        assertEquals(4, animation.frames().size());
+        assertEquals(8, animation.duration());
+        assertEquals(WIDTH, animation.keyFrame().delta().width());
+        assertEquals(HEIGHT, animation.keyFrame().delta().height());
+
+        // only the moved square is contained in the deltas
+        val delta = animation.frames().get(1).delta();
+        assertEquals(0, delta.leastX());
+        assertEquals(10, delta.leastY());
+        assertEquals(12, delta.width());
+        assertEquals(8, delta.height());
+        assertTrue(animation.frames().get(2).delta().isEmpty());
+
+        for (val frame : animation.frames()) {
+            val unusedColor = frame.unusedColor();
+            for (val pixel : frame.delta().pixels()) assertNotEquals(unusedColor, pixel);
+        }
+
+        assertPlayedCorrectly(animation, frames);
+    }
+
+    @Test
+    void testBuilderIsSingleUse() {
+        val builder = MapAnimation.builder(false, MapImageDithering.NONE, (byte) 0);
+        assertThrows(IllegalStateException.class, builder::build);
+        assertThrows(IllegalArgumentException.class, () -> builder.frame(frame(0), 0));
+
+        builder.frame(frame(0), 1).build();
+        assertThrows(IllegalStateException.class, builder::build);
+        assertThrows(IllegalStateException.class, () -> builder.frame(frame(0), 1));
+    }
+
+    @Test
+    void testFromGif() throws Exception {
+        val frames = Arrays.asList(frame(0), frame(30), frame(60));
+
+        val output = new ByteArrayOutputStream();
+        val writer = ImageIO.getImageWritersByFormatName("gif").next();
+        try (val imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            writer.prepareWriteSequence(null);
+            for (val frame : frames) {
+                val metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(frame), null);
+                writer.writeToSequence(new IIOImage(frame, null, metadata), null);
+            }
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+        }
+
+        val animation = MapAnimation.fromGif(
+                new ByteArrayInputStream(output.toByteArray()), false, MapImageDithering.NONE, (byte) 0
+        );
+        assertEquals(3, animation.frames().size());
+        assertPlayedCorrectly(animation, frames);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapImageCacheTest {
+
+    private static BufferedImage randomImage(final Random random) {
+        val image = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+        for (var x = 0; x < image.getWidth(); x++) for (var y = 0; y < image.getHeight(); y++) image.setRGB(
+                x, y, random.nextInt()
+        );
+
+        return image;
+    }
+
+    private static long countEntries(final Path directory) throws Exception {
+        try (val files = Files.walk(directory)) {
+            return files.filter(file -> file.toString().endsWith(".bin")).collect(Collectors.toList()).size();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testImageIsCached(final boolean compress, final @TempDir Path directory) throws Exception {
+        val cache = new MapImageCache(directory.toFile(), compress);
+        val image = randomImage(new Random());
+        val expected = MapImages.getMapImagePixels(image, true, MapImageDithering.NONE);
+
+        assertArrayEquals(expected, cache.getMapImagePixels(image, true, MapImageDithering.NONE));
+        assertEquals(1, countEntries(directory));
+        // loaded from the stored entry
+        assertArrayEquals(expected, new MapImageCache(directory.toFile(), compress)
+                .getMapImagePixels(image, true, MapImageDithering.NONE));
+        assertEquals(1, countEntries(directory));
+
+        // other parameters are stored as other entries
+        assertArrayEquals(
+                MapImages.getMapImagePixels(image, false, MapImageDithering.ORDERED),
+                cache.getMapImagePixels(image, false, MapImageDithering.ORDERED)
+        );
+        assertArrayEquals(
+                MapImages.getMapImagePixels(image, 64, 32, true, MapImageDithering.NONE),
+                cache.getMapImagePixels(image, 64, 32, true, MapImageDithering.NONE)
+        );
+        assertEquals(3, countEntries(directory));
+
+        // other image content is stored as other entry
+        image.setRGB(0, 0, ~image.getRGB(0, 0));
+        cache.getMapImagePixels(image, true, MapImageDithering.NONE);
+        assertEquals(4, countEntries(directory));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testImageFileIsCached(final boolean compress, final @TempDir Path directory) throws Exception {
+        val image = randomImage(new Random());
+        val imageFile = directory.resolve("image.png").toFile();
+        ImageIO.write(image, "png", imageFile);
+        val expected = MapImages.getMapImagePixels(image, true, MapImageDithering.FLOYD_STEINBERG);
+
+        val cacheDirectory = new File(directory.toFile(), "cache");
+        val cache = new MapImageCache(cacheDirectory, compress);
+        assertArrayEquals(expected, cache.getMapImagePixels(
+                imageFile, MapImage.WIDTH, MapImage.HEIGHT, true, MapImageDithering.FLOYD_STEINBERG
+        ));
+        assertEquals(1, countEntries(cacheDirectory.toPath()));
+
+        // corrupted entries are recomputed
+        try (val entries = Files.walk(cacheDirectory.toPath())) {
+            for (val entry : entries.filter(file -> file.toString().endsWith(".bin")).collect(Collectors.toList()))
+                Files.write(entry, new byte[]{1, 2, 3});
+        }
+        assertArrayEquals(expected, cache.getMapImagePixels(
+                imageFile, MapImage.WIDTH, MapImage.HEIGHT, true, MapImageDithering.FLOYD_STEINBERG
+        ));
+        assertArrayEquals(expected, new MapImageCache(cacheDirectory, compress).getMapImagePixels(
+                imageFile, MapImage.WIDTH, MapImage.HEIGHT, true, MapImageDithering.FLOYD_STEINBERG
+        ));
+    }
+}
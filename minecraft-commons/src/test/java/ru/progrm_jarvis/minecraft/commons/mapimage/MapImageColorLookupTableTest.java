@@ -0,0 +1,78 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.bukkit.map.MapPalette;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.*;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("deprecation") // use of MapPalette#matchColor(..)
+class MapImageColorLookupTableTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {-1, 0, 9, 12})
+    void testInvalidBitsPerChannel(final int bitsPerChannel) {
+        assertThrows(IllegalArgumentException.class, () -> MapImageColorLookupTable.createLazy(bitsPerChannel));
+        assertThrows(IllegalArgumentException.class, () -> MapImageColorLookupTable.createPrecomputed(bitsPerChannel));
+    }
+
+    @Test
+    void testLazyTableMatchesPalette() {
+        val table = MapImageColorLookupTable.createLazy();
+        val random = new Random();
+
+        for (var i = 0; i < 1024; i++) {
+            val rgb = random.nextInt();
+            val expected = MapPalette.matchColor(new Color(rgb));
+
+            assertEquals(expected, table.getClosestColorCode(rgb));
+            // cached value
+            assertEquals(expected, table.getClosestColorCode(rgb));
+            // alpha is ignored
+            assertEquals(expected, table.getClosestColorCode(rgb & 0xFFFFFF));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {3, 5, 6})
+    void testQuantizedTableMatchesPalette(final int bitsPerChannel) {
+        val table = MapImageColorLookupTable.createPrecomputed(bitsPerChannel);
+        assertEquals(bitsPerChannel, table.getBitsPerChannel());
+
+        final int shift = 8 - bitsPerChannel, mask = 0xFF >> shift << shift, half = 1 << (shift - 1);
+        val random = new Random();
+        for (var i = 0; i < 1024; i++) {
+            final int red = random.nextInt(256), green = random.nextInt(256), blue = random.nextInt(256);
+
+            assertEquals(
+                    MapPalette.matchColor(new Color(red & mask | half, green & mask | half, blue & mask | half)),
+                    table.getClosestColorCode(new Color(red, green, blue).getRGB())
+            );
+        }
+    }
+
+    @Test
+    void testLoadOrCompute(final @TempDir Path directory) {
+        val file = new File(directory.toFile(), "table.bin");
+
+        val computed = MapImageColorLookupTable.loadOrCompute(4, file);
+        assertTrue(file.isFile());
+        val loaded = MapImageColorLookupTable.loadOrCompute(4, file);
+
+        for (var rgb = 0; rgb < 1 << 24; rgb += 0x010101 * 7 + 13) assertEquals(
+                computed.getClosestColorCode(rgb), loaded.getClosestColorCode(rgb)
+        );
+
+        // table of other precision should not be read from the file
+        assertEquals(5, MapImageColorLookupTable.loadOrCompute(5, file).getBitsPerChannel());
+    }
+}
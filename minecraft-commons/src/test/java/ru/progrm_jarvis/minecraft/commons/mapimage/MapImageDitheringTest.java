@@ -0,0 +1,100 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapImageDitheringTest {
+
+    @Test
+    void testNoneMatchesClosestColorCodes() {
+        val random = new Random();
+        val pixels = new int[100 * 50];
+        for (var i = 0; i < pixels.length; i++) pixels[i] = random.nextInt();
+
+        val target = new byte[3 + 110 * 50];
+        MapImageDithering.NONE.dither(pixels, 100, 50, 0, target, 3, 110, MapImageColorLookupTable.getDefault());
+
+        for (var y = 0; y < 50; y++) for (var x = 0; x < 110; x++) assertEquals(
+                x < 100 ? MapImageColor.getClosestColorCode(pixels[x + y * 100]) : MapImageColor.NO_COLOR_CODE,
+                target[3 + x + y * 110]
+        );
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = MapImageDithering.class, names = {"NONE", "FLOYD_STEINBERG", "ATKINSON"})
+    void testPaletteColorsAreKept(final MapImageDithering dithering) {
+        val random = new Random();
+        val pixels = new int[64 * 64];
+        val expected = new byte[pixels.length];
+        for (var i = 0; i < pixels.length; i++) {
+            byte colorCode;
+            do colorCode = (byte) random.nextInt(); while (!MapImageMinecraftColors.isPaletteColorCode(colorCode));
+
+            // the palette may contain duplicate colors so the lookup result is used
+            pixels[i] = MapImageMinecraftColors.getPaletteRgb(colorCode);
+            expected[i] = MapImageColor.getClosestColorCode(pixels[i]);
+        }
+
+        val target = new byte[pixels.length];
+        dithering.dither(pixels, 64, 64, 0, target, 0, 64, MapImageColorLookupTable.getDefault());
+
+        // there is no error to be diffused
+        assertArrayEquals(expected, target);
+    }
+
+    @Test
+    void testOrderedDitheringDependsOnPosition() {
+        // mid-gray which is not a palette color gets converted to different colors
+        val pixels = new int[8 * 8];
+        for (var i = 0; i < pixels.length; i++) pixels[i] = 0xFF7A7A7A;
+        val target = new byte[pixels.length];
+        MapImageDithering.ORDERED.dither(pixels, 8, 8, 0, target, 0, 8, MapImageColorLookupTable.getDefault());
+
+        var differs = false;
+        for (val colorCode : target) differs |= colorCode != target[0];
+        assertTrue(differs);
+
+        // rows at different phases of the pattern are converted differently
+        assertFalse(Arrays.equals(Arrays.copyOfRange(target, 0, 8), Arrays.copyOfRange(target, 8, 16)));
+
+        // the pattern depends on the absolute Y-coordinate of the row
+        val shiftedTarget = new byte[pixels.length];
+        MapImageDithering.ORDERED.dither(pixels, 8, 8, 8, shiftedTarget, 0, 8, MapImageColorLookupTable.getDefault());
+        assertArrayEquals(target, shiftedTarget);
+
+        val phaseShiftedTarget = new byte[pixels.length];
+        MapImageDithering.ORDERED.dither(
+                pixels, 8, 8, 1, phaseShiftedTarget, 0, 8, MapImageColorLookupTable.getDefault()
+        );
+        assertArrayEquals(Arrays.copyOfRange(target, 8, 16), Arrays.copyOfRange(phaseShiftedTarget, 0, 8));
+        assertFalse(Arrays.equals(target, phaseShiftedTarget));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MapImageDithering.class)
+    void testAsyncConversionMatchesSynchronous(final MapImageDithering dithering) {
+        val random = new Random();
+        val image = new BufferedImage(120, 100, BufferedImage.TYPE_INT_RGB);
+        for (var x = 0; x < 120; x++) for (var y = 0; y < 100; y++) image.setRGB(x, y, random.nextInt());
+
+        val pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(
+                    MapImages.getMapImagePixels(image, false, dithering),
+                    MapImages.getMapImagePixelsAsync(image, false, dithering, pool).join()
+            );
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.PIXELS_COUNT;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.WIDTH;
+
+class MapImageFontTest {
+
+    private static final MapImageFont FONT = MapImageFont.of(new Font(Font.MONOSPACED, Font.PLAIN, 10));
+
+    private static boolean hasDrawnPixels(final MapImageFont.Glyph glyph) {
+        for (var x = 0; x < glyph.getWidth(); x++) for (var y = 0; y < FONT.getHeight(); y++) if (glyph
+                .isDrawn(x, y)) return true;
+
+        return false;
+    }
+
+    @Test
+    void testGlyphs() {
+        assertSame(FONT, MapImageFont.of(new Font(Font.MONOSPACED, Font.PLAIN, 10)));
+        assertTrue(FONT.getHeight() > 0);
+
+        assertFalse(hasDrawnPixels(FONT.glyph(' ')));
+        assertTrue(hasDrawnPixels(FONT.glyph('W')));
+        assertSame(FONT.glyph('W'), FONT.glyph('W'));
+        assertSame(FONT.glyph('Ж'), FONT.glyph('Ж'));
+        assertEquals(FONT.glyph('1').getWidth() + FONT.glyph('2').getWidth(), FONT.width("12"));
+
+        val glyph = FONT.glyph('8');
+        val sprite = glyph.sprite((byte) 5);
+        assertSame(sprite, glyph.sprite((byte) 5));
+        assertSame(glyph.sprite((byte) 5, (byte) 7), glyph.sprite((byte) 5, (byte) 7));
+        for (var y = 0; y < FONT.getHeight(); y++) for (var x = 0; x < glyph.getWidth(); x++) assertEquals(
+                glyph.isDrawn(x, y) ? 5 : MapImageFont.Glyph.transparentColor((byte) 5),
+                sprite[x + y * glyph.getWidth()]
+        );
+    }
+
+    @Test
+    void testText() {
+        val image = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        image.drawer().fill((byte) 1).text(10, 20, "W", FONT, (byte) 2);
+
+        val glyph = FONT.glyph('W');
+        val pixels = image.getMapData();
+        for (var y = 0; y < FONT.getHeight(); y++) for (var x = 0; x < glyph.getWidth(); x++) assertEquals(
+                glyph.isDrawn(x, y) ? 2 : 1, pixels[10 + x + (20 + y) * WIDTH]
+        );
+
+        // text out of the image is clipped
+        image.drawer().text(WIDTH - 3, -2, "WWW", FONT, (byte) 2).text(-100, 0, "W", FONT, (byte) 2);
+    }
+
+    @Test
+    void testRedrawTouchesOnlyChangedGlyphs() {
+        val image = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        image.drawer().fill((byte) 1).text(0, 0, "1234", FONT, (byte) 2, (byte) 1);
+
+        val drawer = image.bufferedDrawer();
+        drawer.text(0, 0, "1235", FONT, (byte) 2, (byte) 1);
+        val deltas = drawer.dispose();
+        assertFalse(deltas.isEmpty());
+
+        val changedGlyphX = FONT.width("123");
+        for (val delta : deltas) {
+            assertTrue(delta.leastX() >= changedGlyphX);
+            assertTrue(delta.leastX() + delta.width() <= changedGlyphX + FONT.glyph('5').getWidth());
+            assertTrue(delta.leastY() + delta.height() <= FONT.getHeight());
+        }
+    }
+
+    @Test
+    void testBufferedTextWithBlankBackground() {
+        val image = new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0);
+        image.drawer().fill((byte) 1);
+        val expected = new DefaultMapImage(image.getMapData().clone(), (byte) 0);
+
+        val drawer = image.bufferedDrawer();
+        drawer.text(0, 0, "1234", FONT, (byte) 2, MapImageColor.NO_COLOR_CODE);
+        drawer.dispose();
+        expected.drawer().text(0, 0, "1234", FONT, (byte) 2, MapImageColor.NO_COLOR_CODE);
+
+        assertArrayEquals(expected.getMapData(), image.getMapData());
+        assertEquals(MapImageColor.NO_COLOR_CODE, image.getMapData()[FONT.width("1234") - 1]);
+    }
+}
@@ -0,0 +1,86 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.PIXELS_COUNT;
+
+class MapImageRegistryTest {
+
+    @Test
+    void testIdenticalImagesSharePixels() {
+        val registry = new MapImageRegistry();
+        val pixels = new byte[PIXELS_COUNT];
+        new Random().nextBytes(pixels);
+
+        val image = registry.intern(pixels, (byte) 0);
+        val identicalImage = registry.intern(pixels.clone(), (byte) 1);
+        assertTrue(image.isShared());
+        assertNotSame(pixels, image.getMapData());
+        assertSame(image.getMapData(), identicalImage.getMapData());
+        assertSame(image.getSharedPixels(), identicalImage.getSharedPixels());
+        assertSame(image.getSharedPixels(), registry.intern(new DefaultMapImage(pixels, (byte) 0)).getSharedPixels());
+
+        pixels[0]++;
+        val otherImage = registry.intern(pixels, (byte) 0);
+        assertNotSame(image.getMapData(), otherImage.getMapData());
+    }
+
+    @Test
+    void testDrawingCopiesSharedPixels() {
+        val registry = new MapImageRegistry();
+        val pixels = new byte[PIXELS_COUNT];
+        new Random().nextBytes(pixels);
+
+        val image = registry.intern(pixels, (byte) 0);
+        val otherImage = registry.intern(pixels, (byte) 0);
+        val sharedPixels = image.getSharedPixels();
+
+        image.drawer().px(0, 0, (byte) ~pixels[0]);
+        assertFalse(image.isShared());
+        assertNull(image.getSharedPixels());
+        assertEquals((byte) ~pixels[0], image.getMapData()[0]);
+        // the other image and the shared pixels are not affected
+        assertTrue(otherImage.isShared());
+        assertArrayEquals(pixels, otherImage.getMapData());
+        assertArrayEquals(pixels, sharedPixels);
+
+        val drawer = otherImage.bufferedDrawer();
+        drawer.px(1, 1, (byte) ~pixels[1 + MapImage.WIDTH]);
+        // buffered changes do not require the copy until they are disposed
+        assertTrue(otherImage.isShared());
+        drawer.dispose();
+        assertFalse(otherImage.isShared());
+        assertEquals((byte) ~pixels[1 + MapImage.WIDTH], otherImage.getMapData()[1 + MapImage.WIDTH]);
+        assertArrayEquals(pixels, sharedPixels);
+    }
+
+    @Test
+    void testReleasedImagesAreCollectable() throws InterruptedException {
+        val registry = new MapImageRegistry();
+        val pixels = new byte[PIXELS_COUNT];
+        new Random().nextBytes(pixels);
+
+        var image = registry.intern(pixels, (byte) 0);
+        val sharedPixels = new WeakReference<byte[]>(image.getSharedPixels());
+        val imageReference = new WeakReference<SharedMapImage>(image);
+        //noinspection UnusedAssignment: the image should become unreachable
+        image = null;
+
+        for (var attempt = 0; attempt < 100 && (sharedPixels.get() != null || imageReference.get() != null);
+             attempt++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(imageReference.get());
+        assertNull(sharedPixels.get());
+
+        // the registry does not retain the released pixels so the new image gets a new copy of them
+        assertNotNull(registry.intern(pixels, (byte) 0).getSharedPixels());
+    }
+}
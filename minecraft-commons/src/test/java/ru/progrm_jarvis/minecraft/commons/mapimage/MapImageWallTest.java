@@ -0,0 +1,140 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.Delta;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.HEIGHT;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.WIDTH;
+
+class MapImageWallTest {
+
+    private static byte pixel(final MapImageWall wall, final int x, final int y) {
+        return wall.tile(x / WIDTH, y / HEIGHT).getMapData()[x % WIDTH + y % HEIGHT * WIDTH];
+    }
+
+    @Test
+    void testFrom() {
+        val random = new Random();
+        val image = new BufferedImage(3 * WIDTH, 2 * HEIGHT - 10, BufferedImage.TYPE_INT_ARGB);
+        for (var x = 0; x < image.getWidth(); x++) for (var y = 0; y < image.getHeight(); y++) image.setRGB(
+                x, y, random.nextInt()
+        );
+
+        val wall = MapImageWall.from(image, 3, 2, false, MapImageDithering.NONE, (byte) 0);
+        assertEquals(3 * WIDTH, wall.getWidth());
+        assertEquals(2 * HEIGHT, wall.getHeight());
+        assertEquals(6, wall.tiles().size());
+        for (var x = 0; x < wall.getWidth(); x++) for (var y = 0; y < wall.getHeight(); y++) assertEquals(
+                y < image.getHeight()
+                        ? MapImageColor.getClosestColorCode(image.getRGB(x, y)) : MapImageColor.NO_COLOR_CODE,
+                pixel(wall, x, y)
+        );
+
+        val pool = new ForkJoinPool(4);
+        try {
+            val asyncWall = MapImageWall.fromAsync(
+                    image, 3, 2, false, MapImageDithering.ORDERED, (byte) 0, pool
+            ).join();
+            val syncWall = MapImageWall.from(image, 3, 2, false, MapImageDithering.ORDERED, (byte) 0);
+            for (var tile = 0; tile < 6; tile++) assertArrayEquals(
+                    syncWall.tiles().get(tile).getMapData(), asyncWall.tiles().get(tile).getMapData()
+            );
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testFlushCoalescesChanges() {
+        val wall = new MapImageWall(2, 2, (byte) 0);
+        val flushes = new ArrayList<List<MapImageWall.TileDelta>>();
+        wall.subscribeOnUpdates(flushes::add);
+        val tileDeltas = new ArrayList<Delta>();
+        wall.tile(1, 1).subscribeOnUpdates(tileDeltas::add);
+
+        assertFalse(wall.isChanged());
+        assertTrue(wall.flush().isEmpty());
+        assertTrue(flushes.isEmpty());
+
+        // rectangle crossing all 4 tiles and pixels of the bottom-right tile
+        wall.drawer()
+                .rect(WIDTH - 2, HEIGHT - 3, WIDTH + 1, HEIGHT, (byte) 4)
+                .px(WIDTH + 10, HEIGHT + 20, (byte) 5)
+                .px(WIDTH + 5, HEIGHT + 2, (byte) 6);
+        assertTrue(wall.isChanged());
+
+        val deltas = wall.flush();
+        assertFalse(wall.isChanged());
+        assertEquals(1, flushes.size());
+        assertSame(deltas, flushes.get(0));
+        assertEquals(4, deltas.size());
+
+        for (val tileDelta : deltas) {
+            val delta = tileDelta.delta();
+            assertFalse(delta.isEmpty());
+            assertSame(wall.tile(tileDelta.column(), tileDelta.row()), tileDelta.tile());
+
+            final int expectedLeastX = tileDelta.column() == 0 ? WIDTH - 2 : 0,
+                    expectedLeastY = tileDelta.row() == 0 ? HEIGHT - 3 : 0;
+            assertEquals(expectedLeastX, delta.leastX());
+            assertEquals(expectedLeastY, delta.leastY());
+            if (tileDelta.column() == 1 && tileDelta.row() == 1) {
+                assertEquals(11, delta.width());
+                assertEquals(21, delta.height());
+            } else {
+                assertEquals(2, delta.width());
+                assertEquals(tileDelta.row() == 0 ? 3 : 1, delta.height());
+            }
+
+            // delta pixels are the actual pixels of the changed segment
+            val pixels = tileDelta.tile().getMapData();
+            for (var y = 0; y < delta.height(); y++) for (var x = 0; x < delta.width(); x++) assertEquals(
+                    pixels[delta.leastX() + x + (delta.leastY() + y) * WIDTH], delta.pixels()[x + y * delta.width()]
+            );
+        }
+        assertEquals(1, tileDeltas.size());
+        assertEquals(4, pixel(wall, WIDTH, HEIGHT));
+        assertEquals(5, pixel(wall, WIDTH + 10, HEIGHT + 20));
+        assertEquals(6, pixel(wall, WIDTH + 5, HEIGHT + 2));
+
+        // same pixel produces no changes
+        wall.drawer().px(WIDTH + 10, HEIGHT + 20, (byte) 5);
+        assertFalse(wall.isChanged());
+    }
+
+    @Test
+    void testDrawer() {
+        val wall = new MapImageWall(2, 1, (byte) 0);
+        wall.drawer().fill((byte) 1);
+        assertEquals(2, wall.flush().size());
+
+        wall.drawer().line(10, 10, 2 * WIDTH - 11, 30, (byte) 2);
+        assertEquals(2, pixel(wall, 10, 10));
+        assertEquals(2, pixel(wall, 2 * WIDTH - 11, 30));
+        // the line is continuous
+        for (var x = 10; x < 2 * WIDTH - 10; x++) {
+            var drawn = false;
+            for (var y = 0; y < HEIGHT; y++) drawn |= pixel(wall, x, y) == 2;
+            assertTrue(drawn);
+        }
+
+        wall.drawer().round(WIDTH, 64, 20, (byte) 3);
+        assertEquals(3, pixel(wall, WIDTH, 64));
+        assertEquals(3, pixel(wall, WIDTH - 20, 64));
+        assertEquals(3, pixel(wall, WIDTH + 20, 64));
+        assertEquals(1, pixel(wall, WIDTH + 20, 84));
+        assertEquals(1, pixel(wall, WIDTH - 21, 64));
+
+        assertThrows(IllegalArgumentException.class, () -> wall.drawer().px(2 * WIDTH, 0, (byte) 1));
+        assertThrows(IllegalArgumentException.class, () -> wall.drawer().rect(0, 0, 10, HEIGHT, (byte) 1));
+    }
+}
@@ -0,0 +1,54 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR_CODE;
+
+class MapImagesTest {
+
+    private static BufferedImage randomImage(final int width, final int height) {
+        val image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        val random = new Random();
+        for (var x = 0; x < width; x++) for (var y = 0; y < height; y++) image.setRGB(x, y, random.nextInt());
+
+        return image;
+    }
+
+    @ParameterizedTest
+    @CsvSource({"128, 128", "100, 70", "31, 128", "300, 200", "1, 1"})
+    void testGetMapImagePixels(final int width, final int height) {
+        val image = randomImage(width, height);
+        val pixels = MapImages.getMapImagePixels(image, false);
+
+        final int fittedWidth = Math.min(width, MapImage.WIDTH), fittedHeight = Math.min(height, MapImage.HEIGHT);
+        for (var x = 0; x < MapImage.WIDTH; x++) for (var y = 0; y < MapImage.HEIGHT; y++) assertEquals(
+                x < fittedWidth && y < fittedHeight
+                        ? MapImageColor.getClosestColorCode(image.getRGB(x, y)) : NO_COLOR_CODE,
+                pixels[x + y * MapImage.WIDTH]
+        );
+    }
+
+    @ParameterizedTest
+    @CsvSource({"128, 128", "100, 70", "31, 128", "300, 200", "1, 1"})
+    void testGetMapImagePixelsAsync(final int width, final int height) {
+        val image = randomImage(width, height);
+        val pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(
+                    MapImages.getMapImagePixels(image, true),
+                    MapImages.getMapImagePixelsAsync(image, true, pool).join()
+            );
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.PIXELS_COUNT;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImageColor.NO_COLOR_CODE;
+
+class PooledMapImageTest {
+
+    @Test
+    void testArraysAreReused() {
+        val pool = new MapImagePixelPool(4L * PIXELS_COUNT);
+        val pixels = new byte[PIXELS_COUNT];
+        new Random().nextBytes(pixels);
+
+        val image = PooledMapImage.of(pool, pixels, (byte) 0);
+        assertArrayEquals(pixels, image.getMapData());
+        val imagePixels = image.getMapData();
+        image.bufferedDrawer().px(1, 2, (byte) 3);
+        image.release();
+        assertTrue(image.isReleased());
+        assertEquals(2, pool.retained());
+
+        assertThrows(IllegalStateException.class, image::getMapData);
+        assertThrows(IllegalStateException.class, image::bufferedDrawer);
+        assertThrows(IllegalStateException.class, image::release);
+
+        // the released arrays are blank once they are acquired again
+        val otherImage = PooledMapImage.create(pool, (byte) 0);
+        assertSame(imagePixels, otherImage.getMapData());
+        for (val pixel : otherImage.getMapData()) assertEquals(NO_COLOR_CODE, pixel);
+        otherImage.bufferedDrawer().fill((byte) 1);
+        assertEquals(0, pool.retained());
+    }
+
+    @Test
+    void testDeltasAreReused() {
+        val pool = new MapImagePixelPool(4L * PIXELS_COUNT);
+        val image = PooledMapImage.create(pool, (byte) 0);
+
+        val drawer = image.bufferedDrawer();
+        drawer.rect(10, 10, 19, 14, (byte) 5);
+        val deltas = drawer.dispose();
+        assertEquals(1, deltas.size());
+        val delta = deltas.get(0);
+        assertEquals(50, delta.pixels().length);
+        for (val pixel : delta.pixels()) assertEquals(5, pixel);
+        assertEquals(5, image.getMapData()[10 + 10 * MapImage.WIDTH]);
+
+        image.release(deltas);
+        assertEquals(1, pool.retained());
+
+        drawer.rect(20, 20, 29, 24, (byte) 6);
+        val reusedDelta = drawer.getDelta();
+        assertSame(delta.pixels(), reusedDelta.pixels());
+        for (val pixel : reusedDelta.pixels()) assertEquals(6, pixel);
+    }
+
+    @Test
+    void testRetainedArraysAreLimited() {
+        val pool = new MapImagePixelPool(500);
+        for (int i = 0; i < 5; i++) pool.release(new byte[100]);
+        // the total size of the retained arrays does not exceed the limit
+        pool.release(new byte[200]);
+        assertEquals(5, pool.retained());
+        assertEquals(500, pool.retainedBytes());
+
+        pool.acquire(100);
+        pool.acquire(100);
+        pool.release(new byte[200]);
+        assertEquals(4, pool.retained());
+        assertEquals(500, pool.retainedBytes());
+
+        pool.clear();
+        assertEquals(0, pool.retained());
+        assertEquals(0, pool.retainedBytes());
+    }
+
+    @Test
+    void testForeignDeltasAreNotReleased() {
+        val pool = new MapImagePixelPool(4L * PIXELS_COUNT);
+        val image = PooledMapImage.create(pool, (byte) 0);
+
+        val deltas = new ArrayList<MapImage.Delta>();
+        image.subscribeOnUpdates(deltas::add);
+        image.drawer().fill((byte) 7);
+        assertEquals(1, deltas.size());
+
+        // the delta of the fill shares the image's pixels so releasing it should not affect them
+        image.release(deltas);
+        assertEquals(0, pool.retained());
+        for (val pixel : image.getMapData()) assertEquals(7, pixel);
+
+        image.release(MapImage.Delta.of(new byte[]{1, 2}, 2, 0, 0));
+        assertEquals(0, pool.retained());
+    }
+}
@@ -0,0 +1,143 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapIdJournalTest {
+
+    @Test
+    void testAppendedIdsAreStored(final @TempDir Path directory) throws Exception {
+        val file = directory.resolve("map_ids.journal").toFile();
+        val legacyFile = directory.resolve("map_ids.list").toFile();
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertEquals(0, journal.ids().length);
+            // more than the initial capacity of the journal
+            for (var id = 0; id < 3000; id++) journal.append(id);
+            assertEquals(3000, journal.records());
+        }
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(IntStream.range(0, 3000).toArray(), journal.ids());
+        }
+    }
+
+    @Test
+    void testTornRecordTerminatesJournal(final @TempDir Path directory) throws Exception {
+        val file = directory.resolve("map_ids.journal").toFile();
+        val legacyFile = directory.resolve("map_ids.list").toFile();
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            for (var id = 10; id < 15; id++) journal.append(id);
+        }
+        // corrupt the checksum of the fourth record
+        try (val output = new RandomAccessFile(file, "rw")) {
+            output.seek(8 + 3 * 8 + 4);
+            output.writeInt(0xDEADBEEF);
+        }
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(new int[]{10, 11, 12}, journal.ids());
+            journal.append(20);
+        }
+        // the records after the torn one do not reappear
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(new int[]{10, 11, 12, 20}, journal.ids());
+        }
+    }
+
+    @Test
+    void testCompaction(final @TempDir Path directory) throws Exception {
+        val file = directory.resolve("map_ids.journal").toFile();
+        val legacyFile = directory.resolve("map_ids.list").toFile();
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            for (val id : new int[]{1, 2, 3, 4, 5}) journal.append(id);
+            journal.compact(new int[]{2, 4});
+            assertArrayEquals(new int[]{2, 4}, journal.ids());
+            journal.append(6);
+            // duplicates get removed when opening
+            journal.append(2);
+        }
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(new int[]{2, 4, 6}, journal.ids());
+            assertEquals(3, journal.records());
+        }
+    }
+
+    @Test
+    void testReplacement(final @TempDir Path directory) throws Exception {
+        val file = directory.resolve("map_ids.journal").toFile();
+        val legacyFile = directory.resolve("map_ids.list").toFile();
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            for (val id : new int[]{1, 2, 3}) journal.append(id);
+            journal.replace(1, 7);
+            assertArrayEquals(new int[]{1, 7, 3}, journal.ids());
+            assertThrows(IndexOutOfBoundsException.class, () -> journal.replace(3, 8));
+        }
+
+        // the records stay aligned with the indices of the maps
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(new int[]{1, 7, 3}, journal.ids());
+            assertEquals(3, journal.records());
+        }
+    }
+
+    @Test
+    void testLegacyIdsListIsMigrated(final @TempDir Path directory) throws Exception {
+        val file = directory.resolve("map_ids.journal").toFile();
+        val legacyFile = directory.resolve("map_ids.list").toFile();
+        Files.write(legacyFile.toPath(), Arrays.asList("# comment", "7", "", "3", "7"));
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(new int[]{7, 3}, journal.ids());
+        }
+        assertFalse(legacyFile.exists());
+        assertTrue(new File(legacyFile.getPath() + ".migrated").isFile());
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(new int[]{7, 3}, journal.ids());
+        }
+    }
+
+    @Test
+    void testLegacyIdsAreMigratedAlongWithDuplicates(final @TempDir Path directory) throws Exception {
+        val file = directory.resolve("map_ids.journal").toFile();
+        val legacyFile = directory.resolve("map_ids.list").toFile();
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            for (val id : new int[]{1, 2, 1}) journal.append(id);
+        }
+        // as many new IDs as there are duplicates in the journal
+        Files.write(legacyFile.toPath(), Arrays.asList("2", "5"));
+
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(new int[]{1, 2, 5}, journal.ids());
+        }
+        try (val journal = MapIdJournal.open(file, legacyFile)) {
+            assertArrayEquals(new int[]{1, 2, 5}, journal.ids());
+        }
+    }
+
+    @Test
+    void testForeignFileIsRejected(final @TempDir Path directory) throws Exception {
+        val file = directory.resolve("map_ids.journal").toFile();
+        Files.write(file.toPath(), "not a journal at all".getBytes());
+
+        assertThrows(IOException.class, () -> MapIdJournal.open(file, directory.resolve("map_ids.list").toFile()));
+    }
+}
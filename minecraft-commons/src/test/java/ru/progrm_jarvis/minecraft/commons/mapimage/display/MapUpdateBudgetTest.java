@@ -0,0 +1,254 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import lombok.NonNull;
+import lombok.val;
+import lombok.var;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.map.MapView;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.progrm_jarvis.minecraft.commons.mapimage.DefaultMapImage;
+import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistry;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.progrm_jarvis.minecraft.commons.mapimage.MapImage.PIXELS_COUNT;
+
+class MapUpdateBudgetTest {
+
+    private Plugin plugin;
+    private Player player;
+    private List<MapView> maps;
+
+    /**
+     * Creates a stub of the interface whose methods return the first of the given results of the suitable type.
+     *
+     * @param type interface to stub
+     * @param results results of the stubbed methods
+     * @param <T> type of the interface
+     * @return created stub
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(final @NonNull Class<T> type, final @NonNull Object... results) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, arguments) -> {
+            switch (method.getName()) {
+                case "equals": return proxy == arguments[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                case "toString": return type.getSimpleName() + '@' + System.identityHashCode(proxy);
+            }
+
+            val returnType = method.getReturnType();
+            for (val result : results) if (returnType.isInstance(result)) return result;
+            if (returnType == boolean.class) return false;
+            if (returnType == void.class || !returnType.isPrimitive()) return null;
+
+            return returnType == long.class ? 0L : returnType == float.class ? 0F : returnType == double.class ? 0D
+                    : returnType == char.class ? '\0' : returnType == byte.class ? (byte) 0
+                    : returnType == short.class ? (short) 0 : (Object) 0;
+        });
+    }
+
+    @BeforeEach
+    void setUp() {
+        plugin = stub(Plugin.class, stub(Server.class, stub(BukkitScheduler.class, stub(BukkitTask.class))));
+        player = stub(Player.class);
+        maps = new ArrayList<>();
+        for (var id = 0; id < 4; id++) maps.add(stub(MapView.class));
+    }
+
+    private ProtocolBasedMapImageDisplay display(final @NonNull MapUpdateBudget budget, final int priority,
+                                                 final @NonNull Map<Player, MapView> playerMaps) {
+        val display = new ProtocolBasedMapImageDisplay(
+                new DefaultMapImage(new byte[PIXELS_COUNT], (byte) 0), playerMaps,
+                plugin, false, 0, budget, stub(PlayerRegistry.class)
+        );
+        display.setPriority(priority);
+
+        return display;
+    }
+
+    private ProtocolBasedMapImageDisplay display(final @NonNull MapUpdateBudget budget, final int priority) {
+        return display(budget, priority, new HashMap<>());
+    }
+
+    private static int cost(final int width, final int height) {
+        return MapUpdateBudget.PACKET_OVERHEAD + width * height;
+    }
+
+    @Test
+    void testUpdatesOfSameMapAreMerged() {
+        val budget = new RecordingBudget(plugin, 10_000, 20);
+        val display = display(budget, 0);
+
+        budget.queue(player, display, maps.get(1), 0, 0, 10, 10);
+        budget.queue(player, display, maps.get(1), 20, 5, 10, 10);
+        // fully contained in the already queued segment
+        budget.queue(player, display, maps.get(1), 2, 2, 4, 4);
+        assertEquals(new MapUpdateBudget.Backlog(1, cost(30, 15), 10_000), budget.getBacklog(player));
+
+        budget.queue(player, display, maps.get(2), 0, 0, 128, 64);
+        assertEquals(
+                new MapUpdateBudget.Backlog(2, cost(30, 15) + cost(128, 64), 10_000), budget.getBacklog(player)
+        );
+
+        budget.tick();
+        assertEquals(asList("2:0,0,128x64", "1:0,0,30x15"), budget.sent);
+        assertEquals(
+                new MapUpdateBudget.Backlog(0, 0, 10_000 - cost(30, 15) - cost(128, 64)), budget.getBacklog(player)
+        );
+    }
+
+    @Test
+    void testEmptyUpdatesAreIgnored() {
+        val budget = new RecordingBudget(plugin, 10_000, 20);
+        val display = display(budget, 0);
+
+        budget.queue(player, display, maps.get(1), 0, 0, 0, 10);
+        budget.queue(player, display, maps.get(1), 0, 0, 10, -1);
+        assertEquals(new MapUpdateBudget.Backlog(0, 0, 10_000), budget.getBacklog(player));
+    }
+
+    @Test
+    void testBudgetIsAccounted() {
+        val updateCost = cost(20, 20);
+        val budget = new RecordingBudget(plugin, updateCost + updateCost / 5, 20);
+        val display = display(budget, 0);
+
+        for (var id = 1; id <= 3; id++) budget.queue(player, display, maps.get(id), 0, 0, 20, 20);
+        assertEquals(
+                new MapUpdateBudget.Backlog(3, 3L * updateCost, budget.getBytesPerTick()), budget.getBacklog(player)
+        );
+
+        // the second update exceeds the remaining budget but still gets sent
+        budget.tick();
+        assertEquals(2, budget.sent.size());
+        assertEquals(
+                new MapUpdateBudget.Backlog(1, updateCost, budget.getBytesPerTick() - 2L * updateCost),
+                budget.getBacklog(player)
+        );
+
+        // the exceeded budget is restored only partially
+        budget.tick();
+        assertEquals(3, budget.sent.size());
+        assertEquals(
+                new MapUpdateBudget.Backlog(0, 0, 2L * budget.getBytesPerTick() - 3L * updateCost),
+                budget.getBacklog(player)
+        );
+
+        // the budget is never accumulated above a single tick's one
+        for (var tick = 0; tick < 5; tick++) budget.tick();
+        assertEquals(new MapUpdateBudget.Backlog(0, 0, budget.getBytesPerTick()), budget.getBacklog(player));
+
+        budget.queue(player, display, maps.get(1), 0, 0, 20, 20);
+        budget.discard(player, maps.get(1));
+        assertEquals(new MapUpdateBudget.Backlog(0, 0, budget.getBytesPerTick()), budget.getBacklog(player));
+        budget.tick();
+        assertEquals(3, budget.sent.size());
+    }
+
+    @Test
+    void testUpdatesAreOrderedByPriorityAndRecency() {
+        val budget = new RecordingBudget(plugin, cost(20, 20), 20);
+        val lowPriorityDisplay = display(budget, 0);
+        val highPriorityDisplay = display(budget, 1);
+
+        budget.queue(player, lowPriorityDisplay, maps.get(1), 0, 0, 20, 20);
+        budget.queue(player, highPriorityDisplay, maps.get(2), 0, 0, 20, 20);
+        budget.queue(player, lowPriorityDisplay, maps.get(3), 0, 0, 20, 20);
+        // this makes the update of the first map the most recent one
+        budget.queue(player, lowPriorityDisplay, maps.get(1), 0, 0, 20, 20);
+
+        for (var tick = 0; tick < 3; tick++) budget.tick();
+        assertEquals(asList("2:0,0,20x20", "1:0,0,20x20", "3:0,0,20x20"), budget.sent);
+    }
+
+    @Test
+    void testOverdueUpdatesAreNotStarved() {
+        val budget = new RecordingBudget(plugin, cost(20, 20), 2);
+        val lowPriorityDisplay = display(budget, 0);
+        val highPriorityDisplay = display(budget, 1);
+
+        budget.queue(player, lowPriorityDisplay, maps.get(1), 0, 0, 20, 20);
+        budget.queue(player, lowPriorityDisplay, maps.get(2), 0, 0, 20, 20);
+        for (var tick = 0; tick < 3; tick++) {
+            // the map which is updated more frequently than the budget allows
+            budget.queue(player, highPriorityDisplay, maps.get(3), 0, 0, 20, 20);
+            budget.tick();
+        }
+        budget.tick();
+
+        assertEquals(asList("3:0,0,20x20", "1:0,0,20x20", "2:0,0,20x20", "3:0,0,20x20"), budget.sent);
+        assertEquals(new MapUpdateBudget.Backlog(0, 0, 0), budget.getBacklog(player));
+    }
+
+    @Test
+    void testShutdownOfDisplayDiscardsItsUpdates() {
+        val budget = new RecordingBudget(plugin, 10_000, 20);
+        val display = display(budget, 0, Collections.singletonMap(player, maps.get(0)));
+        val otherDisplay = display(budget, 0);
+
+        budget.queue(player, display, maps.get(0), 0, 0, 128, 64);
+        budget.queue(player, otherDisplay, maps.get(1), 0, 0, 20, 20);
+        assertEquals(2, budget.getBacklog(player).getUpdates());
+
+        display.shutdown();
+        assertEquals(new MapUpdateBudget.Backlog(1, cost(20, 20), 10_000), budget.getBacklog(player));
+
+        budget.shutdown();
+        assertEquals(new MapUpdateBudget.Backlog(0, 0, 10_000), budget.getBacklog(player));
+        budget.tick();
+        assertEquals(emptyList(), budget.sent);
+    }
+
+    @Test
+    void testUpdatesOfRemovedPlayerAreDiscarded() {
+        val budget = new RecordingBudget(plugin, 10_000, 20);
+        val display = display(budget, 0);
+        val otherPlayer = stub(Player.class);
+
+        budget.queue(player, display, maps.get(0), 0, 0, 20, 20);
+        budget.queue(otherPlayer, display, maps.get(1), 0, 0, 20, 20);
+        assertTrue(budget.containsPlayer(player));
+
+        // this is what the player registry does once the player leaves the server
+        budget.removePlayer(player);
+        assertFalse(budget.containsPlayer(player));
+        assertEquals(new MapUpdateBudget.Backlog(0, 0, 10_000), budget.getBacklog(player));
+        assertEquals(Collections.singletonList(otherPlayer), budget.getPlayers());
+
+        budget.tick();
+        assertEquals(Collections.singletonList("1:0,0,20x20"), budget.sent);
+    }
+
+    /**
+     * Budget recording the sent updates instead of sending them.
+     */
+    private final class RecordingBudget extends MapUpdateBudget {
+
+        private final List<String> sent = new ArrayList<>();
+
+        private RecordingBudget(final @NonNull Plugin plugin, final int bytesPerTick, final int maxWaitTicks) {
+            super(plugin, bytesPerTick, maxWaitTicks, stub(PlayerRegistry.class));
+        }
+
+        @Override
+        protected int getMapId(final @NonNull MapView map) {
+            return maps.indexOf(map);
+        }
+
+        @Override
+        protected void send(final @NonNull Player player, final @NonNull ProtocolBasedMapImageDisplay display,
+                            final @NonNull MapView map, final int leastX, final int leastY,
+                            final int width, final int height) {
+            sent.add(getMapId(map) + ":" + leastX + ',' + leastY + ',' + width + 'x' + height);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import lombok.val;
+import lombok.var;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class PlayerMapIndicesTest {
+
+    @Test
+    void testIndicesGrow() {
+        val indices = new PlayerMapIndices(0);
+        val player = mock(Player.class);
+        val otherPlayer = mock(Player.class);
+
+        for (var index = 0; index < 100; index++) assertEquals(index, indices.reserve(player));
+        // indices of different players do not intersect
+        assertEquals(0, indices.reserve(otherPlayer));
+        assertEquals(100, indices.reserve(player));
+    }
+
+    @Test
+    void testIndexIsReusedAfterRelease() {
+        val indices = new PlayerMapIndices(0);
+        val player = mock(Player.class);
+        val otherPlayer = mock(Player.class);
+
+        for (var index = 0; index < 4; index++) indices.reserve(player);
+        indices.reserve(otherPlayer);
+
+        indices.release(player, 2);
+        indices.release(player, 1);
+        // releasing indices of other players or not held ones does nothing
+        indices.release(otherPlayer, 1);
+        indices.release(mock(Player.class), 0);
+
+        assertEquals(1, indices.reserve(player));
+        assertEquals(2, indices.reserve(player));
+        assertEquals(4, indices.reserve(player));
+        assertEquals(1, indices.reserve(otherPlayer));
+
+        // the player holding no indices starts from the first one again
+        indices.release(otherPlayer, 0);
+        indices.release(otherPlayer, 1);
+        assertEquals(0, indices.reserve(otherPlayer));
+    }
+}
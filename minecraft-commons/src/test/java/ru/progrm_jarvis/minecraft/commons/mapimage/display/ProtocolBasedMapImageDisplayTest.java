@@ -0,0 +1,65 @@
+package ru.progrm_jarvis.minecraft.commons.mapimage.display;
+
+import com.comphenix.packetwrapper.WrapperPlayServerMap;
+import lombok.NonNull;
+import lombok.val;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.Test;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImage;
+import ru.progrm_jarvis.minecraft.commons.mapimage.MapImageWall;
+import ru.progrm_jarvis.minecraft.commons.player.registry.PlayerRegistry;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+class ProtocolBasedMapImageDisplayTest {
+
+    @Test
+    void testFullImagePacketOfWallTileIsRebuiltOnFlush() {
+        val wall = new MapImageWall(2, 1, (byte) 0);
+        val display = new CountingDisplay(wall.tile(1, 0));
+
+        display.fullImagePacket();
+        display.fullImagePacket();
+        assertEquals(1, display.builtPackets);
+
+        // the wall writes to the pixels of its tiles directly
+        wall.drawer().px(MapImage.WIDTH + 1, 1, (byte) 1);
+        wall.flush();
+        display.fullImagePacket();
+        assertEquals(2, display.builtPackets);
+
+        // other tiles' changes do not affect the packet of this one
+        wall.drawer().px(1, 1, (byte) 1);
+        wall.flush();
+        display.fullImagePacket();
+        assertEquals(2, display.builtPackets);
+    }
+
+    /**
+     * Display without players counting the built packets instead of building them.
+     */
+    private static final class CountingDisplay extends ProtocolBasedMapImageDisplay {
+
+        private int builtPackets;
+
+        private CountingDisplay(final @NonNull MapImage image) {
+            super(image, new HashMap<>(), mock(Plugin.class), false, mock(PlayerRegistry.class));
+        }
+
+        @Override
+        protected WrapperPlayServerMap newSegmentPacket(final int leastX, final int leastY,
+                                                        final int width, final int height) {
+            builtPackets++;
+
+            return null;
+        }
+
+        @Override
+        protected void sendDeltaToAllPlayers(final @NonNull MapImage.Delta delta) {
+            // there are no players to send the deltas to
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ru.progrm_jarvis.minecraft.commons.util.image;
+
+import lombok.val;
+import lombok.var;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ImageUtilTest {
+
+    private static BufferedImage randomImage(final int width, final int height, final int type) {
+        val image = new BufferedImage(width, height, type);
+        val random = new Random();
+        for (var x = 0; x < width; x++) for (var y = 0; y < height; y++) image.setRGB(x, y, random.nextInt());
+
+        return image;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_BYTE_GRAY
+    })
+    void testGetRgb(final int type) {
+        val image = randomImage(97, 61, type);
+
+        assertArrayEquals(
+                image.getRGB(0, 0, 97, 61, null, 0, 97),
+                ImageUtil.getRgb(image, 0, 0, 97, 61, new int[97 * 61], 0, 97)
+        );
+        assertArrayEquals(
+                image.getRGB(13, 7, 40, 30, new int[5 + 50 * 30], 5, 50),
+                ImageUtil.getRgb(image, 13, 7, 40, 30, new int[5 + 50 * 30], 5, 50)
+        );
+
+        // sub-images share the raster of the parent image
+        val subImage = image.getSubimage(11, 17, 50, 40);
+        assertArrayEquals(
+                subImage.getRGB(3, 2, 30, 25, null, 0, 30),
+                ImageUtil.getRgb(subImage, 3, 2, 30, 25, new int[30 * 25], 0, 30)
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+            BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_BYTE_GRAY
+    })
+    void testSetRgb(final int type) {
+        val pixels = randomImage(97, 61, BufferedImage.TYPE_INT_ARGB).getRGB(0, 0, 97, 61, null, 0, 97);
+
+        val expectedImage = new BufferedImage(97, 61, type);
+        expectedImage.setRGB(13, 7, 40, 30, pixels, 5, 50);
+        val image = new BufferedImage(97, 61, type);
+        assertSame(image, ImageUtil.setRgb(image, 13, 7, 40, 30, pixels, 5, 50));
+        assertArrayEquals(
+                expectedImage.getRGB(0, 0, 97, 61, null, 0, 97), image.getRGB(0, 0, 97, 61, null, 0, 97)
+        );
+
+        // sub-images share the raster of the parent image
+        val subImage = image.getSubimage(11, 17, 50, 40);
+        ImageUtil.setRgb(subImage, 3, 2, 30, 25, pixels, 0, 30);
+        expectedImage.getSubimage(11, 17, 50, 40).setRGB(3, 2, 30, 25, pixels, 0, 30);
+        assertArrayEquals(
+                expectedImage.getRGB(0, 0, 97, 61, null, 0, 97), image.getRGB(0, 0, 97, 61, null, 0, 97)
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {
+            BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY
+    })
+    void testMergeSharp(final int type) {
+        val background = randomImage(97, 61, type);
+        val expectedBackground = randomImage(97, 61, type);
+        expectedBackground.setData(background.getData());
+        // rows which are fully transparent, fully opaque and translucent
+        val foreground = randomImage(80, 70, BufferedImage.TYPE_INT_ARGB);
+        for (var y = 0; y < 69; y += 3) for (var x = 0; x < 80; x++) {
+            foreground.setRGB(x, y, foreground.getRGB(x, y) & 0xFFFFFF);
+            foreground.setRGB(x, y + 1, foreground.getRGB(x, y + 1) | 0xFF000000);
+        }
+
+        for (var x = 0; x < 80; x++) for (var y = 0; y < 61; y++) expectedBackground.setRGB(
+                x, y, ColorUtil.blendColors(expectedBackground.getRGB(x, y), foreground.getRGB(x, y))
+        );
+
+        assertSame(background, ImageUtil.mergeSharp(background, foreground));
+        assertArrayEquals(
+                expectedBackground.getRGB(0, 0, 97, 61, null, 0, 97), background.getRGB(0, 0, 97, 61, null, 0, 97)
+        );
+    }
+}